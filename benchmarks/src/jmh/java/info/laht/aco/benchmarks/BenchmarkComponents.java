@@ -0,0 +1,80 @@
+package info.laht.aco.benchmarks;
+
+import com.badlogic.gdx.utils.Pool;
+import info.laht.aco.core.Component;
+import info.laht.aco.core.Family;
+
+/**
+ * Component types and families shared by the benchmarks.
+ */
+public final class BenchmarkComponents {
+
+    public static class PositionComponent implements Component, Pool.Poolable {
+        public double x, y;
+
+        @Override
+        public void reset() {
+            x = y = 0;
+        }
+    }
+
+    public static class VelocityComponent implements Component, Pool.Poolable {
+        public double x = 1, y = 1;
+
+        @Override
+        public void reset() {
+            x = y = 1;
+        }
+    }
+
+    public static class ComponentA implements Component {
+    }
+
+    public static class ComponentB implements Component {
+    }
+
+    public static class ComponentC implements Component {
+    }
+
+    public static class ComponentD implements Component {
+    }
+
+    public static class ComponentE implements Component {
+    }
+
+    public static class ComponentF implements Component {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends Component>[] TYPES = new Class[]{
+            PositionComponent.class, VelocityComponent.class,
+            ComponentA.class, ComponentB.class, ComponentC.class, ComponentD.class, ComponentE.class, ComponentF.class
+    };
+
+    private BenchmarkComponents() {
+    }
+
+    /**
+     * @return count distinct families, each requiring a different combination of the benchmark component types
+     */
+    @SuppressWarnings("unchecked")
+    public static Family[] createFamilies(int count) {
+        if (count >= 1 << TYPES.length) {
+            throw new IllegalArgumentException("At most " + ((1 << TYPES.length) - 1) + " families are supported");
+        }
+
+        Family[] families = new Family[count];
+        for (int i = 0; i < count; ++i) {
+            int mask = i + 1;
+            Class<? extends Component>[] types = new Class[Integer.bitCount(mask)];
+            for (int bit = 0, j = 0; bit < TYPES.length; ++bit) {
+                if ((mask & (1 << bit)) != 0) {
+                    types[j++] = TYPES[bit];
+                }
+            }
+            families[i] = Family.all(types).get();
+        }
+        return families;
+    }
+
+}
@@ -0,0 +1,120 @@
+package info.laht.aco.benchmarks;
+
+import info.laht.aco.benchmarks.BenchmarkComponents.ComponentA;
+import info.laht.aco.benchmarks.BenchmarkComponents.PositionComponent;
+import info.laht.aco.benchmarks.BenchmarkComponents.VelocityComponent;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import info.laht.aco.core.EntityTemplate;
+import info.laht.aco.core.Family;
+import info.laht.aco.core.PooledEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures entity creation/removal and component churn for {@link Engine} and {@link PooledEngine}.
+ * <p>
+ * The engine lives for the whole trial, and every operation leaves it empty again: the entities it creates are removed
+ * before it returns. A {@link PooledEngine} thus serves the entities and components of an operation from those released
+ * by the previous one, which is what the engine type parameter compares.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntityBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entityCount;
+
+    @Param({"1", "16", "64"})
+    public int familyCount;
+
+    @Param({"Engine", "PooledEngine"})
+    public String engineType;
+
+    private static final EntityTemplate template = EntityTemplate.of(PositionComponent.class, VelocityComponent.class);
+
+    private Engine engine;
+    private Entity[] entities;
+    private List<Entity> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = "PooledEngine".equals(engineType) ? new PooledEngine(entityCount, entityCount, entityCount, entityCount) : new Engine();
+        for (Family family : BenchmarkComponents.createFamilies(familyCount)) {
+            engine.getEntitiesFor(family);
+        }
+
+        entities = new Entity[entityCount];
+        batch = Arrays.asList(entities);
+    }
+
+    private void createEntities() {
+        for (int i = 0; i < entityCount; ++i) {
+            Entity entity = engine.createEntity();
+            entity.add(engine.createComponent(PositionComponent.class));
+            entity.add(engine.createComponent(VelocityComponent.class));
+            entities[i] = entity;
+        }
+    }
+
+    @Benchmark
+    public Engine addAndRemoveAllEntities() {
+        createEntities();
+        for (Entity entity : entities) {
+            engine.addEntity(entity);
+        }
+        engine.removeAllEntities();
+        return engine;
+    }
+
+    @Benchmark
+    public Engine addAndRemoveEntitiesOneByOne() {
+        createEntities();
+        for (Entity entity : entities) {
+            engine.addEntity(entity);
+        }
+        for (Entity entity : entities) {
+            engine.removeEntity(entity);
+        }
+        return engine;
+    }
+
+    @Benchmark
+    public Engine addAndRemoveEntitiesInBatch() {
+        createEntities();
+        engine.addEntities(batch);
+        engine.removeEntities(batch);
+        return engine;
+    }
+
+    @Benchmark
+    public Engine instantiateAndRemoveAllEntities() {
+        engine.instantiate(template, entityCount);
+        engine.removeAllEntities();
+        return engine;
+    }
+
+    /**
+     * Includes adding and removing the entities, as measured by {@link #addAndRemoveAllEntities()}.
+     */
+    @Benchmark
+    public Engine addAndRemoveComponents() {
+        createEntities();
+        for (Entity entity : entities) {
+            engine.addEntity(entity);
+        }
+        for (Entity entity : entities) {
+            entity.add(engine.createComponent(ComponentA.class));
+        }
+        for (Entity entity : entities) {
+            entity.remove(ComponentA.class);
+        }
+        engine.removeAllEntities();
+        return engine;
+    }
+
+}
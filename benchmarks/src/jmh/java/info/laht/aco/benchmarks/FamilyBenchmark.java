@@ -0,0 +1,94 @@
+package info.laht.aco.benchmarks;
+
+import info.laht.aco.benchmarks.BenchmarkComponents.ComponentA;
+import info.laht.aco.benchmarks.BenchmarkComponents.ComponentB;
+import info.laht.aco.benchmarks.BenchmarkComponents.ComponentF;
+import info.laht.aco.benchmarks.BenchmarkComponents.PositionComponent;
+import info.laht.aco.benchmarks.BenchmarkComponents.VelocityComponent;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import info.laht.aco.core.Family;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Family#matches(Entity)} and the family membership updates an {@link Engine} makes when components are
+ * added to and removed from its entities.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FamilyBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entityCount;
+
+    @Param({"1", "16", "64"})
+    public int familyCount;
+
+    private Family[] families;
+    private Entity[] entities;
+    private Engine engine;
+
+    private final ComponentA componentA = new ComponentA();
+    private final ComponentF componentF = new ComponentF();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        families = BenchmarkComponents.createFamilies(familyCount);
+
+        engine = new Engine();
+        for (Family family : families) {
+            engine.getEntitiesFor(family);
+        }
+
+        entities = new Entity[entityCount];
+        for (int i = 0; i < entityCount; ++i) {
+            Entity entity = new Entity().add(new PositionComponent());
+            if (i % 2 == 0) {
+                entity.add(new VelocityComponent());
+            }
+            if (i % 3 == 0) {
+                entity.add(new ComponentB());
+            }
+            entities[i] = entity;
+            engine.addEntity(entity);
+        }
+    }
+
+    @Benchmark
+    public void matches(Blackhole blackhole) {
+        for (Entity entity : entities) {
+            for (Family family : families) {
+                blackhole.consume(family.matches(entity));
+            }
+        }
+    }
+
+    /**
+     * Component churn changing the membership of the families requiring {@link ComponentA}.
+     */
+    @Benchmark
+    public Engine updateFamilyMembershipAfterComponentChange() {
+        for (Entity entity : entities) {
+            entity.add(componentA);
+            entity.remove(ComponentA.class);
+        }
+        return engine;
+    }
+
+    /**
+     * Component churn of a type no family is interested in, see {@link BenchmarkComponents#createFamilies(int)}.
+     */
+    @Benchmark
+    public Engine updateFamilyMembershipAfterUnrelatedComponentChange() {
+        for (Entity entity : entities) {
+            entity.add(componentF);
+            entity.remove(ComponentF.class);
+        }
+        return engine;
+    }
+
+}
@@ -0,0 +1,100 @@
+package info.laht.aco.benchmarks;
+
+import info.laht.aco.benchmarks.BenchmarkComponents.PositionComponent;
+import info.laht.aco.benchmarks.BenchmarkComponents.VelocityComponent;
+import info.laht.aco.core.ComponentMapper;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import info.laht.aco.core.Family;
+import info.laht.aco.systems.IteratingSystem;
+import info.laht.aco.systems.SortedIteratingSystem;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full {@link Engine#step(double)} of a movement system, either as an {@link IteratingSystem} or as a
+ * {@link SortedIteratingSystem}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IterationBenchmark {
+
+    private static final Family FAMILY = Family.all(PositionComponent.class, VelocityComponent.class).get();
+    private static final ComponentMapper<PositionComponent> pm = ComponentMapper.getFor(PositionComponent.class);
+    private static final ComponentMapper<VelocityComponent> vm = ComponentMapper.getFor(VelocityComponent.class);
+
+    @Param({"1000", "100000"})
+    public int entityCount;
+
+    @Param({"1", "16", "64"})
+    public int familyCount;
+
+    @Param({"iterating", "sorted"})
+    public String systemType;
+
+    private Engine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new Engine();
+        for (Family family : BenchmarkComponents.createFamilies(familyCount)) {
+            engine.getEntitiesFor(family);
+        }
+
+        // Systems go first, so that SortedIteratingSystem picks up the entities through its listener
+        engine.addSystem("sorted".equals(systemType) ? new SortedMovementSystem() : new MovementSystem());
+
+        for (int i = 0; i < entityCount; ++i) {
+            PositionComponent position = new PositionComponent();
+            position.x = entityCount - i;
+            engine.addEntity(new Entity().add(position).add(new VelocityComponent()));
+        }
+    }
+
+    @Benchmark
+    public Engine step() {
+        engine.step(0.01);
+        return engine;
+    }
+
+    private static void move(Entity entity, double deltaTime) {
+        PositionComponent position = pm.get(entity);
+        VelocityComponent velocity = vm.get(entity);
+        position.x += velocity.x * deltaTime;
+        position.y += velocity.y * deltaTime;
+    }
+
+    private static class MovementSystem extends IteratingSystem {
+
+        MovementSystem() {
+            super(FAMILY);
+        }
+
+        @Override
+        protected void processEntity(@NotNull Entity entity, double deltaTime) {
+            move(entity, deltaTime);
+        }
+    }
+
+    private static class SortedMovementSystem extends SortedIteratingSystem {
+
+        SortedMovementSystem() {
+            super(FAMILY, new Comparator<Entity>() {
+                @Override
+                public int compare(Entity a, Entity b) {
+                    return Double.compare(pm.get(a).x, pm.get(b).x);
+                }
+            });
+        }
+
+        @Override
+        protected void processEntity(@NotNull Entity entity, double deltaTime) {
+            move(entity, deltaTime);
+        }
+    }
+
+}
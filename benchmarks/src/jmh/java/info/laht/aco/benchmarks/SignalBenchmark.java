@@ -0,0 +1,42 @@
+package info.laht.aco.benchmarks;
+
+import info.laht.aco.signals.Listener;
+import info.laht.aco.signals.Signal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Signal#dispatch(Object)} for a varying number of listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SignalBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int listenerCount;
+
+    private Signal<Object> signal;
+    private final Object event = new Object();
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) {
+        signal = new Signal<>();
+        for (int i = 0; i < listenerCount; ++i) {
+            signal.add(new Listener<Object>() {
+                @Override
+                public void receive(Signal<Object> signal, Object object) {
+                    blackhole.consume(object);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void dispatch() {
+        signal.dispatch(event);
+    }
+
+}
@@ -0,0 +1,81 @@
+package info.laht.aco.benchmarks;
+
+import info.laht.aco.render.TransformComponent;
+import org.joml.Matrix4d;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hot {@link TransformComponent} operations of a transform with a parent. All of them are meant to be
+ * allocation-free: run with the gc profiler (enabled in build.gradle) and check that {@code gc.alloc.rate.norm} is 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformBenchmark {
+
+    private final TransformComponent parent = new TransformComponent();
+    private final TransformComponent transform = new TransformComponent();
+
+    private final Vector3d point = new Vector3d(1, 2, 3);
+    private final Vector3d target = new Vector3d(10, 10, 0);
+    private final Vector3d vectorStore = new Vector3d();
+    private final Quaterniond quaternionStore = new Quaterniond();
+    private final Matrix4d matrixStore = new Matrix4d();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transform.setParent(parent);
+        parent.setLocalTranslation(1, 2, 3);
+        parent.localRotateZ(0.5);
+        transform.setLocalTranslation(1, 0, 0);
+    }
+
+    @Benchmark
+    public TransformComponent localTranslate() {
+        transform.localTranslate(1e-6, 0, 0);
+        return transform;
+    }
+
+    @Benchmark
+    public TransformComponent localRotateX() {
+        transform.localRotateX(1e-6);
+        return transform;
+    }
+
+    @Benchmark
+    public Matrix4d moveParentAndGetWorld() {
+        parent.localTranslateX(1e-6);
+        return transform.getWorld().get(matrixStore);
+    }
+
+    @Benchmark
+    public Vector3d worldToLocal() {
+        return transform.worldToLocal(point, vectorStore);
+    }
+
+    @Benchmark
+    public Vector3d forward() {
+        return transform.forward(vectorStore);
+    }
+
+    @Benchmark
+    public Vector3d localTranslation() {
+        return transform.getLocalTranslation(vectorStore);
+    }
+
+    @Benchmark
+    public Quaterniond worldQuaternion() {
+        return transform.getWorldQuaternion(quaternionStore);
+    }
+
+    @Benchmark
+    public TransformComponent lookAt() {
+        transform.lookAt(target);
+        return transform;
+    }
+
+}
@@ -0,0 +1,137 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+import info.laht.aco.utils.ImmutableArray;
+
+/**
+ * Groups all the {@link Entity} objects that share the exact same component signature. The entities, together with
+ * references to their {@link Component}s, are stored contiguously in fixed size {@link ArchetypeChunk}s so that systems can
+ * walk them column by column. Archetypes are created and maintained by the {@link Engine}, see
+ * {@link Engine#getArchetypesFor(Family)}.
+ */
+public final class Archetype {
+
+    private final int index;
+    private final Bits componentBits;
+    private final ComponentType[] componentTypes;
+    private final int columnCount;
+    private final Array<ArchetypeChunk> chunks = new Array<>(true, 4);
+    private final ImmutableArray<ArchetypeChunk> immutableChunks = new ImmutableArray<>(chunks);
+    private ArchetypeChunk spareChunk;
+    private int size;
+
+    Archetype(int index, Bits componentBits) {
+        this.index = index;
+        this.componentBits = componentBits;
+
+        Array<ComponentType> types = new Array<>(ComponentType.class);
+        for (int i = componentBits.nextSetBit(0); i >= 0; i = componentBits.nextSetBit(i + 1)) {
+            types.add(ComponentType.getFor(i));
+        }
+        this.componentTypes = types.toArray(ComponentType.class);
+        this.columnCount = componentBits.length();
+    }
+
+    /**
+     * @return This archetype's unique index within the owning {@link Engine}
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The number of entities stored in this archetype
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Whether entities of this archetype have a {@link Component} of the specified class
+     */
+    public boolean has(Class<? extends Component> componentClass) {
+        return componentBits.get(ComponentType.getIndexFor(componentClass));
+    }
+
+    /**
+     * @return immutable collection of the chunks holding the entities of this archetype. Only the last chunk may be
+     * partially filled.
+     */
+    public ImmutableArray<ArchetypeChunk> getChunks() {
+        return immutableChunks;
+    }
+
+    Bits getComponentBits() {
+        return componentBits;
+    }
+
+    ComponentType[] getComponentTypes() {
+        return componentTypes;
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    ArchetypeChunk getChunk(int slot) {
+        return chunks.get(slot >>> ArchetypeChunk.SHIFT);
+    }
+
+    void add(Entity entity) {
+        int slot = size++;
+        int chunkIndex = slot >>> ArchetypeChunk.SHIFT;
+
+        if (chunkIndex == chunks.size) {
+            ArchetypeChunk chunk = spareChunk != null ? spareChunk : new ArchetypeChunk(this);
+            spareChunk = null;
+            chunks.add(chunk);
+        }
+
+        chunks.get(chunkIndex).add(entity);
+        entity.archetype = this;
+        entity.archetypeSlot = slot;
+    }
+
+    void remove(Entity entity) {
+        int slot = entity.archetypeSlot;
+        int last = --size;
+
+        ArchetypeChunk chunk = chunks.get(slot >>> ArchetypeChunk.SHIFT);
+        ArchetypeChunk lastChunk = chunks.get(last >>> ArchetypeChunk.SHIFT);
+
+        chunk.detach(slot & ArchetypeChunk.MASK);
+
+        if (slot != last) {
+            // Swap the last entity into the vacated slot to keep the chunks densely packed
+            Entity moved = chunk.moveFrom(lastChunk, last & ArchetypeChunk.MASK, slot & ArchetypeChunk.MASK);
+            moved.archetypeSlot = slot;
+        }
+
+        lastChunk.removeLast();
+        if (lastChunk.size() == 0) {
+            spareChunk = chunks.pop();
+        }
+
+        entity.archetype = null;
+        entity.archetypeSlot = -1;
+    }
+
+    void refresh(Entity entity) {
+        int slot = entity.archetypeSlot;
+        ArchetypeChunk chunk = chunks.get(slot >>> ArchetypeChunk.SHIFT);
+        chunk.detach(slot & ArchetypeChunk.MASK);
+        chunk.set(slot & ArchetypeChunk.MASK, entity);
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+
+}
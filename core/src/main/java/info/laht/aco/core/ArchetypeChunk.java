@@ -0,0 +1,157 @@
+package info.laht.aco.core;
+
+/**
+ * A fixed size block of entities belonging to the same {@link Archetype}. Components are laid out column-wise: for every
+ * component type of the archetype the chunk holds one array, typed after the component class, where row {@code i} holds the
+ * component of the entity at row {@code i}. Use {@link ComponentMapper#getColumn(ArchetypeChunk)} to retrieve a column.
+ * Primitive {@link Column}s of {@link ColumnComponent}s are stored in the same way in primitive arrays, see e.g.
+ * {@link DoubleColumn#getArray(ArchetypeChunk)}.
+ * <p>
+ * Only the first {@link #size()} rows of the arrays returned by this class are valid.
+ */
+public final class ArchetypeChunk {
+
+    static final int SHIFT = 7;
+
+    /**
+     * The maximum number of entities stored in a single chunk.
+     */
+    public static final int CAPACITY = 1 << SHIFT;
+
+    static final int MASK = CAPACITY - 1;
+
+    private final Archetype archetype;
+    private final ComponentType[] componentTypes;
+    private final Entity[] entities;
+    private final Component[][] columns;
+    private Object[] columnData;
+    private int size;
+
+    ArchetypeChunk(Archetype archetype) {
+        this.archetype = archetype;
+        this.componentTypes = archetype.getComponentTypes();
+        this.entities = new Entity[CAPACITY];
+        this.columns = new Component[archetype.getColumnCount()][];
+
+        for (ComponentType type : componentTypes) {
+            columns[type.getIndex()] = (Component[]) java.lang.reflect.Array.newInstance(type.getType(), CAPACITY);
+        }
+
+        this.columnData = new Object[Column.count()];
+        for (ComponentType type : componentTypes) {
+            for (Column column : type.getColumns()) {
+                columnData[column.index] = column.newArray(CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * @return The {@link Archetype} this chunk belongs to
+     */
+    public Archetype getArchetype() {
+        return archetype;
+    }
+
+    /**
+     * @return The number of entities stored in this chunk
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The entity stored at the specified row
+     */
+    public Entity getEntity(int row) {
+        if (row >= size) throw new IndexOutOfBoundsException("row can't be >= size: " + row + " >= " + size);
+        return entities[row];
+    }
+
+    /**
+     * @return The backing entity array of this chunk. Only the first {@link #size()} elements are valid.
+     */
+    public Entity[] getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return The backing column for the specified component type, or null if the archetype does not contain such
+     * components.
+     */
+    Component[] getColumn(ComponentType componentType) {
+        int componentTypeIndex = componentType.getIndex();
+        return componentTypeIndex < columns.length ? columns[componentTypeIndex] : null;
+    }
+
+    /**
+     * @return The backing primitive array for the specified column, or null if the archetype does not contain the component
+     * the column belongs to.
+     */
+    Object getColumnData(Column column) {
+        int columnIndex = column.index;
+        if (columnIndex >= columnData.length) {
+            // The column was declared after this chunk was created
+            Object[] newColumnData = new Object[Column.count()];
+            System.arraycopy(columnData, 0, newColumnData, 0, columnData.length);
+            columnData = newColumnData;
+        }
+
+        Object data = columnData[columnIndex];
+        if (data == null && archetype.getComponentBits().get(column.componentType.getIndex())) {
+            data = columnData[columnIndex] = column.newArray(CAPACITY);
+        }
+        return data;
+    }
+
+    void add(Entity entity) {
+        set(size++, entity);
+    }
+
+    void set(int row, Entity entity) {
+        entities[row] = entity;
+        for (ComponentType type : componentTypes) {
+            Component component = entity.getComponent(type);
+            columns[type.getIndex()][row] = component;
+
+            // Pull the column values out of the component
+            for (Column column : type.getColumns()) {
+                column.setBits(getColumnData(column), row, ((ColumnComponent) component).getBits(column.localIndex));
+            }
+        }
+    }
+
+    /**
+     * Writes the column values stored at row back into the components that were stored there.
+     */
+    void detach(int row) {
+        for (ComponentType type : componentTypes) {
+            Component component = columns[type.getIndex()][row];
+            for (Column column : type.getColumns()) {
+                ((ColumnComponent) component).setBits(column.localIndex, column.getBits(getColumnData(column), row));
+            }
+        }
+    }
+
+    Entity moveFrom(ArchetypeChunk source, int sourceRow, int row) {
+        Entity entity = source.entities[sourceRow];
+        entities[row] = entity;
+        for (ComponentType type : componentTypes) {
+            int componentTypeIndex = type.getIndex();
+            columns[componentTypeIndex][row] = source.columns[componentTypeIndex][sourceRow];
+
+            for (Column column : type.getColumns()) {
+                System.arraycopy(source.getColumnData(column), sourceRow, getColumnData(column), row, 1);
+            }
+        }
+        return entity;
+    }
+
+    void removeLast() {
+        int row = --size;
+        entities[row] = null;
+        for (ComponentType type : componentTypes) {
+            columns[type.getIndex()][row] = null;
+        }
+    }
+
+}
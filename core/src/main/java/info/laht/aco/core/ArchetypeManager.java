@@ -0,0 +1,119 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.ObjectMap;
+import info.laht.aco.utils.ImmutableArray;
+
+class ArchetypeManager {
+
+    private final ImmutableArray<Entity> entities;
+    private final Array<Archetype> archetypes = new Array<>(false, 16);
+    private final ImmutableArray<Archetype> immutableArchetypes = new ImmutableArray<>(archetypes);
+    private final ObjectMap<Bits, Archetype> archetypesByBits = new ObjectMap<>();
+    private final ObjectMap<Family, Array<Archetype>> families = new ObjectMap<>();
+    private final ObjectMap<Family, ImmutableArray<Archetype>> immutableFamilies = new ObjectMap<>();
+    private boolean enabled = false;
+
+    public ArchetypeManager(ImmutableArray<Entity> entities) {
+        this.entities = entities;
+    }
+
+    /**
+     * @return Whether archetype storage has been enabled, i.e. whether entities are currently being sorted into archetypes
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts sorting entities into archetypes. Entities already registered with the engine are stored immediately.
+     */
+    public void enable() {
+        if (!enabled) {
+            enabled = true;
+            for (Entity entity : entities) {
+                updateArchetype(entity);
+            }
+        }
+    }
+
+    public ImmutableArray<Archetype> getArchetypes() {
+        return immutableArchetypes;
+    }
+
+    public ImmutableArray<Archetype> getArchetypesFor(Family family) {
+        enable();
+        return registerFamily(family);
+    }
+
+    public void updateArchetype(Entity entity) {
+        if (!enabled) {
+            return;
+        }
+
+        Archetype current = entity.archetype;
+
+        if (entity.removing) {
+            if (current != null) {
+                current.remove(entity);
+            }
+            return;
+        }
+
+        Bits componentBits = entity.getComponentBits();
+
+        if (current != null && current.getComponentBits().equals(componentBits)) {
+            // Same signature, but a component may have been replaced
+            current.refresh(entity);
+            return;
+        }
+
+        Archetype target = archetypesByBits.get(componentBits);
+        if (target == null) {
+            target = createArchetype(componentBits);
+        }
+
+        if (current != null) {
+            current.remove(entity);
+        }
+        target.add(entity);
+    }
+
+    private Archetype createArchetype(Bits componentBits) {
+        Bits bits = new Bits();
+        bits.or(componentBits);
+
+        Archetype archetype = new Archetype(archetypes.size, bits);
+        archetypes.add(archetype);
+        archetypesByBits.put(bits, archetype);
+
+        for (ObjectMap.Entry<Family, Array<Archetype>> entry : families) {
+            if (entry.key.matches(bits)) {
+                entry.value.add(archetype);
+            }
+        }
+
+        return archetype;
+    }
+
+    private ImmutableArray<Archetype> registerFamily(Family family) {
+        ImmutableArray<Archetype> archetypesInFamily = immutableFamilies.get(family);
+
+        if (archetypesInFamily == null) {
+            Array<Archetype> familyArchetypes = new Array<>(false, 16);
+            archetypesInFamily = new ImmutableArray<>(familyArchetypes);
+            families.put(family, familyArchetypes);
+            immutableFamilies.put(family, archetypesInFamily);
+
+            for (Archetype archetype : archetypes) {
+                if (family.matches(archetype.getComponentBits())) {
+                    familyArchetypes.add(archetype);
+                }
+            }
+        }
+
+        return archetypesInFamily;
+    }
+
+}
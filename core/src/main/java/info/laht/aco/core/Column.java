@@ -0,0 +1,88 @@
+package info.laht.aco.core;
+
+/**
+ * Describes a primitive field of a {@link ColumnComponent}. Instead of living in a field of every component instance, the
+ * values of a column are stored in a primitive array per {@link ArchetypeChunk}, indexed by the row of the entity within the
+ * chunk. This lets systems such as {@link info.laht.aco.systems.ColumnIteratingSystem} process them in tight loops.
+ * <p>
+ * Columns are declared once per component class, typically as static fields:
+ * <pre>
+ * public class PositionComponent extends ColumnComponent {
+ *     public static final DoubleColumn X = new DoubleColumn(PositionComponent.class);
+ *     public static final DoubleColumn Y = new DoubleColumn(PositionComponent.class);
+ * }
+ * </pre>
+ * While an entity is not stored in an {@link Archetype} (e.g. before it is added to an {@link Engine} or when archetype
+ * storage is not enabled) the values are kept by the component itself.
+ *
+ * @see DoubleColumn
+ * @see FloatColumn
+ * @see IntColumn
+ * @see LongColumn
+ */
+public abstract class Column {
+
+    private static int columnIndex = 0;
+
+    final ComponentType componentType;
+    final int index;
+    final int localIndex;
+
+    Column(Class<? extends ColumnComponent> componentClass) {
+        this.componentType = ComponentType.getFor(componentClass);
+        this.index = columnIndex++;
+        this.localIndex = componentType.addColumn(this);
+    }
+
+    /**
+     * @return The {@link ComponentType} of the component this column belongs to
+     */
+    public ComponentType getComponentType() {
+        return componentType;
+    }
+
+    /**
+     * @return This column's unique index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    static int count() {
+        return columnIndex;
+    }
+
+    abstract Object newArray(int capacity);
+
+    abstract long getBits(Object array, int row);
+
+    abstract void setBits(Object array, int row, long bits);
+
+    final long getBits(Entity entity) {
+        Archetype archetype = entity.archetype;
+        if (archetype != null && archetype.getComponentBits().get(componentType.getIndex())) {
+            int slot = entity.archetypeSlot;
+            return getBits(archetype.getChunk(slot).getColumnData(this), slot & ArchetypeChunk.MASK);
+        }
+        return getComponent(entity).getBits(localIndex);
+    }
+
+    final void setBits(Entity entity, long bits) {
+        Archetype archetype = entity.archetype;
+        if (archetype != null && archetype.getComponentBits().get(componentType.getIndex())) {
+            int slot = entity.archetypeSlot;
+            setBits(archetype.getChunk(slot).getColumnData(this), slot & ArchetypeChunk.MASK, bits);
+        } else {
+            getComponent(entity).setBits(localIndex, bits);
+        }
+    }
+
+    private ColumnComponent getComponent(Entity entity) {
+        ColumnComponent component = entity.getComponent(componentType);
+        if (component == null) {
+            throw new IllegalArgumentException("Entity does not have a component of type " + componentType.getType().getName());
+        }
+        return component;
+    }
+
+}
@@ -0,0 +1,30 @@
+package info.laht.aco.core;
+
+/**
+ * Base class for components whose data is declared as primitive {@link Column}s rather than as fields. It can be mixed freely
+ * with ordinary {@link Component}s on the same {@link Entity}.
+ * <p>
+ * While the owning entity is stored in an {@link Archetype}, column values live in the arrays of its {@link ArchetypeChunk}.
+ * Otherwise they are kept by the component instance itself, so values may be assigned before the entity is added to the
+ * {@link Engine} and are retained after it has been removed. A ColumnComponent instance must not be shared between entities.
+ */
+public abstract class ColumnComponent implements Component {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] values = EMPTY;
+
+    final long getBits(int localIndex) {
+        return localIndex < values.length ? values[localIndex] : 0L;
+    }
+
+    final void setBits(int localIndex, long bits) {
+        if (localIndex >= values.length) {
+            long[] newValues = new long[ComponentType.getFor(getClass()).getColumns().size];
+            System.arraycopy(values, 0, newValues, 0, values.length);
+            values = newValues;
+        }
+        values[localIndex] = bits;
+    }
+
+}
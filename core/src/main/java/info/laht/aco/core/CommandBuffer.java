@@ -0,0 +1,218 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records structural changes (creating and destroying entities, adding and removing components) to be applied later, in bulk,
+ * by the {@link Engine} owning the buffer. The engine plays the buffer back at the start of every step, before the step
+ * begins so that commands recorded between steps count as changes made from outside the engine, see {@link Journal}, and
+ * then wherever it applies pending entity operations, i.e. after every system or, when stepping systems concurrently, at
+ * every sync point.
+ * <p>
+ * All changes recorded for one entity are coalesced during playback: the components are added and removed first, then the
+ * entity's {@link Family} membership is updated once, and the {@link Entity#componentAdded} and
+ * {@link Entity#componentRemoved} signals are dispatched at most once each.
+ * <p>
+ * Recording is thread-safe: every thread records into its own segment, so systems may record from several threads at once.
+ * Entities and components to record may be created through {@link Engine#createEntity()} and
+ * {@link Engine#createComponent(Class)} from those threads too, a {@link PooledEngine} locks its pools. Commands recorded by
+ * one thread are played back in the order they were recorded. Playback must not overlap with recording.
+ *
+ * @see Engine#getCommandBuffer()
+ */
+public final class CommandBuffer {
+
+    private static final int CREATE = 0;
+    private static final int ADD = 1;
+    private static final int REMOVE = 2;
+    private static final int DESTROY = 3;
+
+    private static final int ADDED = 1;
+    private static final int REMOVED = 2;
+    private static final int CREATED = 4;
+    private static final int DESTROYED = 8;
+
+    private final Array<Segment> segments = new Array<>(false, 8, Segment.class);
+    private final ThreadLocal<Segment> segment = new ThreadLocal<Segment>() {
+        @Override
+        protected Segment initialValue() {
+            Segment segment = new Segment();
+            synchronized (segments) {
+                segments.add(segment);
+            }
+            return segment;
+        }
+    };
+
+    private final Array<Entity> touched = new Array<>(true, 64, Entity.class);
+    private final IntArray touchedFlags = new IntArray(true, 64);
+
+    private final Engine engine;
+
+    CommandBuffer(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Records the creation of a new entity holding the specified components. The entity is obtained through
+     * {@link Engine#createEntity()}, i.e. from the pool of a {@link PooledEngine}, and added to the engine on playback.
+     * If it is destroyed in the same buffer, it is handed back to the engine instead, see {@link Engine#discardEntity}.
+     *
+     * @return The new entity, which may be used in subsequent commands of this buffer
+     */
+    public Entity createEntity(@NotNull Component... components) {
+        Entity entity = engine.createEntity();
+        Segment segment = this.segment.get();
+        segment.record(CREATE, entity, null);
+        for (Component component : components) {
+            segment.record(ADD, entity, component);
+        }
+        return entity;
+    }
+
+    /**
+     * Records the addition of an existing entity to the engine.
+     */
+    public void addEntity(@NotNull Entity entity) {
+        segment.get().record(CREATE, entity, null);
+    }
+
+    /**
+     * Records the addition of a component to the entity, replacing any existing component of the same type.
+     */
+    public void addComponent(@NotNull Entity entity, @NotNull Component component) {
+        segment.get().record(ADD, entity, component);
+    }
+
+    /**
+     * Records the removal of the component of the specified type from the entity.
+     */
+    public void removeComponent(@NotNull Entity entity, @NotNull Class<? extends Component> componentClass) {
+        segment.get().record(REMOVE, entity, componentClass);
+    }
+
+    /**
+     * Records the removal of the entity from the engine.
+     */
+    public void destroyEntity(@NotNull Entity entity) {
+        segment.get().record(DESTROY, entity, null);
+    }
+
+    /**
+     * @return Whether there are commands waiting to be played back
+     */
+    public boolean hasCommands() {
+        synchronized (segments) {
+            for (int i = 0; i < segments.size; ++i) {
+                if (segments.get(i).size > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    void playback(EntityManager entityManager) {
+        synchronized (segments) {
+            for (int i = 0; i < segments.size; ++i) {
+                apply(segments.get(i));
+            }
+        }
+
+        try {
+            for (int i = 0; i < touched.size; ++i) {
+                Entity entity = touched.get(i);
+                int flags = touchedFlags.get(i);
+                entity.commandIndex = -1;
+
+                if ((flags & CREATED) != 0) {
+                    if ((flags & DESTROYED) == 0) {
+                        entityManager.addEntity(entity, false);
+                    } else {
+                        engine.discardEntity(entity);
+                    }
+                } else if ((flags & DESTROYED) != 0) {
+                    entityManager.removeEntity(entity, false);
+                } else {
+                    // The first notification updates membership for all the changes, see Entity#getDirtyComponentBits()
+                    if ((flags & ADDED) != 0) {
+                        entity.notifyComponentAdded();
+                    }
+                    if ((flags & REMOVED) != 0) {
+                        entity.notifyComponentRemoved();
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < touched.size; ++i) {
+                touched.get(i).commandIndex = -1;
+            }
+            touched.clear();
+            touchedFlags.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(Segment segment) {
+        Entity[] entities = segment.entities.items;
+        Object[] arguments = segment.arguments.items;
+        int[] types = segment.types.items;
+
+        for (int i = 0; i < segment.size; ++i) {
+            Entity entity = entities[i];
+            int flag;
+            switch (types[i]) {
+                case CREATE:
+                    flag = CREATED;
+                    break;
+                case ADD:
+                    flag = entity.addInternal((Component) arguments[i]) ? ADDED : 0;
+                    break;
+                case REMOVE:
+                    flag = entity.removeInternal((Class<? extends Component>) arguments[i]) != null ? REMOVED : 0;
+                    break;
+                case DESTROY:
+                    flag = DESTROYED;
+                    break;
+                default:
+                    throw new AssertionError("Unexpected command type");
+            }
+
+            int index = entity.commandIndex;
+            if (index < 0) {
+                entity.commandIndex = touched.size;
+                touched.add(entity);
+                touchedFlags.add(flag);
+            } else {
+                touchedFlags.set(index, touchedFlags.get(index) | flag);
+            }
+        }
+
+        segment.clear();
+    }
+
+    private static class Segment {
+
+        private final Array<Entity> entities = new Array<>(true, 64, Entity.class);
+        private final Array<Object> arguments = new Array<>(true, 64, Object.class);
+        private final IntArray types = new IntArray(true, 64);
+        private int size;
+
+        void record(int type, Entity entity, Object argument) {
+            entities.add(entity);
+            arguments.add(argument);
+            types.add(type);
+            size = types.size;
+        }
+
+        void clear() {
+            entities.clear();
+            arguments.clear();
+            types.clear();
+            size = 0;
+        }
+    }
+
+}
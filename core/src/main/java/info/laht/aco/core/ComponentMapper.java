@@ -49,6 +49,15 @@ public final class ComponentMapper<T extends Component> {
         return entity.hasComponent(componentType);
     }
 
+    /**
+     * @return The column holding the {@link Component}s of the specified class within chunk, or null if the chunk's
+     * {@link Archetype} does not contain such components. Only the first {@link ArchetypeChunk#size()} elements are valid.
+     */
+    @SuppressWarnings("unchecked")
+    public T[] getColumn(@NotNull ArchetypeChunk chunk) {
+        return (T[]) chunk.getColumn(componentType);
+    }
+
     private ComponentMapper(Class<T> componentClass) {
         componentType = ComponentType.getFor(componentClass);
     }
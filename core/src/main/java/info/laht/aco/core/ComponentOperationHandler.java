@@ -16,9 +16,12 @@ class ComponentOperationHandler {
 
     public void add(Entity entity) {
         if (delayed.value()) {
-            ComponentOperation operation = operationPool.obtain();
-            operation.makeAdd(entity);
-            operations.add(operation);
+            // Systems may process entities on several threads, so queueing has to be synchronized
+            synchronized (operations) {
+                ComponentOperation operation = operationPool.obtain();
+                operation.makeAdd(entity);
+                operations.add(operation);
+            }
         } else {
             entity.notifyComponentAdded();
         }
@@ -26,9 +29,12 @@ class ComponentOperationHandler {
 
     public void remove(Entity entity) {
         if (delayed.value()) {
-            ComponentOperation operation = operationPool.obtain();
-            operation.makeRemove(entity);
-            operations.add(operation);
+            // Systems may process entities on several threads, so queueing has to be synchronized
+            synchronized (operations) {
+                ComponentOperation operation = operationPool.obtain();
+                operation.makeRemove(entity);
+                operations.add(operation);
+            }
         } else {
             entity.notifyComponentRemoved();
         }
@@ -38,6 +44,10 @@ class ComponentOperationHandler {
         return operations.size > 0;
     }
 
+    public int getOperationCount() {
+        return operations.size;
+    }
+
     public void processOperations() {
         for (int i = 0; i < operations.size; ++i) {
             ComponentOperation operation = operations.get(i);
@@ -0,0 +1,211 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool.Poolable;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+
+/**
+ * The pool of the components of one type in a {@link PooledEngine}, see {@link PooledEngine#registerComponentPool}.
+ * <p>
+ * Components are created by a {@link Factory} when the pool is empty, and reset when they return to the pool: by the
+ * {@link Reset} of the pool if it has one, otherwise by {@link Poolable#reset()} if they implement it. At most
+ * {@link #getMaxSize()} free components are kept, those returned to a full pool are left to the garbage collector.
+ * <p>
+ * The pool counts how many components were served from the pool ({@link #getHits()}), created because the pool was empty
+ * ({@link #getMisses()}) and dropped because the pool was full ({@link #getDiscarded()}). Many misses once warmed up call
+ * for filling the pool up front, see {@link #fill(int)}, many discarded components for a larger maximum size.
+ */
+public final class ComponentPool<T extends Component> {
+
+    /**
+     * Creates the components of a pool.
+     */
+    public interface Factory<T extends Component> {
+        @NotNull
+        T newComponent();
+    }
+
+    /**
+     * Resets a component returned to its pool, so that it can be reused.
+     */
+    public interface Reset<T extends Component> {
+        void reset(@NotNull T component);
+    }
+
+    private final Class<T> type;
+    private final Factory<? extends T> factory;
+    private final Reset<? super T> reset;
+    private final int maxSize;
+    private Object[] free;
+    private int freeCount;
+    private long hits;
+    private long misses;
+    private long discarded;
+
+    ComponentPool(Class<T> type, Factory<? extends T> factory, Reset<? super T> reset, int initialSize, int maxSize) {
+        if (initialSize < 0 || maxSize < initialSize) {
+            throw new IllegalArgumentException("Sizes must satisfy 0 <= initialSize <= maxSize, were " + initialSize + " and " + maxSize);
+        }
+        this.type = type;
+        this.factory = factory;
+        this.reset = reset;
+        this.maxSize = maxSize;
+        this.free = new Object[initialSize];
+    }
+
+    /**
+     * @return The component type of this pool
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return A free component, or a new one if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public T obtain() {
+        if (freeCount > 0) {
+            ++hits;
+            T component = (T) free[--freeCount];
+            free[freeCount] = null;
+            return component;
+        }
+        ++misses;
+        return factory.newComponent();
+    }
+
+    /**
+     * Appends the specified number of components to the array, the free ones first.
+     */
+    @SuppressWarnings("unchecked")
+    public void obtain(int count, @NotNull Array<? super T> components) {
+        components.ensureCapacity(count);
+        int pooled = Math.min(count, freeCount);
+        for (int i = 0; i < pooled; ++i) {
+            components.add((T) free[--freeCount]);
+            free[freeCount] = null;
+        }
+        for (int i = pooled; i < count; ++i) {
+            components.add(factory.newComponent());
+        }
+        hits += pooled;
+        misses += count - pooled;
+    }
+
+    /**
+     * Resets the component and returns it to the pool, unless the pool is full.
+     */
+    @SuppressWarnings("unchecked")
+    public void free(@NotNull Component component) {
+        if (reset != null) {
+            reset.reset((T) component);
+        } else if (component instanceof Poolable) {
+            ((Poolable) component).reset();
+        }
+
+        if (freeCount == maxSize) {
+            ++discarded;
+            return;
+        }
+        if (freeCount == free.length) {
+            grow();
+        }
+        free[freeCount++] = component;
+    }
+
+    /**
+     * Creates components up front until there are the specified number of free components, or the pool is full. The
+     * components created are not counted as misses.
+     */
+    public void fill(int count) {
+        int size = Math.min(count, maxSize);
+        while (freeCount < size) {
+            if (freeCount == free.length) {
+                grow();
+            }
+            free[freeCount++] = factory.newComponent();
+        }
+    }
+
+    private void grow() {
+        free = Arrays.copyOf(free, Math.min(maxSize, Math.max(16, free.length * 2)));
+    }
+
+    /**
+     * Drops all the free components.
+     */
+    public void clear() {
+        Arrays.fill(free, 0, freeCount, null);
+        freeCount = 0;
+    }
+
+    /**
+     * @return The number of free components
+     */
+    public int getFree() {
+        return freeCount;
+    }
+
+    /**
+     * @return The maximum number of free components kept by this pool
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of components obtained from the free ones
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of components created because there was no free one
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of components dropped because the pool was full
+     */
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * Sets the statistics of this pool back to 0.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        discarded = 0;
+    }
+
+    /**
+     * @return A factory creating components through the no-arg constructor of the type, which is looked up only once
+     * @throws IllegalArgumentException if the type has no no-arg constructor
+     */
+    static <T extends Component> Factory<T> constructorFactory(Class<T> type) {
+        final Constructor<T> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException | SecurityException e) {
+            throw new IllegalArgumentException("Cannot pool " + type.getName() + ", it has no no-arg constructor", e);
+        }
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create a " + type.getName(), e);
+            }
+        };
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package info.laht.aco.core;
 
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Bits;
 import com.badlogic.gdx.utils.ObjectMap;
 
@@ -30,12 +31,25 @@ import com.badlogic.gdx.utils.ObjectMap;
 public final class ComponentType {
 
     private static final ObjectMap<Class<? extends Component>, ComponentType> assignedComponentTypes = new ObjectMap<>();
+    private static final Array<ComponentType> componentTypesByIndex = new Array<>();
     private static int typeIndex = 0;
 
+    // Caches the ComponentType in each class, so that hot paths looking types up by class skip the map
+    private static final ClassValue<ComponentType> componentTypesByClass = new ClassValue<ComponentType>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected ComponentType computeValue(Class<?> componentType) {
+            return assign((Class<? extends Component>) componentType);
+        }
+    };
+
     private final int index;
+    private final Class<? extends Component> type;
+    private final Array<Column> columns = new Array<>(true, 4, Column.class);
 
-    private ComponentType() {
-        index = typeIndex++;
+    private ComponentType(Class<? extends Component> type) {
+        this.index = typeIndex++;
+        this.type = type;
     }
 
     /**
@@ -45,21 +59,56 @@ public final class ComponentType {
         return index;
     }
 
+    /**
+     * @return The {@link Component} class this ComponentType was created for
+     */
+    public Class<? extends Component> getType() {
+        return type;
+    }
+
+    /**
+     * @return The primitive {@link Column}s declared for this ComponentType, in declaration order
+     */
+    Array<Column> getColumns() {
+        return columns;
+    }
+
+    int addColumn(Column column) {
+        if (!ColumnComponent.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("Columns can only be declared for sub-classes of ColumnComponent: " + type.getName());
+        }
+        columns.add(column);
+        return columns.size - 1;
+    }
+
     /**
      * @param componentType The {@link Component} class
      * @return A ComponentType matching the Component Class
      */
     public static ComponentType getFor(Class<? extends Component> componentType) {
+        return componentTypesByClass.get(componentType);
+    }
+
+    private static synchronized ComponentType assign(Class<? extends Component> componentType) {
         ComponentType type = assignedComponentTypes.get(componentType);
 
         if (type == null) {
-            type = new ComponentType();
+            type = new ComponentType(componentType);
             assignedComponentTypes.put(componentType, type);
+            componentTypesByIndex.add(type);
         }
 
         return type;
     }
 
+    /**
+     * @param index The index of a previously assigned ComponentType
+     * @return The ComponentType with the specified index
+     */
+    static ComponentType getFor(int index) {
+        return componentTypesByIndex.get(index);
+    }
+
     /**
      * Quick helper method. The same could be done via {@link ComponentType::getFor(Class<? extends Component>)}.
      *
@@ -0,0 +1,54 @@
+package info.laht.aco.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link Column} of double values.
+ */
+public final class DoubleColumn extends Column {
+
+    public DoubleColumn(@NotNull Class<? extends ColumnComponent> componentClass) {
+        super(componentClass);
+    }
+
+    /**
+     * @return The value of this column for the specified entity
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public double get(@NotNull Entity entity) {
+        return Double.longBitsToDouble(getBits(entity));
+    }
+
+    /**
+     * Sets the value of this column for the specified entity.
+     *
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public void set(@NotNull Entity entity, double value) {
+        setBits(entity, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * @return The backing array of this column within chunk, or null if the chunk's {@link Archetype} does not contain the
+     * component this column belongs to. Only the first {@link ArchetypeChunk#size()} elements are valid.
+     */
+    public double[] getArray(@NotNull ArchetypeChunk chunk) {
+        return (double[]) chunk.getColumnData(this);
+    }
+
+    @Override
+    Object newArray(int capacity) {
+        return new double[capacity];
+    }
+
+    @Override
+    long getBits(Object array, int row) {
+        return Double.doubleToRawLongBits(((double[]) array)[row]);
+    }
+
+    @Override
+    void setBits(Object array, int row, long bits) {
+        ((double[]) array)[row] = Double.longBitsToDouble(bits);
+    }
+
+}
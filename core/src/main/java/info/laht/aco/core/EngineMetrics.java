@@ -0,0 +1,221 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectMap;
+import info.laht.aco.utils.Histogram;
+import info.laht.aco.utils.ImmutableArray;
+
+/**
+ * Opt-in instrumentation of an {@link Engine}, see {@link Engine#enableMetrics()}. While enabled, the engine records the time
+ * spent in every {@link EntitySystem#step(double)} and {@link EntitySystem#postStep()}, the duration of every
+ * {@link Engine#step(double)} and the number of pending entity and component operations at every sync point. Recording uses
+ * {@link System#nanoTime()} and allocation-free {@link Histogram}s.
+ * <p>
+ * Metrics are pulled: read the histograms directly, or walk everything, including gauges such as entity count and family
+ * sizes, with {@link #visit(Visitor)}. Scraping from another thread is safe, but may observe values of a step in progress.
+ */
+public final class EngineMetrics {
+
+    private final EntityManager entityManager;
+    private final FamilyManager familyManager;
+    private final ComponentOperationHandler componentOperationHandler;
+
+    private final ObjectMap<EntitySystem, SystemMetrics> metricsBySystem = new ObjectMap<>();
+    private final Array<SystemMetrics> systems = new Array<>(true, 16, SystemMetrics.class);
+    private final ImmutableArray<SystemMetrics> immutableSystems = new ImmutableArray<>(systems);
+    private final IntMap<String> familySizeNames = new IntMap<>();
+
+    private final Histogram stepNanos = new Histogram();
+    private final Histogram pendingEntityOperations = new Histogram();
+    private final Histogram pendingComponentOperations = new Histogram();
+    private int peakPendingEntityOperations;
+    private int peakPendingComponentOperations;
+
+    EngineMetrics(EntityManager entityManager, FamilyManager familyManager, ComponentOperationHandler componentOperationHandler) {
+        this.entityManager = entityManager;
+        this.familyManager = familyManager;
+        this.componentOperationHandler = componentOperationHandler;
+    }
+
+    /**
+     * @return Durations of {@link Engine#step(double)}, in nanoseconds
+     */
+    public Histogram getStepNanos() {
+        return stepNanos;
+    }
+
+    /**
+     * @return The largest number of delayed entity additions/removals found at a sync point, recorded once per step
+     */
+    public Histogram getPendingEntityOperations() {
+        return pendingEntityOperations;
+    }
+
+    /**
+     * @return The largest number of delayed component additions/removals found at a sync point, recorded once per step
+     */
+    public Histogram getPendingComponentOperations() {
+        return pendingComponentOperations;
+    }
+
+    /**
+     * @return The metrics of the specified system, or null if the system is not registered with the engine
+     */
+    public SystemMetrics getSystemMetrics(EntitySystem system) {
+        return metricsBySystem.get(system);
+    }
+
+    /**
+     * @return The metrics of all the systems registered with the engine
+     */
+    public ImmutableArray<SystemMetrics> getSystemMetrics() {
+        return immutableSystems;
+    }
+
+    /**
+     * @return The number of entities registered with the engine
+     */
+    public int getEntityCount() {
+        return entityManager.getEntities().size();
+    }
+
+    /**
+     * Reports every metric to visitor. Histograms are named {@code engine.step.nanos}, {@code engine.pending.entityOperations},
+     * {@code engine.pending.componentOperations}, {@code system.<name>.step.nanos} and {@code system.<name>.postStep.nanos}, and
+     * gauges {@code engine.entities} and {@code family.<index>.size}.
+     */
+    public void visit(Visitor visitor) {
+        visitor.gauge("engine.entities", getEntityCount());
+        visitor.histogram("engine.step.nanos", stepNanos);
+        visitor.histogram("engine.pending.entityOperations", pendingEntityOperations);
+        visitor.histogram("engine.pending.componentOperations", pendingComponentOperations);
+
+        for (int i = 0; i < systems.size; ++i) {
+            SystemMetrics metrics = systems.get(i);
+            visitor.histogram(metrics.stepName, metrics.stepNanos);
+            visitor.histogram(metrics.postStepName, metrics.postStepNanos);
+        }
+
+        Array<Family> families = familyManager.getFamilies();
+        for (int i = 0; i < families.size; ++i) {
+            Family family = families.get(i);
+            String name = familySizeNames.get(family.getIndex());
+            if (name == null) {
+                name = "family." + family.getIndex() + ".size";
+                familySizeNames.put(family.getIndex(), name);
+            }
+            visitor.gauge(name, familyManager.getFamilySize(family));
+        }
+    }
+
+    /**
+     * Clears all histograms.
+     */
+    public void reset() {
+        stepNanos.reset();
+        pendingEntityOperations.reset();
+        pendingComponentOperations.reset();
+        peakPendingEntityOperations = 0;
+        peakPendingComponentOperations = 0;
+        for (int i = 0; i < systems.size; ++i) {
+            systems.get(i).stepNanos.reset();
+            systems.get(i).postStepNanos.reset();
+        }
+    }
+
+    void addSystem(EntitySystem system) {
+        SystemMetrics metrics = new SystemMetrics(system);
+        metricsBySystem.put(system, metrics);
+        systems.add(metrics);
+    }
+
+    void removeSystem(EntitySystem system) {
+        SystemMetrics metrics = metricsBySystem.remove(system);
+        if (metrics != null) {
+            systems.removeValue(metrics, true);
+        }
+    }
+
+    void step(EntitySystem system, double deltaTime) {
+        SystemMetrics metrics = metricsBySystem.get(system);
+        long start = System.nanoTime();
+        system.step(deltaTime);
+        if (metrics != null) {
+            metrics.stepNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    void postStep(EntitySystem system) {
+        SystemMetrics metrics = metricsBySystem.get(system);
+        long start = System.nanoTime();
+        system.postStep();
+        if (metrics != null) {
+            metrics.postStepNanos.record(System.nanoTime() - start);
+        }
+    }
+
+    void recordStep(long nanos) {
+        stepNanos.record(nanos);
+        pendingEntityOperations.record(peakPendingEntityOperations);
+        pendingComponentOperations.record(peakPendingComponentOperations);
+        peakPendingEntityOperations = 0;
+        peakPendingComponentOperations = 0;
+    }
+
+    void samplePendingOperations() {
+        peakPendingEntityOperations = Math.max(peakPendingEntityOperations, entityManager.getPendingOperationCount());
+        peakPendingComponentOperations = Math.max(peakPendingComponentOperations, componentOperationHandler.getOperationCount());
+    }
+
+    /**
+     * Timings of a single {@link EntitySystem}.
+     */
+    public static final class SystemMetrics {
+
+        private final EntitySystem system;
+        private final String stepName;
+        private final String postStepName;
+        private final Histogram stepNanos = new Histogram();
+        private final Histogram postStepNanos = new Histogram();
+
+        SystemMetrics(EntitySystem system) {
+            this.system = system;
+            String name = system.getClass().getSimpleName();
+            if (name.isEmpty()) {
+                name = system.getClass().getName();
+            }
+            this.stepName = "system." + name + ".step.nanos";
+            this.postStepName = "system." + name + ".postStep.nanos";
+        }
+
+        public EntitySystem getSystem() {
+            return system;
+        }
+
+        /**
+         * @return Durations of {@link EntitySystem#step(double)}, in nanoseconds
+         */
+        public Histogram getStepNanos() {
+            return stepNanos;
+        }
+
+        /**
+         * @return Durations of {@link EntitySystem#postStep()}, in nanoseconds
+         */
+        public Histogram getPostStepNanos() {
+            return postStepNanos;
+        }
+    }
+
+    /**
+     * Receives the metrics reported by {@link #visit(Visitor)}.
+     */
+    public interface Visitor {
+
+        void gauge(String name, long value);
+
+        void histogram(String name, Histogram histogram);
+    }
+
+}
@@ -45,12 +45,20 @@ public class Entity {
     boolean scheduledForRemoval;
     boolean removing;
     ComponentOperationHandler componentOperationHandler;
+    Archetype archetype;
+    int archetypeSlot = -1;
+    int engineSlot = -1;
+    int id = -1;
+    EntityHandle handle;
+    int commandIndex = -1;
 
     private final Bag<Component> components;
     private final Array<Component> componentsArray;
     private final ImmutableArray<Component> immutableComponentsArray;
     private final Bits componentBits;
     private final Bits familyBits;
+    private final Bits dirtyComponentBits;
+    private int[] familySlots = new int[0];
 
     /**
      * Creates an empty Entity.
@@ -61,6 +69,7 @@ public class Entity {
         immutableComponentsArray = new ImmutableArray<>(componentsArray);
         componentBits = new Bits();
         familyBits = new Bits();
+        dirtyComponentBits = new Bits();
         flags = 0;
 
         componentAdded = new Signal<>();
@@ -107,7 +116,7 @@ public class Entity {
         if (components.isIndexWithinBounds(componentTypeIndex)) {
             Component removeComponent = components.get(componentTypeIndex);
 
-            if (removeComponent != null && removeInternal(componentClass) != null) {
+            if (removeComponent != null && removeInternal(componentTypeIndex) != null) {
                 if (componentOperationHandler != null) {
                     componentOperationHandler.remove(this);
                 } else {
@@ -187,26 +196,52 @@ public class Entity {
         return familyBits;
     }
 
+    /**
+     * @return The component types added to or removed from this Entity since its {@link Family} membership was last
+     * evaluated.
+     */
+    Bits getDirtyComponentBits() {
+        return dirtyComponentBits;
+    }
+
+    /**
+     * @return The index of this Entity within the entity array of the {@link Family} with the specified index. Only valid
+     * while the entity belongs to that family.
+     */
+    int getFamilySlot(int familyIndex) {
+        return familySlots[familyIndex];
+    }
+
+    void setFamilySlot(int familyIndex, int slot) {
+        if (familyIndex >= familySlots.length) {
+            int[] newFamilySlots = new int[Math.max(familyIndex + 1, familySlots.length * 2)];
+            System.arraycopy(familySlots, 0, newFamilySlots, 0, familySlots.length);
+            familySlots = newFamilySlots;
+        }
+        familySlots[familyIndex] = slot;
+    }
+
     /**
      * @param component
      * @return whether or not the component was added.
      */
     boolean addInternal(Component component) {
-        Class<? extends Component> componentClass = component.getClass();
-        Component oldComponent = getComponent(componentClass);
+        ComponentType componentType = ComponentType.getFor(component.getClass());
+        Component oldComponent = getComponent(componentType);
 
         if (component == oldComponent) {
             return false;
         }
 
+        int componentTypeIndex = componentType.getIndex();
         if (oldComponent != null) {
-            removeInternal(componentClass);
+            removeInternal(componentTypeIndex);
         }
 
-        int componentTypeIndex = ComponentType.getIndexFor(componentClass);
         components.set(componentTypeIndex, component);
         componentsArray.add(component);
         componentBits.set(componentTypeIndex);
+        dirtyComponentBits.set(componentTypeIndex);
 
         return true;
     }
@@ -216,14 +251,24 @@ public class Entity {
      * @return the component if the specified class was found and removed. Otherwise, null
      */
     Component removeInternal(Class<? extends Component> componentClass) {
-        ComponentType componentType = ComponentType.getFor(componentClass);
-        int componentTypeIndex = componentType.getIndex();
+        return removeInternal(ComponentType.getIndexFor(componentClass));
+    }
+
+    /**
+     * @param componentTypeIndex
+     * @return the component if one of the type with the specified index was found and removed. Otherwise, null
+     */
+    Component removeInternal(int componentTypeIndex) {
+        if (!components.isIndexWithinBounds(componentTypeIndex)) {
+            return null;
+        }
         Component removeComponent = components.get(componentTypeIndex);
 
         if (removeComponent != null) {
             components.set(componentTypeIndex, null);
             componentsArray.removeValue(removeComponent, true);
             componentBits.clear(componentTypeIndex);
+            dirtyComponentBits.set(componentTypeIndex);
 
             return removeComponent;
         }
@@ -239,6 +284,22 @@ public class Entity {
         componentRemoved.dispatch(this);
     }
 
+    /**
+     * @return The id of this Entity, unique among the entities of its {@link Engine}. Ids are dense, starting at 0, and are
+     * reused once an entity is removed. -1 if the Entity is not registered with an Engine.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return A handle to this Entity that does not resolve to another entity reusing its id, or null if the Entity is not
+     * registered with an {@link Engine}.
+     */
+    public EntityHandle getHandle() {
+        return handle;
+    }
+
     /**
      * @return true if the entity is scheduled to be removed
      */
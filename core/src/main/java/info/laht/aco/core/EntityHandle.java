@@ -0,0 +1,52 @@
+package info.laht.aco.core;
+
+/**
+ * An immutable reference to an {@link Entity} registered with an {@link Engine}, made up of the entity's id and the
+ * generation of that id. Ids are recycled once an entity is removed, but every reuse bumps the generation, so a handle to a
+ * removed entity never resolves to the entity that took over its id. Resolve handles with {@link Engine#getEntity(EntityHandle)}.
+ * <p>
+ * Unlike an {@link Entity} reference, a handle stays safe to hold on to when entities are pooled, e.g. by {@link PooledEngine}.
+ */
+public final class EntityHandle {
+
+    private final int id;
+    private final int generation;
+
+    EntityHandle(int id, int generation) {
+        this.id = id;
+        this.generation = generation;
+    }
+
+    /**
+     * @return The id of the referenced entity
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The generation of the id when the handle was created
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * id + generation;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof EntityHandle)) return false;
+        EntityHandle other = (EntityHandle) obj;
+        return id == other.id && generation == other.generation;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityHandle{id=" + id + ", generation=" + generation + "}";
+    }
+
+}
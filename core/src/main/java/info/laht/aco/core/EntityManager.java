@@ -1,7 +1,7 @@
 package info.laht.aco.core;
 
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.Pool;
 import info.laht.aco.utils.ImmutableArray;
 
@@ -9,10 +9,17 @@ class EntityManager {
 
     private final EntityListener listener;
     private final Array<Entity> entities = new Array<>(false, 16);
-    private final ObjectSet<Entity> entitySet = new ObjectSet<>();
     private final ImmutableArray<Entity> immutableEntities = new ImmutableArray<>(entities);
     private final Array<EntityOperation> pendingOperations = new Array<>(false, 16);
     private final EntityOperationPool entityOperationPool = new EntityOperationPool();
+    private final IntArray freeIds = new IntArray(false, 16);
+    private final Array<Entity> addedBatch = new Array<>(true, 16, Entity.class);
+    private final ImmutableArray<Entity> immutableAddedBatch = new ImmutableArray<>(addedBatch);
+    private final Array<Entity> removedBatch = new Array<>(true, 16, Entity.class);
+    private final ImmutableArray<Entity> immutableRemovedBatch = new ImmutableArray<>(removedBatch);
+    private Entity[] entitiesById = new Entity[16];
+    private int[] generations = new int[16];
+    private int idCount = 0;
 
     public EntityManager(EntityListener listener) {
         this.listener = listener;
@@ -24,34 +31,81 @@ class EntityManager {
 
     public void addEntity(Entity entity, boolean delayed) {
         if (delayed) {
-            EntityOperation operation = entityOperationPool.obtain();
-            operation.entity = entity;
-            operation.type = EntityOperation.Type.Add;
-            pendingOperations.add(operation);
+            // Systems may process entities on several threads, so queueing has to be synchronized
+            synchronized (pendingOperations) {
+                EntityOperation operation = entityOperationPool.obtain();
+                operation.entity = entity;
+                operation.type = EntityOperation.Type.Add;
+                pendingOperations.add(operation);
+            }
         } else {
             addEntityInternal(entity);
         }
     }
 
+    /**
+     * Adds the entities in one batch, see {@link BatchEntityListener}.
+     */
+    public void addEntities(Iterable<? extends Entity> newEntities, boolean delayed) {
+        if (delayed) {
+            synchronized (pendingOperations) {
+                EntityOperation operation = entityOperationPool.obtain();
+                operation.type = EntityOperation.Type.AddBatch;
+                for (Entity entity : newEntities) {
+                    operation.batch.add(entity);
+                }
+                pendingOperations.add(operation);
+            }
+        } else {
+            for (Entity entity : newEntities) {
+                addedBatch.add(entity);
+            }
+            addEntitiesInternal();
+        }
+    }
+
     public void removeEntity(Entity entity) {
         removeEntity(entity, false);
     }
 
     public void removeEntity(Entity entity, boolean delayed) {
         if (delayed) {
-            if (entity.scheduledForRemoval) {
-                return;
+            synchronized (pendingOperations) {
+                if (entity.scheduledForRemoval) {
+                    return;
+                }
+                entity.scheduledForRemoval = true;
+                EntityOperation operation = entityOperationPool.obtain();
+                operation.entity = entity;
+                operation.type = EntityOperation.Type.Remove;
+                pendingOperations.add(operation);
             }
-            entity.scheduledForRemoval = true;
-            EntityOperation operation = entityOperationPool.obtain();
-            operation.entity = entity;
-            operation.type = EntityOperation.Type.Remove;
-            pendingOperations.add(operation);
         } else {
             removeEntityInternal(entity);
         }
     }
 
+    /**
+     * Removes the entities in one batch, see {@link BatchEntityListener}. Entities not registered are ignored.
+     */
+    public void removeEntities(Iterable<? extends Entity> entities, boolean delayed) {
+        if (delayed) {
+            synchronized (pendingOperations) {
+                EntityOperation operation = entityOperationPool.obtain();
+                operation.type = EntityOperation.Type.RemoveBatch;
+                for (Entity entity : entities) {
+                    if (!entity.scheduledForRemoval) {
+                        entity.scheduledForRemoval = true;
+                        operation.batch.add(entity);
+                    }
+                }
+                pendingOperations.add(operation);
+            }
+        } else {
+            removeEntitiesInternal(entities);
+        }
+    }
+
     public void removeAllEntities() {
         removeAllEntities(immutableEntities);
     }
@@ -66,17 +120,17 @@ class EntityManager {
 
     public void removeAllEntities(ImmutableArray<Entity> entities, boolean delayed) {
         if (delayed) {
-            for (Entity entity : entities) {
-                entity.scheduledForRemoval = true;
+            synchronized (pendingOperations) {
+                for (Entity entity : entities) {
+                    entity.scheduledForRemoval = true;
+                }
+                EntityOperation operation = entityOperationPool.obtain();
+                operation.type = EntityOperation.Type.RemoveAll;
+                operation.entities = entities;
+                pendingOperations.add(operation);
             }
-            EntityOperation operation = entityOperationPool.obtain();
-            operation.type = EntityOperation.Type.RemoveAll;
-            operation.entities = entities;
-            pendingOperations.add(operation);
         } else {
-            while (entities.size() > 0) {
-                removeEntity(entities.first(), false);
-            }
+            removeEntitiesInternal(entities);
         }
     }
 
@@ -84,10 +138,39 @@ class EntityManager {
         return immutableEntities;
     }
 
+    /**
+     * @return The entity with the specified id, or null if no such entity is registered
+     */
+    public Entity getEntity(int id) {
+        return id >= 0 && id < idCount ? entitiesById[id] : null;
+    }
+
+    /**
+     * @return The entity referenced by handle, or null if it has been removed
+     */
+    public Entity getEntity(EntityHandle handle) {
+        int id = handle.getId();
+        if (id < idCount && generations[id] == handle.getGeneration()) {
+            return entitiesById[id];
+        }
+        return null;
+    }
+
+    /**
+     * @return One more than the largest id handed out so far, i.e. the size required by arrays indexed by entity id
+     */
+    public int getIdCount() {
+        return idCount;
+    }
+
     public boolean hasPendingOperations() {
         return pendingOperations.size > 0;
     }
 
+    public int getPendingOperationCount() {
+        return pendingOperations.size;
+    }
+
     public void processPendingOperations() {
         for (EntityOperation operation : pendingOperations) {
             switch (operation.type) {
@@ -97,10 +180,15 @@ class EntityManager {
                 case Remove:
                     removeEntityInternal(operation.entity);
                     break;
+                case AddBatch:
+                    addedBatch.addAll(operation.batch);
+                    addEntitiesInternal();
+                    break;
+                case RemoveBatch:
+                    removeEntitiesInternal(operation.batch);
+                    break;
                 case RemoveAll:
-                    while (operation.entities.size() > 0) {
-                        removeEntityInternal(operation.entities.first());
-                    }
+                    removeEntitiesInternal(operation.entities);
                     break;
                 default:
                     throw new AssertionError("Unexpected EntityOperation type");
@@ -113,42 +201,165 @@ class EntityManager {
     }
 
     protected void removeEntityInternal(Entity entity) {
-        boolean removed = entitySet.remove(entity);
-
-        if (removed) {
+        if (contains(entity)) {
+            int slot = entity.engineSlot;
             entity.scheduledForRemoval = false;
             entity.removing = true;
-            entities.removeValue(entity, true);
+
+            // Move the last entity into the vacated slot
+            entities.removeIndex(slot);
+            if (slot < entities.size) {
+                entities.get(slot).engineSlot = slot;
+            }
+            entity.engineSlot = -1;
+
             listener.entityRemoved(entity);
             entity.removing = false;
+
+            releaseId(entity);
         }
     }
 
     protected void addEntityInternal(Entity entity) {
-        if (entitySet.contains(entity)) {
+        if (contains(entity)) {
             throw new IllegalArgumentException("Entity is already registered " + entity);
         }
 
+        assignId(entity);
+        entity.engineSlot = entities.size;
         entities.add(entity);
-        entitySet.add(entity);
 
         listener.entityAdded(entity);
     }
 
+    // Adds the entities of addedBatch
+    private void addEntitiesInternal() {
+        try {
+            entities.ensureCapacity(addedBatch.size);
+            for (int i = 0; i < addedBatch.size; ++i) {
+                Entity entity = addedBatch.get(i);
+                if (contains(entity)) {
+                    // The entities registered so far are still added, like when adding them one by one
+                    addedBatch.truncate(i);
+                    notifyAdded();
+                    throw new IllegalArgumentException("Entity is already registered " + entity);
+                }
+                assignId(entity);
+                entity.engineSlot = entities.size;
+                entities.add(entity);
+            }
+            notifyAdded();
+        } finally {
+            addedBatch.clear();
+        }
+    }
+
+    private void notifyAdded() {
+        if (listener instanceof BatchEntityListener) {
+            ((BatchEntityListener) listener).entitiesAdded(immutableAddedBatch);
+        } else {
+            for (int i = 0; i < addedBatch.size; ++i) {
+                listener.entityAdded(addedBatch.get(i));
+            }
+        }
+    }
+
+    private void removeEntitiesInternal(Iterable<? extends Entity> removedEntities) {
+        // Copied first, as the entities may be those of a family, which shrinks while removing them
+        for (Entity entity : removedEntities) {
+            if (contains(entity) && !entity.removing) {
+                entity.removing = true;
+                removedBatch.add(entity);
+            }
+        }
+
+        try {
+            for (int i = 0; i < removedBatch.size; ++i) {
+                Entity entity = removedBatch.get(i);
+                int slot = entity.engineSlot;
+                entity.scheduledForRemoval = false;
+
+                // Move the last entity into the vacated slot
+                entities.removeIndex(slot);
+                if (slot < entities.size) {
+                    entities.get(slot).engineSlot = slot;
+                }
+                entity.engineSlot = -1;
+            }
+
+            if (listener instanceof BatchEntityListener) {
+                ((BatchEntityListener) listener).entitiesRemoved(immutableRemovedBatch);
+            } else {
+                for (int i = 0; i < removedBatch.size; ++i) {
+                    listener.entityRemoved(removedBatch.get(i));
+                }
+            }
+        } finally {
+            for (int i = 0; i < removedBatch.size; ++i) {
+                Entity entity = removedBatch.get(i);
+                entity.removing = false;
+                releaseId(entity);
+            }
+            removedBatch.clear();
+        }
+    }
+
+    private void assignId(Entity entity) {
+        int id;
+        if (freeIds.size > 0) {
+            id = freeIds.pop();
+        } else {
+            id = idCount++;
+            if (id == entitiesById.length) {
+                int capacity = entitiesById.length * 2;
+                Entity[] newEntitiesById = new Entity[capacity];
+                System.arraycopy(entitiesById, 0, newEntitiesById, 0, id);
+                entitiesById = newEntitiesById;
+                int[] newGenerations = new int[capacity];
+                System.arraycopy(generations, 0, newGenerations, 0, id);
+                generations = newGenerations;
+            }
+        }
+
+        entitiesById[id] = entity;
+        entity.id = id;
+        entity.handle = new EntityHandle(id, generations[id]);
+    }
+
+    private void releaseId(Entity entity) {
+        int id = entity.id;
+        entitiesById[id] = null;
+        // Invalidates all handles to the removed entity
+        ++generations[id];
+        freeIds.add(id);
+        entity.id = -1;
+        entity.handle = null;
+    }
+
+    private boolean contains(Entity entity) {
+        int slot = entity.engineSlot;
+        return slot >= 0 && slot < entities.size && entities.get(slot) == entity;
+    }
+
     private static class EntityOperation implements Pool.Poolable {
         public enum Type {
             Add,
             Remove,
-            RemoveAll
+            RemoveAll,
+            AddBatch,
+            RemoveBatch
         }
 
         public Type type;
         public Entity entity;
         public ImmutableArray<Entity> entities;
+        public final Array<Entity> batch = new Array<>(true, 16, Entity.class);
 
         @Override
         public void reset() {
             entity = null;
+            entities = null;
+            batch.clear();
         }
     }
 
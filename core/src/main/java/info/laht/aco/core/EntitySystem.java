@@ -80,6 +80,17 @@ public abstract class EntitySystem {
     protected void step(double deltaTime) {
     }
 
+    /**
+     * Declares the components this system reads and writes in {@link #step(double)}, allowing the {@link Engine} to step it
+     * concurrently with non-conflicting systems (see {@link Engine#setSystemPool}). Systems with overlapping access still
+     * run in priority order.
+     *
+     * @return The access of this system, or null (the default) if the system must run exclusively.
+     */
+    public SystemAccess getAccess() {
+        return null;
+    }
+
     protected void fixedStep(double deltaTime) {
     }
 
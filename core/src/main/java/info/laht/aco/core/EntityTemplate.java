@@ -0,0 +1,122 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A prefab: the set of {@link Component} types shared by entities spawned in bulk through
+ * {@link Engine#instantiate(EntityTemplate, int)}, each with an optional {@link Initializer} setting up the components.
+ * <p>
+ * Since all the instances of a template have the same component signature, the {@link Family}s they belong to are matched
+ * once per batch instead of once per entity. Templates are immutable and may be shared between engines.
+ * <pre>
+ * EntityTemplate particle = EntityTemplate.builder()
+ *         .add(PositionComponent.class)
+ *         .add(LifetimeComponent.class, lifetime -&gt; lifetime.remaining = 2)
+ *         .get();
+ * Array&lt;Entity&gt; particles = engine.instantiate(particle, 50000);
+ * </pre>
+ */
+public final class EntityTemplate {
+
+    /**
+     * Sets up a component of a new instance of a template, e.g. to copy the defaults of the prefab into it.
+     */
+    public interface Initializer<T extends Component> {
+        void initialize(@NotNull T component);
+    }
+
+    private final Class<? extends Component>[] types;
+    private final Initializer<?>[] initializers;
+
+    private EntityTemplate(Class<? extends Component>[] types, Initializer<?>[] initializers) {
+        this.types = types;
+        this.initializers = initializers;
+    }
+
+    /**
+     * @return A template of the specified component types, whose components are created without further initialization
+     */
+    @SafeVarargs
+    public static EntityTemplate of(@NotNull Class<? extends Component>... componentTypes) {
+        Builder builder = builder();
+        for (Class<? extends Component> type : componentTypes) {
+            builder.add(type);
+        }
+        return builder.get();
+    }
+
+    /**
+     * @return A builder for a new template
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of component types of this template
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * @return The component type at the specified index, in the order they were added to the builder
+     */
+    public Class<? extends Component> getType(int index) {
+        return types[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends Component> Initializer<T> getInitializer(int index) {
+        return (Initializer<T>) initializers[index];
+    }
+
+    public static class Builder {
+        private final Array<Class<? extends Component>> types = new Array<>();
+        private final Array<Initializer<?>> initializers = new Array<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a component type, created without further initialization. Replaces the type if it was added before.
+         *
+         * @return This builder for chaining
+         */
+        public Builder add(@NotNull Class<? extends Component> componentType) {
+            return add(componentType, null);
+        }
+
+        /**
+         * Adds a component type whose components are set up by the initializer. Replaces the type if it was added before.
+         *
+         * @return This builder for chaining
+         */
+        public <T extends Component> Builder add(@NotNull Class<T> componentType, Initializer<? super T> initializer) {
+            int index = types.indexOf(componentType, true);
+            if (index < 0) {
+                types.add(componentType);
+                initializers.add(initializer);
+            } else {
+                initializers.set(index, initializer);
+            }
+            return this;
+        }
+
+        /**
+         * @return A template of the component types added so far
+         */
+        @SuppressWarnings("unchecked")
+        public EntityTemplate get() {
+            Class<? extends Component>[] typeArray = new Class[types.size];
+            Initializer<?>[] initializerArray = new Initializer[initializers.size];
+            for (int i = 0; i < types.size; ++i) {
+                typeArray[i] = types.get(i);
+                initializerArray[i] = initializers.get(i);
+            }
+            return new EntityTemplate(typeArray, initializerArray);
+        }
+    }
+
+}
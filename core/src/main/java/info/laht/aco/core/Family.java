@@ -60,8 +60,13 @@ public class Family {
      * @return Whether the entity matches the family requirements or not
      */
     public boolean matches(Entity entity) {
-        Bits entityComponentBits = entity.getComponentBits();
+        return matches(entity.getComponentBits());
+    }
 
+    /**
+     * @return Whether a component signature matches the family requirements or not
+     */
+    boolean matches(Bits entityComponentBits) {
         if (!entityComponentBits.containsAll(all)) {
             return false;
         }
@@ -73,6 +78,18 @@ public class Family {
         return exclude.isEmpty() || !exclude.intersects(entityComponentBits);
     }
 
+    Bits getAll() {
+        return all;
+    }
+
+    Bits getOne() {
+        return one;
+    }
+
+    Bits getExclude() {
+        return exclude;
+    }
+
     /**
      * @param componentTypes entities will have to contain all of the specified components.
      * @return A Builder singleton instance to get a family
@@ -10,8 +10,16 @@ class FamilyManager {
     private final ObjectMap<Family, ImmutableArray<Entity>> immutableFamilies = new ObjectMap<Family, ImmutableArray<Entity>>();
     private final SnapshotArray<EntityListenerData> entityListeners = new SnapshotArray<EntityListenerData>(true, 16);
     private final ObjectMap<Family, Bits> entityListenerMasks = new ObjectMap<Family, Bits>();
+    private final Array<Family> registeredFamilies = new Array<Family>(false, 16, Family.class);
+    private final Array<Array<Family>> familiesByComponentType = new Array<Array<Family>>(true, 16);
     private final BitsPool bitsPool = new BitsPool();
+    private final Array<FamilyBatch> batchesByFamilyIndex = new Array<FamilyBatch>(true, 16, FamilyBatch.class);
+    private final Array<FamilyBatch> touchedBatches = new Array<FamilyBatch>(false, 16, FamilyBatch.class);
+    private final ObjectMap<Bits, Array<FamilyBatch>> joinedFamilies = new ObjectMap<Bits, Array<FamilyBatch>>();
+    private final FamilyBatchArrayPool familyBatchArrayPool = new FamilyBatchArrayPool();
     private boolean notifying = false;
+    private long evaluatedMatches = 0;
+    private long skippedMatches = 0;
 
     public FamilyManager(ImmutableArray<Entity> entities) {
         this.entities = entities;
@@ -21,10 +29,48 @@ class FamilyManager {
         return registerFamily(family);
     }
 
+    /**
+     * @param preserveOrder whether removing an entity from the family should keep the remaining entities in insertion
+     *                      order, which costs a shift of all subsequent entities. By default, the last entity is moved into
+     *                      the vacated slot instead.
+     */
+    public void setPreserveOrder(Family family, boolean preserveOrder) {
+        registerFamily(family);
+        families.get(family).ordered = preserveOrder;
+    }
+
     public boolean notifying() {
         return notifying;
     }
 
+    /**
+     * @return The families registered so far, in registration order
+     */
+    public Array<Family> getFamilies() {
+        return registeredFamilies;
+    }
+
+    /**
+     * @return The number of entities in a registered family
+     */
+    public int getFamilySize(Family family) {
+        return families.get(family).size;
+    }
+
+    /**
+     * @return The number of times an entity was matched against a family while updating family membership
+     */
+    public long getEvaluatedMatches() {
+        return evaluatedMatches;
+    }
+
+    /**
+     * @return The number of family matches avoided because the changed components of an entity were not mentioned by the family
+     */
+    public long getSkippedMatches() {
+        return skippedMatches;
+    }
+
     public void addEntityListener(Family family, int priority, EntityListener listener) {
         registerFamily(family);
 
@@ -54,6 +100,7 @@ class FamilyManager {
         EntityListenerData entityListenerData = new EntityListenerData();
         entityListenerData.listener = listener;
         entityListenerData.priority = priority;
+        entityListenerData.batch = batchesByFamilyIndex.get(family.getIndex());
         entityListeners.insert(insertionIndex, entityListenerData);
     }
 
@@ -78,33 +125,51 @@ class FamilyManager {
     }
 
     public void updateFamilyMembership(Entity entity) {
+        updateFamilyMembership(entity, false);
+    }
+
+    /**
+     * @param onlyChangedComponents if true, only the families mentioning the components added to or removed from the entity
+     *                              since the last update are re-evaluated. Otherwise all families are.
+     */
+    public void updateFamilyMembership(Entity entity, boolean onlyChangedComponents) {
         // Find families that the entity was added to/removed from, and fill
         // the bitmasks with corresponding listener bits.
         Bits addListenerBits = bitsPool.obtain();
         Bits removeListenerBits = bitsPool.obtain();
+        Bits dirtyComponentBits = entity.getDirtyComponentBits();
 
-        for (Family family : entityListenerMasks.keys()) {
-            final int familyIndex = family.getIndex();
-            final Bits entityFamilyBits = entity.getFamilyBits();
-
-            boolean belongsToFamily = entityFamilyBits.get(familyIndex);
-            boolean matches = family.matches(entity) && !entity.removing;
+        if (onlyChangedComponents && !entity.removing) {
+            Bits visitedFamilies = bitsPool.obtain();
+            int evaluated = 0;
 
-            if (belongsToFamily != matches) {
-                final Bits listenersMask = entityListenerMasks.get(family);
-                final Array<Entity> familyEntities = families.get(family);
-                if (matches) {
-                    addListenerBits.or(listenersMask);
-                    familyEntities.add(entity);
-                    entityFamilyBits.set(familyIndex);
-                } else {
-                    removeListenerBits.or(listenersMask);
-                    familyEntities.removeValue(entity, true);
-                    entityFamilyBits.clear(familyIndex);
+            for (int i = dirtyComponentBits.nextSetBit(0); i >= 0; i = dirtyComponentBits.nextSetBit(i + 1)) {
+                if (i >= familiesByComponentType.size) {
+                    break;
+                }
+                Array<Family> affectedFamilies = familiesByComponentType.get(i);
+                for (int j = 0; j < affectedFamilies.size; ++j) {
+                    Family family = affectedFamilies.get(j);
+                    if (!visitedFamilies.getAndSet(family.getIndex())) {
+                        updateMembership(entity, family, addListenerBits, removeListenerBits);
+                        ++evaluated;
+                    }
                 }
             }
+
+            evaluatedMatches += evaluated;
+            skippedMatches += registeredFamilies.size - evaluated;
+            visitedFamilies.clear();
+            bitsPool.free(visitedFamilies);
+        } else {
+            for (int i = 0; i < registeredFamilies.size; ++i) {
+                updateMembership(entity, registeredFamilies.get(i), addListenerBits, removeListenerBits);
+            }
+            evaluatedMatches += registeredFamilies.size;
         }
 
+        dirtyComponentBits.clear();
+
         // Notify listeners; set bits match indices of listeners
         notifying = true;
         Object[] items = entityListeners.begin();
@@ -127,6 +192,213 @@ class FamilyManager {
         }
     }
 
+    /**
+     * Updates the family membership of entities added to the engine in one batch. Entities sharing a component signature
+     * join the same families, which are matched once per signature. Every family is then appended all the entities joining
+     * it at once, in the order of the batch.
+     * <p>
+     * Listeners are notified once every entity of the batch has joined its families, in priority order: a
+     * {@link BatchEntityListener} once with all the entities that joined its family, other listeners once per entity.
+     */
+    public void addEntities(ImmutableArray<Entity> newEntities) {
+        Bits addListenerBits = bitsPool.obtain();
+
+        for (int i = 0; i < newEntities.size(); ++i) {
+            Entity entity = newEntities.get(i);
+            Array<FamilyBatch> joined = joinedFamilies.get(entity.getComponentBits());
+            if (joined == null) {
+                joined = matchFamilies(entity.getComponentBits(), addListenerBits);
+            }
+            for (int j = 0; j < joined.size; ++j) {
+                joined.get(j).add(entity, touchedBatches);
+            }
+            entity.getDirtyComponentBits().clear();
+        }
+
+        for (ObjectMap.Entry<Bits, Array<FamilyBatch>> entry : joinedFamilies) {
+            entry.key.clear();
+            bitsPool.free(entry.key);
+            entry.value.clear();
+            familyBatchArrayPool.free(entry.value);
+        }
+        joinedFamilies.clear();
+
+        for (int i = 0; i < touchedBatches.size; ++i) {
+            FamilyBatch batch = touchedBatches.get(i);
+            final int familyIndex = batch.family.getIndex();
+            final Array<Entity> familyEntities = batch.familyEntities;
+            int slot = familyEntities.size;
+            familyEntities.addAll(batch.entities);
+            for (int j = 0; j < batch.entities.size; ++j) {
+                Entity entity = batch.entities.get(j);
+                entity.setFamilySlot(familyIndex, slot++);
+                entity.getFamilyBits().set(familyIndex);
+            }
+        }
+
+        notifyBatches(addListenerBits, true);
+    }
+
+    /**
+     * Removes entities being removed from the engine in one batch from all their families. Families preserving their order
+     * are compacted once rather than shifted once per entity. Listeners are notified like by {@link #addEntities}.
+     */
+    public void removeEntities(ImmutableArray<Entity> removedEntities) {
+        Bits removeListenerBits = bitsPool.obtain();
+
+        for (int i = 0; i < removedEntities.size(); ++i) {
+            Entity entity = removedEntities.get(i);
+            Bits entityFamilyBits = entity.getFamilyBits();
+            for (int j = entityFamilyBits.nextSetBit(0); j >= 0; j = entityFamilyBits.nextSetBit(j + 1)) {
+                FamilyBatch batch = batchesByFamilyIndex.get(j);
+                removeListenerBits.or(batch.listenerMask);
+                batch.add(entity, touchedBatches);
+            }
+            entity.getDirtyComponentBits().clear();
+        }
+
+        for (int i = 0; i < touchedBatches.size; ++i) {
+            FamilyBatch batch = touchedBatches.get(i);
+            final int familyIndex = batch.family.getIndex();
+            final Array<Entity> familyEntities = batch.familyEntities;
+            for (int j = 0; j < batch.entities.size; ++j) {
+                batch.entities.get(j).getFamilyBits().clear(familyIndex);
+            }
+
+            if (familyEntities.ordered) {
+                // The entities that remain are those still having the family bit
+                int size = 0;
+                for (int j = 0; j < familyEntities.size; ++j) {
+                    Entity entity = familyEntities.get(j);
+                    if (entity.getFamilyBits().get(familyIndex)) {
+                        familyEntities.set(size, entity);
+                        entity.setFamilySlot(familyIndex, size++);
+                    }
+                }
+                familyEntities.truncate(size);
+            } else {
+                for (int j = 0; j < batch.entities.size; ++j) {
+                    removeFromFamily(batch.entities.get(j), familyIndex, familyEntities);
+                }
+            }
+        }
+
+        notifyBatches(removeListenerBits, false);
+    }
+
+    private Array<FamilyBatch> matchFamilies(Bits componentBits, Bits listenerBits) {
+        Array<FamilyBatch> joined = familyBatchArrayPool.obtain();
+        for (int i = 0; i < registeredFamilies.size; ++i) {
+            Family family = registeredFamilies.get(i);
+            if (family.matches(componentBits)) {
+                FamilyBatch batch = batchesByFamilyIndex.get(family.getIndex());
+                listenerBits.or(batch.listenerMask);
+                joined.add(batch);
+            }
+        }
+        evaluatedMatches += registeredFamilies.size;
+
+        Bits key = bitsPool.obtain();
+        key.or(componentBits);
+        joinedFamilies.put(key, joined);
+        return joined;
+    }
+
+    private void notifyBatches(Bits listenerBits, boolean added) {
+        notifying = true;
+        Object[] items = entityListeners.begin();
+
+        try {
+            for (int i = listenerBits.nextSetBit(0); i >= 0; i = listenerBits.nextSetBit(i + 1)) {
+                EntityListenerData entityListenerData = (EntityListenerData) items[i];
+                FamilyBatch batch = entityListenerData.batch;
+                if (batch.entities.size == 0) {
+                    continue;
+                }
+                EntityListener listener = entityListenerData.listener;
+                if (listener instanceof BatchEntityListener) {
+                    if (added) {
+                        ((BatchEntityListener) listener).entitiesAdded(batch.immutableEntities);
+                    } else {
+                        ((BatchEntityListener) listener).entitiesRemoved(batch.immutableEntities);
+                    }
+                } else {
+                    for (int j = 0; j < batch.entities.size; ++j) {
+                        if (added) {
+                            listener.entityAdded(batch.entities.get(j));
+                        } else {
+                            listener.entityRemoved(batch.entities.get(j));
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < touchedBatches.size; ++i) {
+                touchedBatches.get(i).entities.clear();
+            }
+            touchedBatches.clear();
+            listenerBits.clear();
+            bitsPool.free(listenerBits);
+            entityListeners.end();
+            notifying = false;
+        }
+    }
+
+    private void updateMembership(Entity entity, Family family, Bits addListenerBits, Bits removeListenerBits) {
+        final int familyIndex = family.getIndex();
+        final Bits entityFamilyBits = entity.getFamilyBits();
+
+        boolean belongsToFamily = entityFamilyBits.get(familyIndex);
+        boolean matches = family.matches(entity) && !entity.removing;
+
+        if (belongsToFamily != matches) {
+            final Bits listenersMask = entityListenerMasks.get(family);
+            final Array<Entity> familyEntities = families.get(family);
+            if (matches) {
+                addListenerBits.or(listenersMask);
+                entity.setFamilySlot(familyIndex, familyEntities.size);
+                familyEntities.add(entity);
+                entityFamilyBits.set(familyIndex);
+            } else {
+                removeListenerBits.or(listenersMask);
+                removeFromFamily(entity, familyIndex, familyEntities);
+                entityFamilyBits.clear(familyIndex);
+            }
+        }
+    }
+
+    private static void removeFromFamily(Entity entity, int familyIndex, Array<Entity> familyEntities) {
+        int slot = entity.getFamilySlot(familyIndex);
+        familyEntities.removeIndex(slot);
+
+        if (familyEntities.ordered) {
+            // Every entity after the removed one moved down by one
+            for (int i = slot; i < familyEntities.size; ++i) {
+                familyEntities.get(i).setFamilySlot(familyIndex, i);
+            }
+        } else if (slot < familyEntities.size) {
+            // The last entity was swapped into the vacated slot
+            familyEntities.get(slot).setFamilySlot(familyIndex, slot);
+        }
+    }
+
+    private void indexFamily(Family family) {
+        Bits componentBits = bitsPool.obtain();
+        componentBits.or(family.getAll());
+        componentBits.or(family.getOne());
+        componentBits.or(family.getExclude());
+
+        for (int i = componentBits.nextSetBit(0); i >= 0; i = componentBits.nextSetBit(i + 1)) {
+            while (familiesByComponentType.size <= i) {
+                familiesByComponentType.add(new Array<Family>(false, 4, Family.class));
+            }
+            familiesByComponentType.get(i).add(family);
+        }
+
+        componentBits.clear();
+        bitsPool.free(componentBits);
+    }
+
     private ImmutableArray<Entity> registerFamily(Family family) {
         ImmutableArray<Entity> entitiesInFamily = immutableFamilies.get(family);
 
@@ -135,11 +407,24 @@ class FamilyManager {
             entitiesInFamily = new ImmutableArray<Entity>(familyEntities);
             families.put(family, familyEntities);
             immutableFamilies.put(family, entitiesInFamily);
-            entityListenerMasks.put(family, new Bits());
+            Bits listenerMask = new Bits();
+            entityListenerMasks.put(family, listenerMask);
+            registeredFamilies.add(family);
+            while (batchesByFamilyIndex.size <= family.getIndex()) {
+                batchesByFamilyIndex.add(null);
+            }
+            batchesByFamilyIndex.set(family.getIndex(), new FamilyBatch(family, familyEntities, listenerMask));
+            indexFamily(family);
 
+            // The new family has no listeners yet, so there is no one to notify
+            Bits addListenerBits = bitsPool.obtain();
+            Bits removeListenerBits = bitsPool.obtain();
             for (Entity entity : entities) {
-                updateFamilyMembership(entity);
+                updateMembership(entity, family, addListenerBits, removeListenerBits);
             }
+            evaluatedMatches += entities.size();
+            bitsPool.free(addListenerBits);
+            bitsPool.free(removeListenerBits);
         }
 
         return entitiesInFamily;
@@ -148,6 +433,38 @@ class FamilyManager {
     private static class EntityListenerData {
         public EntityListener listener;
         public int priority;
+        public FamilyBatch batch;
+    }
+
+    /**
+     * The entities of a batch joining or leaving a family.
+     */
+    private static class FamilyBatch {
+        final Family family;
+        final Array<Entity> familyEntities;
+        final Bits listenerMask;
+        final Array<Entity> entities = new Array<Entity>(true, 16, Entity.class);
+        final ImmutableArray<Entity> immutableEntities = new ImmutableArray<Entity>(entities);
+
+        FamilyBatch(Family family, Array<Entity> familyEntities, Bits listenerMask) {
+            this.family = family;
+            this.familyEntities = familyEntities;
+            this.listenerMask = listenerMask;
+        }
+
+        void add(Entity entity, Array<FamilyBatch> touchedBatches) {
+            if (entities.size == 0) {
+                touchedBatches.add(this);
+            }
+            entities.add(entity);
+        }
+    }
+
+    private static class FamilyBatchArrayPool extends Pool<Array<FamilyBatch>> {
+        @Override
+        protected Array<FamilyBatch> newObject() {
+            return new Array<FamilyBatch>(false, 8, FamilyBatch.class);
+        }
     }
 
     private static class BitsPool extends Pool<Bits> {
@@ -0,0 +1,54 @@
+package info.laht.aco.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link Column} of float values.
+ */
+public final class FloatColumn extends Column {
+
+    public FloatColumn(@NotNull Class<? extends ColumnComponent> componentClass) {
+        super(componentClass);
+    }
+
+    /**
+     * @return The value of this column for the specified entity
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public float get(@NotNull Entity entity) {
+        return Float.intBitsToFloat((int) getBits(entity));
+    }
+
+    /**
+     * Sets the value of this column for the specified entity.
+     *
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public void set(@NotNull Entity entity, float value) {
+        setBits(entity, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * @return The backing array of this column within chunk, or null if the chunk's {@link Archetype} does not contain the
+     * component this column belongs to. Only the first {@link ArchetypeChunk#size()} elements are valid.
+     */
+    public float[] getArray(@NotNull ArchetypeChunk chunk) {
+        return (float[]) chunk.getColumnData(this);
+    }
+
+    @Override
+    Object newArray(int capacity) {
+        return new float[capacity];
+    }
+
+    @Override
+    long getBits(Object array, int row) {
+        return Float.floatToRawIntBits(((float[]) array)[row]);
+    }
+
+    @Override
+    void setBits(Object array, int row, long bits) {
+        ((float[]) array)[row] = Float.intBitsToFloat((int) bits);
+    }
+
+}
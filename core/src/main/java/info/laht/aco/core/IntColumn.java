@@ -0,0 +1,54 @@
+package info.laht.aco.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link Column} of int values.
+ */
+public final class IntColumn extends Column {
+
+    public IntColumn(@NotNull Class<? extends ColumnComponent> componentClass) {
+        super(componentClass);
+    }
+
+    /**
+     * @return The value of this column for the specified entity
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public int get(@NotNull Entity entity) {
+        return (int) getBits(entity);
+    }
+
+    /**
+     * Sets the value of this column for the specified entity.
+     *
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public void set(@NotNull Entity entity, int value) {
+        setBits(entity, value);
+    }
+
+    /**
+     * @return The backing array of this column within chunk, or null if the chunk's {@link Archetype} does not contain the
+     * component this column belongs to. Only the first {@link ArchetypeChunk#size()} elements are valid.
+     */
+    public int[] getArray(@NotNull ArchetypeChunk chunk) {
+        return (int[]) chunk.getColumnData(this);
+    }
+
+    @Override
+    Object newArray(int capacity) {
+        return new int[capacity];
+    }
+
+    @Override
+    long getBits(Object array, int row) {
+        return ((int[]) array)[row];
+    }
+
+    @Override
+    void setBits(Object array, int row, long bits) {
+        ((int[]) array)[row] = (int) bits;
+    }
+
+}
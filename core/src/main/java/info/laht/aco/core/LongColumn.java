@@ -0,0 +1,54 @@
+package info.laht.aco.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link Column} of long values.
+ */
+public final class LongColumn extends Column {
+
+    public LongColumn(@NotNull Class<? extends ColumnComponent> componentClass) {
+        super(componentClass);
+    }
+
+    /**
+     * @return The value of this column for the specified entity
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public long get(@NotNull Entity entity) {
+        return getBits(entity);
+    }
+
+    /**
+     * Sets the value of this column for the specified entity.
+     *
+     * @throws IllegalArgumentException if the entity does not have the component this column belongs to
+     */
+    public void set(@NotNull Entity entity, long value) {
+        setBits(entity, value);
+    }
+
+    /**
+     * @return The backing array of this column within chunk, or null if the chunk's {@link Archetype} does not contain the
+     * component this column belongs to. Only the first {@link ArchetypeChunk#size()} elements are valid.
+     */
+    public long[] getArray(@NotNull ArchetypeChunk chunk) {
+        return (long[]) chunk.getColumnData(this);
+    }
+
+    @Override
+    Object newArray(int capacity) {
+        return new long[capacity];
+    }
+
+    @Override
+    long getBits(Object array, int row) {
+        return ((long[]) array)[row];
+    }
+
+    @Override
+    void setBits(Object array, int row, long bits) {
+        ((long[]) array)[row] = bits;
+    }
+
+}
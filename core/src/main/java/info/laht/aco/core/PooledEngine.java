@@ -17,12 +17,13 @@
 package info.laht.aco.core;
 
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.Pool;
 import com.badlogic.gdx.utils.Pool.Poolable;
-import com.badlogic.gdx.utils.ReflectionPool;
+import info.laht.aco.utils.ImmutableArray;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 /**
  * Supports {@link Entity} and {@link Component} pooling. This improves performance in environments where creating/deleting
  * entities is frequent as it greatly reduces memory allocation.
@@ -30,6 +31,8 @@ import org.jetbrains.annotations.NotNull;
  * <li>Create entities using {@link #createEntity()}</li>
  * <li>Create components using {@link #createComponent(Class)}</li>
  * <li>Components should implement the {@link Poolable} interface when in need to reset its state upon removal</li>
+ * <li>Register the pools of frequently created component types using {@link #registerComponentPool}, to size them and to
+ * create their components without reflection</li>
  * </ul>
  *
  * @author David Saltares
@@ -53,8 +56,8 @@ public class PooledEngine extends Engine {
      *
      * @param entityPoolInitialSize    initial number of pre-allocated entities.
      * @param entityPoolMaxSize        maximum number of pooled entities.
-     * @param componentPoolInitialSize initial size for each component type pool.
-     * @param componentPoolMaxSize     maximum size for each component type pool.
+     * @param componentPoolInitialSize initial size for each component type pool, unless registered otherwise.
+     * @param componentPoolMaxSize     maximum size for each component type pool, unless registered otherwise.
      */
     public PooledEngine(int entityPoolInitialSize, int entityPoolMaxSize, int componentPoolInitialSize, int componentPoolMaxSize) {
         super();
@@ -69,7 +72,10 @@ public class PooledEngine extends Engine {
     @NotNull
     @Override
     public Entity createEntity() {
-        return entityPool.obtain();
+        // The command buffer creates entities on the threads of the systems recording into it
+        synchronized (entityPool) {
+            return entityPool.obtain();
+        }
     }
 
     /**
@@ -79,7 +85,69 @@ public class PooledEngine extends Engine {
      */
     @Override
     public <T extends Component> T createComponent(@NotNull Class<T> componentType) {
-        return componentPools.obtain(componentType);
+        // Like entities, components are created on the threads of the systems recording into the command buffer
+        synchronized (componentPools) {
+            return componentPools.get(componentType).obtain();
+        }
+    }
+
+    /**
+     * Retrieves the specified number of {@link Component}s from the {@link Engine} pool in one go, looking the pool of the type
+     * up only once.
+     */
+    @Override
+    public <T extends Component> void createComponents(@NotNull Class<T> componentType, int count, @NotNull Array<? super T> components) {
+        synchronized (componentPools) {
+            componentPools.get(componentType).obtain(count, components);
+        }
+    }
+
+    /**
+     * Registers the pool of a component type, replacing its current pool. The components of the type are created by the
+     * factory rather than through reflection, and reset by the reset if not null, or else by {@link Poolable#reset()} if they
+     * implement it.
+     *
+     * @param initialSize initial capacity of the pool, see {@link ComponentPool#fill(int)} to create components up front
+     * @param maxSize     maximum number of free components kept in the pool
+     * @return The new pool
+     */
+    public <T extends Component> ComponentPool<T> registerComponentPool(@NotNull Class<T> componentType,
+                                                                        @NotNull ComponentPool.Factory<? extends T> factory,
+                                                                        ComponentPool.Reset<? super T> reset,
+                                                                        int initialSize, int maxSize) {
+        ComponentPool<T> pool = new ComponentPool<>(componentType, factory, reset, initialSize, maxSize);
+        synchronized (componentPools) {
+            return componentPools.register(componentType, pool);
+        }
+    }
+
+    /**
+     * Registers the pool of a component type, sized like the pools of the types not registered.
+     *
+     * @see #registerComponentPool(Class, ComponentPool.Factory, ComponentPool.Reset, int, int)
+     */
+    public <T extends Component> ComponentPool<T> registerComponentPool(@NotNull Class<T> componentType,
+                                                                        @NotNull ComponentPool.Factory<? extends T> factory) {
+        return registerComponentPool(componentType, factory, null, componentPools.initialSize, componentPools.maxSize);
+    }
+
+    /**
+     * @return The pool of the component type. Types not registered get a pool creating their components through their no-arg
+     * constructor, sized as configured when creating this engine. The engine locks its pools when creating and freeing
+     * components, whereas the returned pool is not thread-safe: use it on the engine thread, outside of steps that record
+     * into the {@link CommandBuffer} from other threads.
+     */
+    public <T extends Component> ComponentPool<T> getComponentPool(@NotNull Class<T> componentType) {
+        synchronized (componentPools) {
+            return componentPools.get(componentType);
+        }
+    }
+
+    /**
+     * @return The component pools created so far, e.g. to read their statistics
+     */
+    public ImmutableArray<ComponentPool<?>> getComponentPools() {
+        return componentPools.getAll();
     }
 
     /**
@@ -87,25 +155,53 @@ public class PooledEngine extends Engine {
      * free up memory.
      */
     public void clearPools() {
-        entityPool.clear();
-        componentPools.clear();
+        synchronized (entityPool) {
+            entityPool.clear();
+        }
+        synchronized (componentPools) {
+            componentPools.clear();
+        }
+    }
+
+    /**
+     * Returns the entity to the pool, along with its components.
+     */
+    @Override
+    protected void discardEntity(@NotNull Entity entity) {
+        freeEntity(entity);
     }
 
     @Override
     protected void removeEntityInternal(@NotNull Entity entity) {
         super.removeEntityInternal(entity);
+        freeEntity(entity);
+    }
+
+    @Override
+    protected void removeEntitiesInternal(@NotNull ImmutableArray<Entity> entities) {
+        super.removeEntitiesInternal(entities);
 
+        for (int i = 0; i < entities.size(); ++i) {
+            freeEntity(entities.get(i));
+        }
+    }
+
+    private void freeEntity(Entity entity) {
         if (entity instanceof PooledEntity) {
-            entityPool.free((PooledEntity) entity);
+            synchronized (entityPool) {
+                entityPool.free((PooledEntity) entity);
+            }
         }
     }
 
     private class PooledEntity extends Entity implements Poolable {
         @Override
-        Component removeInternal(Class<? extends Component> componentClass) {
-            Component removed = super.removeInternal(componentClass);
+        Component removeInternal(int componentTypeIndex) {
+            Component removed = super.removeInternal(componentTypeIndex);
             if (removed != null) {
-                componentPools.free(removed);
+                synchronized (componentPools) {
+                    componentPools.free(removed, componentTypeIndex);
+                }
             }
 
             return removed;
@@ -135,54 +231,58 @@ public class PooledEngine extends Engine {
     }
 
     private static class ComponentPools {
-        private final ObjectMap<Class<?>, ReflectionPool> pools;
+        // Indexed by ComponentType index
+        private ComponentPool[] pools = new ComponentPool[16];
+        private final Array<ComponentPool<?>> poolArray = new Array<>(false, 16, ComponentPool.class);
+        private final ImmutableArray<ComponentPool<?>> immutablePoolArray = new ImmutableArray<>(poolArray);
         private final int initialSize;
         private final int maxSize;
 
         public ComponentPools(int initialSize, int maxSize) {
-            this.pools = new ObjectMap<>();
-            this.initialSize = initialSize;
+            // The entity pool accepts an initial size beyond its maximum size, which only reserves unused capacity
+            this.initialSize = Math.min(initialSize, maxSize);
             this.maxSize = maxSize;
         }
 
-        public <T> T obtain(Class<T> type) {
-            ReflectionPool pool = pools.get(type);
-
-            if (pool == null) {
-                pool = new ReflectionPool(type, initialSize, maxSize);
-                pools.put(type, pool);
+        public <T extends Component> ComponentPool<T> register(Class<T> type, ComponentPool<T> pool) {
+            int index = ComponentType.getIndexFor(type);
+            if (index >= pools.length) {
+                pools = Arrays.copyOf(pools, Math.max(index + 1, pools.length * 2));
             }
-
-            return (T) pool.obtain();
-        }
-
-        public void free(Object object) {
-            if (object == null) {
-                throw new IllegalArgumentException("object cannot be null.");
+            if (pools[index] != null) {
+                poolArray.removeValue(pools[index], true);
             }
+            pools[index] = pool;
+            poolArray.add(pool);
+            return pool;
+        }
 
-            ReflectionPool pool = pools.get(object.getClass());
-
-            if (pool == null) {
-                return; // Ignore freeing an object that was never retained.
+        public <T extends Component> ComponentPool<T> get(Class<T> type) {
+            int index = ComponentType.getIndexFor(type);
+            if (index < pools.length && pools[index] != null) {
+                return pools[index];
             }
+            return register(type, new ComponentPool<>(type, ComponentPool.constructorFactory(type), null, initialSize, maxSize));
+        }
 
-            pool.free(object);
+        public ImmutableArray<ComponentPool<?>> getAll() {
+            return immutablePoolArray;
         }
 
-        public void freeAll(Array objects) {
-            if (objects == null) throw new IllegalArgumentException("objects cannot be null.");
+        public void free(Component component, int index) {
+            if (component == null) {
+                throw new IllegalArgumentException("component cannot be null.");
+            }
 
-            for (int i = 0, n = objects.size; i < n; i++) {
-                Object object = objects.get(i);
-                if (object == null) continue;
-                free(object);
+            if (index < pools.length && pools[index] != null) {
+                pools[index].free(component);
             }
+            // Ignore freeing a component that was never retained.
         }
 
         public void clear() {
-            for (Pool pool : pools.values()) {
-                pool.clear();
+            for (int i = 0; i < poolArray.size; ++i) {
+                poolArray.get(i).clear();
             }
         }
     }
@@ -0,0 +1,100 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Bits;
+
+/**
+ * Declares which {@link Component} types an {@link EntitySystem} reads and writes during {@link EntitySystem#step(double)}.
+ * When the {@link Engine} is given a pool to step systems on, two systems are allowed to run concurrently only if their
+ * accesses do not conflict, i.e. neither writes a component type the other one reads or writes.
+ * Example: {@code SystemAccess.reads(VelocityComponent.class).writes(PositionComponent.class).get()}
+ * <p>
+ * Adding or removing a component counts as writing it.
+ *
+ * @see EntitySystem#getAccess()
+ */
+public final class SystemAccess {
+
+    private static final Bits zeroBits = new Bits();
+
+    private final Bits reads;
+    private final Bits writes;
+
+    private SystemAccess(Bits reads, Bits writes) {
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    /**
+     * @return Whether the component type is read, or written, by the system
+     */
+    public boolean readsComponent(Class<? extends Component> componentType) {
+        int index = ComponentType.getIndexFor(componentType);
+        return reads.get(index) || writes.get(index);
+    }
+
+    /**
+     * @return Whether the component type is written by the system
+     */
+    public boolean writesComponent(Class<? extends Component> componentType) {
+        return writes.get(ComponentType.getIndexFor(componentType));
+    }
+
+    /**
+     * @return Whether a system with this access must not run concurrently with a system having the other access
+     */
+    public boolean conflictsWith(SystemAccess other) {
+        return writes.intersects(other.reads) || writes.intersects(other.writes) || reads.intersects(other.writes);
+    }
+
+    /**
+     * @param componentTypes component types read by the system.
+     * @return A new Builder instance
+     */
+    @SafeVarargs
+    public static Builder reads(Class<? extends Component>... componentTypes) {
+        return new Builder().reads(componentTypes);
+    }
+
+    /**
+     * @param componentTypes component types written by the system.
+     * @return A new Builder instance
+     */
+    @SafeVarargs
+    public static Builder writes(Class<? extends Component>... componentTypes) {
+        return new Builder().writes(componentTypes);
+    }
+
+    public static class Builder {
+
+        private Bits reads = zeroBits;
+        private Bits writes = zeroBits;
+
+        /**
+         * @param componentTypes component types read by the system.
+         * @return This Builder
+         */
+        @SafeVarargs
+        public final Builder reads(Class<? extends Component>... componentTypes) {
+            reads = ComponentType.getBitsFor(componentTypes);
+            return this;
+        }
+
+        /**
+         * @param componentTypes component types written by the system.
+         * @return This Builder
+         */
+        @SafeVarargs
+        public final Builder writes(Class<? extends Component>... componentTypes) {
+            writes = ComponentType.getBitsFor(componentTypes);
+            return this;
+        }
+
+        /**
+         * @return An access for the configured component types
+         */
+        public SystemAccess get() {
+            return new SystemAccess(reads, writes);
+        }
+    }
+
+}
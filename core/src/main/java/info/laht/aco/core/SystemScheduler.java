@@ -0,0 +1,165 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import info.laht.aco.utils.ImmutableArray;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Steps systems concurrently on a {@link ForkJoinPool}. Every step, the enabled systems are split into segments separated by
+ * exclusive systems (those without a {@link SystemAccess}). Within a segment, a dependency graph is built where a system
+ * depends on every system of higher priority whose access conflicts with its own; systems are started as soon as all their
+ * dependencies are done.
+ * <p>
+ * Structural changes made by the systems are applied at the end of each segment and around every exclusive system.
+ */
+class SystemScheduler {
+
+    private final Array<EntitySystem> segment = new Array<>(true, 16, EntitySystem.class);
+    private final Array<SystemAccess> accesses = new Array<>(true, 16, SystemAccess.class);
+    private final Array<IntArray> successors = new Array<>(true, 16);
+    private int[] dependencyCounts = new int[16];
+    private EngineMetrics metrics;
+
+    public void step(ForkJoinPool pool, ImmutableArray<EntitySystem> systems, double deltaTime, Runnable syncPoint,
+                     EngineMetrics metrics) {
+        this.metrics = metrics;
+        try {
+            stepSystems(pool, systems, deltaTime, syncPoint);
+        } finally {
+            this.metrics = null;
+        }
+    }
+
+    private void stepSystems(ForkJoinPool pool, ImmutableArray<EntitySystem> systems, double deltaTime, Runnable syncPoint) {
+        for (int i = 0; i < systems.size(); ++i) {
+            EntitySystem system = systems.get(i);
+            if (!system.isEnabled()) {
+                continue;
+            }
+
+            SystemAccess access = system.getAccess();
+            if (access == null) {
+                runSegment(pool, deltaTime, syncPoint);
+                stepSystem(system, deltaTime);
+                syncPoint.run();
+            } else {
+                segment.add(system);
+                accesses.add(access);
+            }
+        }
+
+        runSegment(pool, deltaTime, syncPoint);
+    }
+
+    private void runSegment(ForkJoinPool pool, double deltaTime, Runnable syncPoint) {
+        int size = segment.size;
+        if (size == 0) {
+            return;
+        }
+
+        try {
+            if (size == 1) {
+                stepSystem(segment.first(), deltaTime);
+            } else {
+                buildGraph(size);
+                pool.invoke(new SegmentTask(size, deltaTime));
+            }
+        } finally {
+            segment.clear();
+            accesses.clear();
+        }
+
+        syncPoint.run();
+    }
+
+    private void stepSystem(EntitySystem system, double deltaTime) {
+        if (metrics == null) {
+            system.step(deltaTime);
+        } else {
+            metrics.step(system, deltaTime);
+        }
+    }
+
+    private void buildGraph(int size) {
+        if (dependencyCounts.length < size) {
+            dependencyCounts = new int[Math.max(size, dependencyCounts.length * 2)];
+        }
+        while (successors.size < size) {
+            successors.add(new IntArray(false, 8));
+        }
+
+        for (int j = 0; j < size; ++j) {
+            dependencyCounts[j] = 0;
+            successors.get(j).clear();
+        }
+
+        SystemAccess[] access = accesses.items;
+        for (int j = 1; j < size; ++j) {
+            for (int i = 0; i < j; ++i) {
+                if (access[i].conflictsWith(access[j])) {
+                    successors.get(i).add(j);
+                    ++dependencyCounts[j];
+                }
+            }
+        }
+    }
+
+    private final class SegmentTask extends CountedCompleter<Void> {
+
+        private final int size;
+        private final double deltaTime;
+        private final AtomicIntegerArray remaining;
+
+        SegmentTask(int size, double deltaTime) {
+            this.size = size;
+            this.deltaTime = deltaTime;
+            this.remaining = new AtomicIntegerArray(size);
+        }
+
+        @Override
+        public void compute() {
+            for (int j = 0; j < size; ++j) {
+                remaining.set(j, dependencyCounts[j]);
+            }
+            for (int j = 0; j < size; ++j) {
+                if (dependencyCounts[j] == 0) {
+                    addToPendingCount(1);
+                    new SystemTask(this, this, j).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    private final class SystemTask extends CountedCompleter<Void> {
+
+        private final SegmentTask root;
+        private final int node;
+
+        SystemTask(CountedCompleter<?> parent, SegmentTask root, int node) {
+            super(parent);
+            this.root = root;
+            this.node = node;
+        }
+
+        @Override
+        public void compute() {
+            stepSystem(segment.get(node), root.deltaTime);
+
+            IntArray next = successors.get(node);
+            for (int k = 0; k < next.size; ++k) {
+                int successor = next.get(k);
+                if (root.remaining.decrementAndGet(successor) == 0) {
+                    addToPendingCount(1);
+                    new SystemTask(this, root, successor).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+}
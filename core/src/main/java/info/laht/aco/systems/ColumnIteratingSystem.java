@@ -0,0 +1,93 @@
+package info.laht.aco.systems;
+
+import info.laht.aco.core.Archetype;
+import info.laht.aco.core.ArchetypeChunk;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.EntitySystem;
+import info.laht.aco.core.Family;
+import info.laht.aco.utils.ImmutableArray;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The chunk based counterpart of {@link IteratingSystem}. Instead of handing out one entity at a time, this system walks the
+ * {@link Archetype}s matching its Family and calls processChunk() for every non-empty {@link ArchetypeChunk}. Implementations
+ * retrieve the backing arrays of the chunk, e.g. through {@link info.laht.aco.core.DoubleColumn#getArray(ArchetypeChunk)} or
+ * {@link info.laht.aco.core.ComponentMapper#getColumn(ArchetypeChunk)}, and process them in a plain indexed loop.
+ * <p>
+ * Adding this system to an {@link Engine} enables archetype storage, see {@link Engine#getArchetypesFor(Family)}.
+ */
+public abstract class ColumnIteratingSystem extends EntitySystem {
+
+    private final Family family;
+    private ImmutableArray<Archetype> archetypes;
+
+    /**
+     * Instantiates a system that will iterate over the chunks of the entities described by the Family.
+     *
+     * @param family The family of entities iterated over in this System
+     */
+    public ColumnIteratingSystem(Family family) {
+        this(family, 0);
+    }
+
+    /**
+     * Instantiates a system that will iterate over the chunks of the entities described by the Family, with a specific priority.
+     *
+     * @param family   The family of entities iterated over in this System
+     * @param priority The priority to execute this system with (lower means higher priority)
+     */
+    public ColumnIteratingSystem(Family family, int priority) {
+        super(priority);
+
+        this.family = family;
+    }
+
+    @Override
+    public void addedToEngine(@NotNull Engine engine) {
+        archetypes = engine.getArchetypesFor(family);
+    }
+
+    @Override
+    public void removedFromEngine(@NotNull Engine engine) {
+        archetypes = null;
+    }
+
+    @Override
+    public void step(double deltaTime) {
+        for (int i = 0; i < archetypes.size(); ++i) {
+            ImmutableArray<ArchetypeChunk> chunks = archetypes.get(i).getChunks();
+            for (int j = 0; j < chunks.size(); ++j) {
+                ArchetypeChunk chunk = chunks.get(j);
+                int size = chunk.size();
+                if (size > 0) {
+                    processChunk(chunk, size, deltaTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return archetypes processed by the system
+     */
+    public ImmutableArray<Archetype> getArchetypes() {
+        return archetypes;
+    }
+
+    /**
+     * @return the Family used when the system was created
+     */
+    public Family getFamily() {
+        return family;
+    }
+
+    /**
+     * This method is called on every non-empty chunk on every update call of the EntitySystem. Override this to implement your
+     * system's specific processing.
+     *
+     * @param chunk     The current chunk being processed
+     * @param size      The number of valid rows in chunk
+     * @param deltaTime The delta time between the last and current frame
+     */
+    protected abstract void processChunk(@NotNull ArchetypeChunk chunk, int size, double deltaTime);
+
+}
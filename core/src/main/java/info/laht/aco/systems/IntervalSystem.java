@@ -16,17 +16,20 @@
 
 package info.laht.aco.systems;
 
+import info.laht.aco.core.Checkpointable;
 import info.laht.aco.core.Engine;
 import info.laht.aco.core.EntitySystem;
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.ByteBuffer;
+
 /**
  * A simple {@link EntitySystem} that does not run its update logic every call to {@link EntitySystem#step(double)}, but after a
  * given interval. The actual logic should be placed in {@link IntervalSystem#updateInterval(double, double)}.
  *
  * @author David Saltares
  */
-public abstract class IntervalSystem extends EntitySystem {
+public abstract class IntervalSystem extends EntitySystem implements Checkpointable {
 
     private final double interval;
     private double accumulator;
@@ -70,6 +73,18 @@ public abstract class IntervalSystem extends EntitySystem {
         }
     }
 
+    @Override
+    public void writeState(@NotNull ByteBuffer buffer) {
+        buffer.putDouble(accumulator);
+        buffer.putDouble(currentTime);
+    }
+
+    @Override
+    public void readState(@NotNull ByteBuffer buffer) {
+        accumulator = buffer.getDouble();
+        currentTime = buffer.getDouble();
+    }
+
     /**
      * The processing logic of the system should be placed here.
      */
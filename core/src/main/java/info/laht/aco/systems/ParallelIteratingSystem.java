@@ -0,0 +1,211 @@
+package info.laht.aco.systems;
+
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import info.laht.aco.core.EntitySystem;
+import info.laht.aco.core.Family;
+import info.laht.aco.utils.ImmutableArray;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link IteratingSystem} alternative that processes the entities of its Family concurrently. The entity array is split
+ * into contiguous ranges that are processed as fork/join tasks on a {@link ForkJoinPool}.
+ * <p>
+ * The grain size, i.e. the number of entities handled by a single task, adapts to the measured cost of processEntity() so
+ * that each task performs roughly {@link #getTargetTaskNanos()} worth of work, without going below
+ * {@link #getMinGrainSize()} or leaving pool threads idle. Small families are processed inline on the calling thread.
+ * <p>
+ * processEntity() is invoked concurrently for different entities. Adding/removing entities and components is safe, as such
+ * changes are queued by the {@link Engine} and applied once the system has finished stepping. Component classes should be
+ * registered up front (e.g. through {@link info.laht.aco.core.ComponentMapper#getFor(Class)}) rather than first seen on a
+ * worker thread.
+ */
+public abstract class ParallelIteratingSystem extends EntitySystem {
+
+    private static final double SMOOTHING = 0.2;
+
+    private final Family family;
+    private final ForkJoinPool pool;
+    private final LongAdder busyNanos = new LongAdder();
+    private ImmutableArray<Entity> entities;
+
+    private int minGrainSize = 32;
+    private long targetTaskNanos = 50_000;
+    private double nanosPerEntity = Double.NaN;
+    private int grainSize;
+
+    /**
+     * Instantiates a system that will iterate over the entities described by the Family on the common pool.
+     *
+     * @param family The family of entities iterated over in this System
+     */
+    public ParallelIteratingSystem(Family family) {
+        this(family, 0);
+    }
+
+    /**
+     * Instantiates a system that will iterate over the entities described by the Family on the common pool, with a specific
+     * priority.
+     *
+     * @param family   The family of entities iterated over in this System
+     * @param priority The priority to execute this system with (lower means higher priority)
+     */
+    public ParallelIteratingSystem(Family family, int priority) {
+        this(family, priority, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Instantiates a system that will iterate over the entities described by the Family on the specified pool, with a
+     * specific priority.
+     *
+     * @param family   The family of entities iterated over in this System
+     * @param priority The priority to execute this system with (lower means higher priority)
+     * @param pool     The pool used to process the entities
+     */
+    public ParallelIteratingSystem(Family family, int priority, @NotNull ForkJoinPool pool) {
+        super(priority);
+
+        this.family = family;
+        this.pool = pool;
+    }
+
+    @Override
+    public void addedToEngine(@NotNull Engine engine) {
+        entities = engine.getEntitiesFor(family);
+    }
+
+    @Override
+    public void removedFromEngine(@NotNull Engine engine) {
+        entities = null;
+    }
+
+    @Override
+    public void step(double deltaTime) {
+        int size = entities.size();
+        if (size == 0) {
+            return;
+        }
+
+        grainSize = computeGrainSize(size);
+        busyNanos.reset();
+
+        if (grainSize >= size) {
+            processRange(0, size, deltaTime);
+        } else {
+            pool.invoke(new RangeTask(0, size, deltaTime));
+        }
+
+        double sample = (double) busyNanos.sum() / size;
+        nanosPerEntity = Double.isNaN(nanosPerEntity) ? sample : nanosPerEntity + SMOOTHING * (sample - nanosPerEntity);
+    }
+
+    /**
+     * @return set of entities processed by the system
+     */
+    public ImmutableArray<Entity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return the Family used when the system was created
+     */
+    public Family getFamily() {
+        return family;
+    }
+
+    /**
+     * @return the pool entities are processed on
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the smallest number of entities handled by a single task
+     */
+    public int getMinGrainSize() {
+        return minGrainSize;
+    }
+
+    public void setMinGrainSize(int minGrainSize) {
+        if (minGrainSize < 1) throw new IllegalArgumentException("minGrainSize must be positive: " + minGrainSize);
+        this.minGrainSize = minGrainSize;
+    }
+
+    /**
+     * @return the amount of work, in nanoseconds, a single task should roughly perform
+     */
+    public long getTargetTaskNanos() {
+        return targetTaskNanos;
+    }
+
+    public void setTargetTaskNanos(long targetTaskNanos) {
+        if (targetTaskNanos < 1) throw new IllegalArgumentException("targetTaskNanos must be positive: " + targetTaskNanos);
+        this.targetTaskNanos = targetTaskNanos;
+    }
+
+    /**
+     * @return the grain size used during the last step
+     */
+    public int getGrainSize() {
+        return grainSize;
+    }
+
+    private int computeGrainSize(int size) {
+        int parallelism = pool.getParallelism();
+        // Never make tasks so large that some of the pool threads are left without work
+        int maxGrainSize = Math.max(minGrainSize, (size + parallelism - 1) / parallelism);
+
+        if (Double.isNaN(nanosPerEntity)) {
+            return Math.min(maxGrainSize, Math.max(minGrainSize, size / (parallelism * 4)));
+        }
+
+        double grain = targetTaskNanos / Math.max(nanosPerEntity, 1.0);
+        return (int) Math.min(maxGrainSize, Math.max(minGrainSize, grain));
+    }
+
+    private void processRange(int from, int to, double deltaTime) {
+        long start = System.nanoTime();
+        for (int i = from; i < to; ++i) {
+            processEntity(entities.get(i), deltaTime);
+        }
+        busyNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * This method is called on every entity on every update call of the EntitySystem, possibly from several threads at once.
+     * Override this to implement your system's specific processing.
+     *
+     * @param entity    The current Entity being processed
+     * @param deltaTime The delta time between the last and current frame
+     */
+    protected abstract void processEntity(@NotNull Entity entity, double deltaTime);
+
+    private class RangeTask extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final double deltaTime;
+
+        RangeTask(int from, int to, double deltaTime) {
+            this.from = from;
+            this.to = to;
+            this.deltaTime = deltaTime;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grainSize) {
+                processRange(from, to, deltaTime);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeTask(from, mid, deltaTime), new RangeTask(mid, to, deltaTime));
+            }
+        }
+    }
+
+}
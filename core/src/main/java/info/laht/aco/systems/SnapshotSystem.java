@@ -0,0 +1,374 @@
+package info.laht.aco.systems;
+
+import com.badlogic.gdx.utils.Array;
+import info.laht.aco.core.*;
+import info.laht.aco.utils.ImmutableArray;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes copies of selected components of the entities of a {@link Family}, so that another thread (a renderer, a
+ * telemetry exporter) can read a consistent state of the simulation without blocking or being blocked by the
+ * {@link Engine}.
+ * <p>
+ * At the end of every {@link Engine#step(double)}, in {@link #postStep()}, the registered component types are copied into a
+ * {@link Frame} which is then published. Frames are triple-buffered: the engine thread writes one frame, the reader holds
+ * another and the third is the latest published one. Handing frames over is a single atomic exchange on either side, so
+ * both are wait-free, and component instances are reused from frame to frame, so publishing does not allocate in steady
+ * state.
+ * <p>
+ * A SnapshotSystem supports a single reader thread; add one system per reader if several threads need snapshots. Component
+ * types must be registered before the system is added to an engine. Readers drawing the snapshots at their own rate may use
+ * an {@link Interpolator} to blend the two latest frames they read.
+ */
+public class SnapshotSystem extends EntitySystem {
+
+    private final Family family;
+    private final Array<Class<? extends Component>> types = new Array<>(true, 4, Class.class);
+    private final Array<ComponentMapper<? extends Component>> mappers = new Array<>(true, 4, ComponentMapper.class);
+    private final Array<Copier<?, ?>> copiers = new Array<>(true, 4, Copier.class);
+    private ImmutableArray<Entity> entities;
+
+    private final AtomicReference<Frame> latest = new AtomicReference<>();
+    private Frame back;
+    private Frame front;
+    private long sequence;
+
+    /**
+     * Instantiates a system snapshotting the entities described by the Family. The system gets the lowest possible priority,
+     * so that it copies the components after all other systems' {@link #postStep()}.
+     *
+     * @param family The family of entities to snapshot
+     */
+    public SnapshotSystem(Family family) {
+        this(family, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Instantiates a system snapshotting the entities described by the Family, with a specific priority.
+     *
+     * @param family   The family of entities to snapshot
+     * @param priority The priority to execute this system with (lower means higher priority)
+     */
+    public SnapshotSystem(Family family, int priority) {
+        super(priority);
+        this.family = family;
+    }
+
+    /**
+     * Adds a component type to the snapshots. Entities lacking a component of the type have null in its place.
+     *
+     * @param type   The component type to copy
+     * @param copier Creates and fills the copies, which may be of any type holding the state readers need
+     * @return This system for chaining
+     */
+    public <T extends Component> SnapshotSystem register(@NotNull Class<T> type, @NotNull Copier<? super T, ?> copier) {
+        if (getEngine() != null) {
+            throw new IllegalStateException("Component types must be registered before the system is added to an engine");
+        }
+        if (types.contains(type, true)) {
+            throw new IllegalArgumentException("Component type " + type.getName() + " is already registered");
+        }
+        types.add(type);
+        mappers.add(ComponentMapper.getFor(type));
+        copiers.add(copier);
+        return this;
+    }
+
+    /**
+     * @return The family of entities to snapshot
+     */
+    public Family getFamily() {
+        return family;
+    }
+
+    @Override
+    protected void addedToEngine(@NotNull Engine engine) {
+        entities = engine.getEntitiesFor(family);
+        back = new Frame(types);
+        front = new Frame(types);
+        latest.set(new Frame(types));
+    }
+
+    @Override
+    protected void removedFromEngine(@NotNull Engine engine) {
+        entities = null;
+    }
+
+    @Override
+    protected void postStep() {
+        Engine engine = getEngine();
+        Frame frame = back;
+        frame.sequence = ++sequence;
+        frame.stepNumber = engine.getStepNumber();
+        frame.time = engine.getCurrentTime();
+
+        int size = entities.size();
+        frame.ensureCapacity(size);
+        for (int i = 0; i < size; ++i) {
+            Entity entity = entities.get(i);
+            frame.handles[i] = entity.getHandle();
+            for (int t = 0; t < types.size; ++t) {
+                frame.components[t][i] = copy(t, entity, frame.copies[t], i);
+            }
+        }
+        for (int t = 0; t < types.size; ++t) {
+            // Release the references to components of rows no longer used
+            Object[] rows = frame.components[t];
+            for (int i = size; i < frame.size; ++i) {
+                rows[i] = null;
+            }
+        }
+        frame.size = size;
+
+        back = latest.getAndSet(frame);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Component, C> C copy(int type, Entity entity, Object[] copies, int row) {
+        T source = ((ComponentMapper<T>) mappers.get(type)).get(entity);
+        if (source == null) {
+            return null;
+        }
+        Copier<T, C> copier = (Copier<T, C>) copiers.get(type);
+        C target = (C) copies[row];
+        if (target == null) {
+            target = copier.create();
+            copies[row] = target;
+        }
+        copier.copy(source, target);
+        return target;
+    }
+
+    /**
+     * @return Whether a frame newer than the one last returned by {@link #acquire()} has been published
+     */
+    public boolean hasNewFrame() {
+        Frame frame = latest.get();
+        return frame != null && frame.sequence > front.sequence;
+    }
+
+    /**
+     * Returns the latest published frame. The frame remains valid, and unchanged, until the next call to this method, which
+     * must be made from the same thread.
+     *
+     * @return The latest frame, empty until the engine has stepped once
+     * @throws IllegalStateException if the system has never been added to an engine
+     */
+    public Frame acquire() {
+        if (front == null) {
+            throw new IllegalStateException("The system has not been added to an engine");
+        }
+        if (hasNewFrame()) {
+            front = latest.getAndSet(front);
+        }
+        return front;
+    }
+
+    /**
+     * Creates and fills the copies of a component type. Copies are reused for whichever entity ends up in their row, so
+     * {@link #copy(Component, Object)} must overwrite all of the state.
+     *
+     * @param <T> The component type
+     * @param <C> The type of the copies, e.g. the component type itself or just the part of its state readers need
+     */
+    public interface Copier<T extends Component, C> {
+
+        /**
+         * @return A new instance to copy components into
+         */
+        C create();
+
+        /**
+         * Copies the state of source into target.
+         */
+        void copy(T source, C target);
+    }
+
+    /**
+     * Tells a reader how far to blend from the previous frame it read towards the latest one, measuring both the frames and
+     * the reader's own clock in simulation time.
+     * <p>
+     * The reader's clock advances with wall clock time times the real-time factor the simulation is paced at, and the
+     * frames are drawn one simulation step behind it, so that there is a frame on either side of the time drawn. Frames
+     * are thus blended by the simulation time that separates them, however many of them were published between two reads:
+     * a reader drawing at 60 Hz a simulation stepping at 1 kHz draws close to the latest frame, whereas one drawing a
+     * simulation stepping at 30 Hz moves smoothly from one frame to the next.
+     * <p>
+     * An Interpolator is used by the reader thread only.
+     */
+    public static final class Interpolator {
+
+        private boolean hasFrame;
+        private double previousTime;
+        private double latestTime;
+        private long latestStepNumber;
+        private double stepDuration;
+
+        private boolean started;
+        private double clock;
+        private long lastNanos;
+
+        /**
+         * Records the times of a frame returned by {@link SnapshotSystem#acquire()}, which becomes the latest frame.
+         */
+        public void frameRead(@NotNull Frame frame) {
+            long stepNumber = frame.getStepNumber();
+            if (!hasFrame) {
+                previousTime = frame.getTime();
+            } else if (stepNumber != latestStepNumber) {
+                previousTime = latestTime;
+                stepDuration = (frame.getTime() - previousTime) / (stepNumber - latestStepNumber);
+            } else {
+                return;
+            }
+            hasFrame = true;
+            latestTime = frame.getTime();
+            latestStepNumber = stepNumber;
+        }
+
+        /**
+         * Advances the clock of the reader.
+         *
+         * @param nanos           The current {@link System#nanoTime()}
+         * @param realTimeFactor  How many seconds of simulation time the simulation runs per second of wall clock time
+         * @param maxLag          How far the clock may fall behind the latest frame, in seconds of wall clock time, before
+         *                        it is reset to the time of that frame
+         * @return How far to blend from the previous frame towards the latest one, from 0 to 1
+         */
+        public double update(long nanos, double realTimeFactor, double maxLag) {
+            if (!hasFrame) {
+                return 1;
+            }
+            if (!started) {
+                started = true;
+                clock = latestTime;
+            } else {
+                clock += (nanos - lastNanos) / 1e9 * realTimeFactor;
+            }
+            lastNanos = nanos;
+
+            if (clock > latestTime + stepDuration) {
+                // The simulation is late, hold the latest frame until it catches up
+                clock = latestTime + stepDuration;
+            } else if (clock < latestTime - maxLag * realTimeFactor) {
+                clock = latestTime;
+            }
+
+            double interval = latestTime - previousTime;
+            if (interval <= 0) {
+                return 1;
+            }
+            double alpha = (getTime() - previousTime) / interval;
+            return Math.min(1, Math.max(0, alpha));
+        }
+
+        /**
+         * @return The simulation time drawn, i.e. the clock of the reader one simulation step behind
+         */
+        public double getTime() {
+            return clock - stepDuration;
+        }
+    }
+
+    /**
+     * The state of the snapshotted entities at the end of a step. Rows follow the order of the Family's entities.
+     */
+    public static final class Frame {
+
+        private final Array<Class<? extends Component>> types;
+        private EntityHandle[] handles = new EntityHandle[0];
+        private final Object[][] components;
+        private final Object[][] copies;
+        private int size;
+
+        private volatile long sequence;
+        private long stepNumber;
+        private double time;
+
+        Frame(Array<Class<? extends Component>> types) {
+            this.types = types;
+            this.components = new Object[types.size][0];
+            this.copies = new Object[types.size][0];
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (handles.length >= capacity) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, handles.length * 2);
+            handles = Arrays.copyOf(handles, newCapacity);
+            for (int t = 0; t < components.length; ++t) {
+                components[t] = Arrays.copyOf(components[t], newCapacity);
+                copies[t] = Arrays.copyOf(copies[t], newCapacity);
+            }
+        }
+
+        /**
+         * @return The number of entities in the frame
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return The {@link Engine#getStepNumber()} after the step the frame was taken at
+         */
+        public long getStepNumber() {
+            return stepNumber;
+        }
+
+        /**
+         * @return The {@link Engine#getCurrentTime()} after the step the frame was taken at
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * @return The handle of the entity in the specified row
+         */
+        public EntityHandle getHandle(int row) {
+            checkRow(row);
+            return handles[row];
+        }
+
+        /**
+         * @return The index of the component type in this frame, or -1 if the type is not snapshotted
+         */
+        public int indexOf(Class<? extends Component> type) {
+            return types.indexOf(type, true);
+        }
+
+        /**
+         * @param type The index of the component type, see {@link #indexOf(Class)}
+         * @return The copy of the component in the specified row, or null if the entity did not have such a component
+         */
+        @SuppressWarnings("unchecked")
+        public <C> C get(int type, int row) {
+            checkRow(row);
+            return (C) components[type][row];
+        }
+
+        /**
+         * @return The copy of the component in the specified row, or null if the entity did not have such a component
+         * @throws IllegalArgumentException if the component type is not snapshotted
+         */
+        public <C> C get(Class<? extends Component> type, int row) {
+            int index = indexOf(type);
+            if (index < 0) {
+                throw new IllegalArgumentException("Component type " + type.getName() + " is not snapshotted");
+            }
+            return get(index, row);
+        }
+
+        private void checkRow(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " is out of bounds, size is " + size);
+            }
+        }
+    }
+
+}
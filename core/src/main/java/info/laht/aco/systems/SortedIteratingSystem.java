@@ -28,15 +28,24 @@ import java.util.Comparator;
  * processEntity() for each entity every time the EntitySystem is updated. This is really just a convenience class as rendering
  * systems tend to iterate over a list of entities in a sorted manner. Adding entities will cause the entity list to be resorted.
  * Call forceSort() if you changed your sorting criteria.
+ * <p>
+ * In incremental mode, see {@link #setIncremental(boolean)}, added entities are inserted in place with a binary search and
+ * removed entities are removed in place, so churn does not trigger a full sort. forceSort() then restores the order with an
+ * insertion sort, which is close to linear when the sorting keys change slightly between steps, falling back to a full sort
+ * when the entities turn out to be far from sorted.
  *
  * @author Santo Pfingsten
  */
 public abstract class SortedIteratingSystem extends EntitySystem implements EntityListener {
 
+    // Beyond this many shifts on average, the entities are considered too far from sorted for an insertion sort
+    private static final int MAX_SHIFTS_PER_ENTITY = 8;
+
     private final Family family;
     private final Array<Entity> sortedEntities;
     private final ImmutableArray<Entity> entities;
     private boolean shouldSort;
+    private boolean incremental;
     private final Comparator<Entity> comparator;
 
     /**
@@ -60,7 +69,7 @@ public abstract class SortedIteratingSystem extends EntitySystem implements Enti
         super(priority);
 
         this.family = family;
-        sortedEntities = new Array<>(false, 16);
+        sortedEntities = new Array<>(true, 16, Entity.class);
         entities = new ImmutableArray<>(sortedEntities);
         this.comparator = comparator;
     }
@@ -72,19 +81,80 @@ public abstract class SortedIteratingSystem extends EntitySystem implements Enti
         shouldSort = true;
     }
 
+    /**
+     * Sets whether additions and removals keep the entities sorted, instead of triggering a full sort, and whether
+     * forceSort() sorts adaptively. Disabled by default.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return whether the entities are sorted incrementally, see {@link #setIncremental(boolean)}
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
     private void sort() {
         if (shouldSort) {
-            sortedEntities.sort(comparator);
+            if (!incremental || !insertionSort(sortedEntities.size * MAX_SHIFTS_PER_ENTITY)) {
+                sortedEntities.sort(comparator);
+            }
             shouldSort = false;
         }
     }
 
+    /**
+     * Sorts the entities by insertion, giving up after the specified number of shifts.
+     *
+     * @return whether the entities are sorted
+     */
+    private boolean insertionSort(int maxShifts) {
+        Entity[] items = sortedEntities.items;
+        int size = sortedEntities.size;
+        int shifts = 0;
+        for (int i = 1; i < size; ++i) {
+            Entity entity = items[i];
+            int j = i - 1;
+            if (comparator.compare(items[j], entity) <= 0) {
+                continue;
+            }
+            do {
+                items[j + 1] = items[j];
+                --j;
+                if (++shifts > maxShifts) {
+                    items[j + 1] = entity;
+                    return false;
+                }
+            } while (j >= 0 && comparator.compare(items[j], entity) > 0);
+            items[j + 1] = entity;
+        }
+        return true;
+    }
+
+    // Inserts after the entities comparing equal, so that ties keep their insertion order
+    private void insertSorted(Entity entity) {
+        Entity[] items = sortedEntities.items;
+        int low = 0;
+        int high = sortedEntities.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(items[mid], entity) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        sortedEntities.insert(low, entity);
+    }
+
     @Override
     public void addedToEngine(Engine engine) {
         ImmutableArray<Entity> newEntities = engine.getEntitiesFor(family);
         sortedEntities.clear();
         if (newEntities.size() > 0) {
-            for (Entity entity : sortedEntities) {
+            for (Entity entity : newEntities) {
                 sortedEntities.add(entity);
             }
             sortedEntities.sort(comparator);
@@ -102,14 +172,18 @@ public abstract class SortedIteratingSystem extends EntitySystem implements Enti
 
     @Override
     public void entityAdded(@NotNull Entity entity) {
-        sortedEntities.add(entity);
-        shouldSort = true;
+        if (incremental) {
+            insertSorted(entity);
+        } else {
+            sortedEntities.add(entity);
+            shouldSort = true;
+        }
     }
 
     @Override
     public void entityRemoved(@NotNull Entity entity) {
+        // The entities are ordered, so removing keeps them sorted
         sortedEntities.removeValue(entity, true);
-        shouldSort = true;
     }
 
     @Override
@@ -0,0 +1,121 @@
+package info.laht.aco.utils;
+
+/**
+ * Fixed size histogram of non-negative long values, e.g. durations in nanoseconds. Values are counted in power-of-two buckets,
+ * so recording is constant-time and never allocates, at the cost of percentiles being accurate to within a factor of two.
+ * Count, sum, min and max are exact.
+ * <p>
+ * A histogram should only be recorded to by one thread at a time. Reading it from another thread is safe, but may observe a
+ * partially updated state.
+ */
+public final class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        // Bucket b holds the values in [2^(b-1), 2^b - 1], bucket 0 holds 0
+        ++buckets[BUCKETS - Long.numberOfLeadingZeros(value)];
+        ++count;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of the recorded values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The smallest recorded value, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * @return The largest recorded value, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The mean of the recorded values, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile in the range [0, 100]
+     * @return An upper bound of the value below which the specified percentage of the recorded values fall, or 0 if nothing
+     * was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long threshold = Math.max(1, (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+            seen += buckets[bucket];
+            if (seen >= threshold) {
+                long upperBound = bucket == 0 ? 0 : (bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1);
+                return Math.min(upperBound, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The number of recorded values in the bucket holding the values in [2^(bucket-1), 2^bucket - 1]. Bucket 0
+     * holds the zeros.
+     */
+    public long getBucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    /**
+     * @return The number of buckets
+     */
+    public int getNumBuckets() {
+        return BUCKETS;
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+}
@@ -0,0 +1,184 @@
+package info.laht.aco.core
+
+import java.io.IOException
+import java.nio.BufferOverflowException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.WritableByteChannel
+import java.nio.charset.StandardCharsets
+
+// The binary format shared by Checkpoint and Journal: records grouped into blocks prefixed by their length, so that a
+// record never spans two blocks and readers always have whole records at hand.
+
+internal val BLOCK_BYTE_ORDER: ByteOrder = ByteOrder.LITTLE_ENDIAN
+internal const val BLOCK_SIZE = 1 shl 20
+private const val BLOCK_HEADER_SIZE = 4
+
+/**
+ * Receives the full blocks of a [BlockWriter], flipped and ready to be written.
+ */
+internal interface BlockSink {
+
+    /**
+     * @return A buffer for the writer to continue with, possibly the same once written
+     */
+    fun write(block: ByteBuffer): ByteBuffer
+
+}
+
+internal class ChannelBlockSink(private val channel: WritableByteChannel) : BlockSink {
+
+    override fun write(block: ByteBuffer): ByteBuffer {
+        while (block.hasRemaining()) {
+            channel.write(block)
+        }
+        return block
+    }
+
+}
+
+internal class BlockWriter(private val sink: BlockSink, capacity: Int = BLOCK_SIZE) {
+
+    var buffer: ByteBuffer = prepare(allocateBlock(capacity))
+        private set
+
+    inline fun record(write: (ByteBuffer) -> Unit) {
+        val start = buffer.position()
+        try {
+            write(buffer)
+            return
+        } catch (e: BufferOverflowException) {
+            buffer.position(start)
+        }
+        flush()
+        while (true) {
+            try {
+                write(buffer)
+                return
+            } catch (e: BufferOverflowException) {
+                // The record does not even fit an empty block
+                grow()
+            }
+        }
+    }
+
+    val isEmpty: Boolean
+        get() = buffer.position() == BLOCK_HEADER_SIZE
+
+    fun flush() {
+        val buffer = buffer
+        if (isEmpty) {
+            return
+        }
+        buffer.putInt(0, buffer.position() - BLOCK_HEADER_SIZE)
+        buffer.flip()
+        this.buffer = prepare(sink.write(buffer))
+    }
+
+    fun grow() {
+        buffer = prepare(allocateBlock(buffer.capacity() * 2))
+    }
+
+    private fun prepare(buffer: ByteBuffer): ByteBuffer {
+        buffer.clear()
+        buffer.position(BLOCK_HEADER_SIZE)
+        return buffer
+    }
+
+}
+
+internal fun allocateBlock(capacity: Int): ByteBuffer {
+    return ByteBuffer.allocateDirect(capacity).order(BLOCK_BYTE_ORDER)
+}
+
+/**
+ * Reads the blocks written by a [BlockWriter], either from a channel or straight from a mapped buffer.
+ */
+internal class BlockReader(private val channel: ReadableByteChannel?, private val mapped: ByteBuffer?) {
+
+    private var buffer: ByteBuffer = (mapped?.duplicate()?.order(BLOCK_BYTE_ORDER) ?: allocateBlock(BLOCK_SIZE))
+        .apply { limit(0) }
+    private val header = ByteBuffer.allocate(BLOCK_HEADER_SIZE).order(BLOCK_BYTE_ORDER)
+    private var mappedPosition = 0
+
+    /**
+     * @return The buffer positioned at the next record
+     * @throws IOException at the end of the data
+     */
+    fun next(): ByteBuffer {
+        if (!hasNext()) {
+            throw IOException("Unexpected end of data")
+        }
+        return buffer
+    }
+
+    /**
+     * @return Whether there is another record
+     */
+    fun hasNext(): Boolean {
+        return buffer.hasRemaining() || nextBlock()
+    }
+
+    private fun nextBlock(): Boolean {
+        if (mapped != null) {
+            if (mappedPosition == mapped.limit()) {
+                return false
+            }
+            if (mappedPosition + BLOCK_HEADER_SIZE > mapped.limit()) {
+                throw IOException("Truncated block header")
+            }
+            val size = mapped.getInt(mappedPosition)
+            val start = mappedPosition + BLOCK_HEADER_SIZE
+            if (size <= 0 || start + size > mapped.limit()) {
+                throw IOException("Corrupt block of size $size")
+            }
+            buffer.limit(start + size)
+            buffer.position(start)
+            mappedPosition = start + size
+            return true
+        }
+        header.clear()
+        if (!readFully(header, true)) {
+            return false
+        }
+        val size = header.getInt(0)
+        if (size <= 0) {
+            throw IOException("Corrupt block of size $size")
+        }
+        if (size > buffer.capacity()) {
+            buffer = allocateBlock(size)
+        }
+        buffer.clear()
+        buffer.limit(size)
+        readFully(buffer, false)
+        buffer.flip()
+        return true
+    }
+
+    // Returns false if the channel ended before anything was read and that is allowed
+    private fun readFully(dest: ByteBuffer, endAllowed: Boolean): Boolean {
+        while (dest.hasRemaining()) {
+            if (channel!!.read(dest) < 0) {
+                if (endAllowed && dest.position() == 0) {
+                    return false
+                }
+                throw IOException("Unexpected end of data")
+            }
+        }
+        return true
+    }
+
+}
+
+internal fun putString(buffer: ByteBuffer, value: String) {
+    val bytes = value.toByteArray(StandardCharsets.UTF_8)
+    buffer.putShort(bytes.size.toShort())
+    buffer.put(bytes)
+}
+
+internal fun getString(buffer: ByteBuffer): String {
+    val bytes = ByteArray(buffer.short.toInt())
+    buffer.get(bytes)
+    return String(bytes, StandardCharsets.UTF_8)
+}
@@ -0,0 +1,192 @@
+package info.laht.aco.core
+
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.WritableByteChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Saves the state of an [Engine] in a compact binary format and restores it, so that long simulations can be resumed.
+ *
+ * A checkpoint holds the simulation clock ([Engine.currentTime], [Engine.stepNumber], [Engine.fixedStepNumber] and the
+ * fixed step accumulator), the state of the systems implementing [Checkpointable], and every entity with those of its
+ * components whose type has a [ComponentCodec] registered in [codecs]. Components of other types are not saved.
+ *
+ * Data is written through NIO channels in blocks of whole records, so saving never builds the checkpoint in memory.
+ * Restoring a file memory-maps it and decodes straight from the mapping. Restored entities are assigned new ids, in the
+ * order they were saved. Components referencing other entities, e.g. parent transforms, have to be relinked by the
+ * application.
+ */
+class Checkpoint @JvmOverloads constructor(
+    val codecs: ComponentCodecs = ComponentCodecs()
+) {
+
+    /**
+     * Registers the codec of a component type, see [ComponentCodecs.register].
+     *
+     * @return This checkpoint for chaining
+     */
+    fun <T : Component> register(type: Class<T>, codec: ComponentCodec<T>): Checkpoint {
+        codecs.register(type, codec)
+        return this
+    }
+
+    /**
+     * Writes the state of the engine to the file, replacing it.
+     */
+    @Throws(IOException::class)
+    fun save(engine: Engine, path: Path) {
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+        ).use { save(engine, it) }
+    }
+
+    /**
+     * Writes the state of the engine to the channel, which is left open.
+     */
+    @Throws(IOException::class)
+    fun save(engine: Engine, channel: WritableByteChannel) {
+        val writer = BlockWriter(ChannelBlockSink(channel))
+        writer.record { buffer ->
+            buffer.putInt(MAGIC)
+            buffer.putInt(VERSION)
+            buffer.putDouble(engine.currentTime)
+            buffer.putLong(engine.stepNumber)
+            buffer.putLong(engine.fixedStepNumber)
+            buffer.putDouble(engine.fixedTimeAccumulator)
+            buffer.putInt(codecs.size)
+        }
+        for (i in 0 until codecs.size) {
+            val name = codecs[i].type.name
+            writer.record { buffer -> putString(buffer, name) }
+        }
+
+        val systems = engine.systems
+        var checkpointables = 0
+        for (system in systems) {
+            if (system is Checkpointable) ++checkpointables
+        }
+        writer.record { buffer -> buffer.putInt(checkpointables) }
+        for (system in systems) {
+            if (system is Checkpointable) {
+                writer.record { buffer ->
+                    putString(buffer, system.javaClass.name)
+                    // Length prefixed, so that the state can be skipped
+                    val lengthPosition = buffer.position()
+                    buffer.putInt(0)
+                    system.writeState(buffer)
+                    buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4)
+                }
+            }
+        }
+
+        val entities = engine.entities
+        val count = entities.size()
+        writer.record { buffer -> buffer.putInt(count) }
+        for (i in 0 until count) {
+            val components = entities[i].components
+            writer.record { buffer ->
+                val countPosition = buffer.position()
+                buffer.putShort(0)
+                var saved = 0
+                for (c in 0 until components.size()) {
+                    val component = components[c]
+                    val registration = codecs.forTypeIndex(ComponentType.getIndexFor(component.javaClass)) ?: continue
+                    buffer.putShort(registration.id.toShort())
+                    registration.write(component, buffer)
+                    ++saved
+                }
+                buffer.putShort(countPosition, saved.toShort())
+            }
+        }
+        writer.flush()
+    }
+
+    /**
+     * Restores the state of the engine from a file written by [save], which is memory-mapped.
+     *
+     * @see restore
+     */
+    @Throws(IOException::class)
+    fun restore(engine: Engine, path: Path) {
+        FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+            val mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            restore(engine, BlockReader(null, mapped.order(BLOCK_BYTE_ORDER)))
+        }
+    }
+
+    /**
+     * Restores the state of the engine from a channel holding the data written by [save]. All the entities of the engine are
+     * removed first. Systems are matched by class, systems of the checkpoint missing from the engine are skipped.
+     *
+     * @throws IOException if the data is not a checkpoint, or holds a component type without a registered codec
+     */
+    @Throws(IOException::class)
+    fun restore(engine: Engine, channel: ReadableByteChannel) {
+        restore(engine, BlockReader(channel, null))
+    }
+
+    private fun restore(engine: Engine, reader: BlockReader) {
+        var buffer = reader.next()
+        if (buffer.int != MAGIC) {
+            throw IOException("Not a checkpoint")
+        }
+        val version = buffer.int
+        if (version != VERSION) {
+            throw IOException("Unsupported checkpoint version $version")
+        }
+        val currentTime = buffer.double
+        val stepNumber = buffer.long
+        val fixedStepNumber = buffer.long
+        val fixedTimeAccumulator = buffer.double
+
+        // Maps the ids of the saving side to the registrations of this side
+        val types = arrayOfNulls<CodecRegistration<*>>(buffer.int)
+        for (i in types.indices) {
+            val name = getString(reader.next())
+            types[i] = codecs.forName(name) ?: throw IOException("No codec registered for component type $name")
+        }
+
+        buffer = reader.next()
+        val systemCount = buffer.int
+        for (i in 0 until systemCount) {
+            buffer = reader.next()
+            val name = getString(buffer)
+            val length = buffer.int
+            val end = buffer.position() + length
+            for (system in engine.systems) {
+                if (system is Checkpointable && system.javaClass.name == name) {
+                    system.readState(buffer)
+                    break
+                }
+            }
+            buffer.position(end)
+        }
+
+        engine.removeAllEntities()
+        engine.restoreClock(currentTime, stepNumber, fixedStepNumber, fixedTimeAccumulator)
+        buffer = reader.next()
+        val entityCount = buffer.int
+        for (i in 0 until entityCount) {
+            buffer = reader.next()
+            val entity = engine.createEntity()
+            val componentCount = buffer.short.toInt()
+            for (c in 0 until componentCount) {
+                val id = buffer.short.toInt()
+                if (id < 0 || id >= types.size) {
+                    throw IOException("Corrupt checkpoint, unknown component type $id")
+                }
+                entity.add(types[id]!!.codec.read(buffer))
+            }
+            engine.addEntity(entity)
+        }
+    }
+
+    private companion object {
+        private const val MAGIC = 0x41434f43 // ACOC
+        private const val VERSION = 1
+    }
+
+}
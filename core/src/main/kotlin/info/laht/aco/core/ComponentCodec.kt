@@ -0,0 +1,39 @@
+package info.laht.aco.core
+
+import java.nio.ByteBuffer
+
+/**
+ * Encodes and decodes the state of a [Component] type, see [Checkpoint].
+ */
+interface ComponentCodec<T : Component> {
+
+    /**
+     * Writes the state of the component at the position of the buffer. Running out of space is handled by the caller, which
+     * calls this method again with a larger buffer, so the component must not be modified.
+     */
+    fun write(component: T, buffer: ByteBuffer)
+
+    /**
+     * Reads a component written by [write] from the position of the buffer.
+     */
+    fun read(buffer: ByteBuffer): T
+
+}
+
+/**
+ * Implemented by [EntitySystem]s holding state that must survive a [Checkpoint], e.g. a time accumulator.
+ */
+interface Checkpointable {
+
+    /**
+     * Writes the state of the system at the position of the buffer. Running out of space is handled by the caller, which
+     * calls this method again with a larger buffer.
+     */
+    fun writeState(buffer: ByteBuffer)
+
+    /**
+     * Restores the state written by [writeState] from the position of the buffer.
+     */
+    fun readState(buffer: ByteBuffer)
+
+}
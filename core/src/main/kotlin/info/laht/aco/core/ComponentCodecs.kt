@@ -0,0 +1,67 @@
+package info.laht.aco.core
+
+import info.laht.aco.utils.Bag
+import java.nio.ByteBuffer
+
+/**
+ * The [ComponentCodec]s of the component types saved by a [Checkpoint] or recorded by a [Journal]. Codecs are matched by
+ * component class name when reading, so the registrations of the writing and reading sides may differ in order.
+ */
+class ComponentCodecs {
+
+    private val registrations = Bag<CodecRegistration<*>>()
+    private val registrationsByType = Bag<CodecRegistration<*>>()
+
+    /**
+     * Registers the codec of a component type.
+     *
+     * @return This registry for chaining
+     */
+    fun <T : Component> register(type: Class<T>, codec: ComponentCodec<T>): ComponentCodecs {
+        val index = ComponentType.getIndexFor(type)
+        require(forTypeIndex(index) == null) { "Component type ${type.name} is already registered" }
+        val registration = CodecRegistration(type, codec, registrations.size())
+        registrations.add(registration)
+        registrationsByType.set(index, registration)
+        return this
+    }
+
+    /**
+     * @return The codec registered for the component type, or null
+     */
+    @Suppress("UNCHECKED_CAST")
+    fun <T : Component> getCodec(type: Class<T>): ComponentCodec<T>? {
+        return forTypeIndex(ComponentType.getIndexFor(type))?.codec as ComponentCodec<T>?
+    }
+
+    internal val size: Int
+        get() = registrations.size()
+
+    internal operator fun get(id: Int): CodecRegistration<*> {
+        return registrations[id]
+    }
+
+    internal fun forTypeIndex(typeIndex: Int): CodecRegistration<*>? {
+        return if (registrationsByType.isIndexWithinBounds(typeIndex)) registrationsByType[typeIndex] else null
+    }
+
+    internal fun forName(name: String): CodecRegistration<*>? {
+        for (i in 0 until registrations.size()) {
+            if (registrations[i].type.name == name) {
+                return registrations[i]
+            }
+        }
+        return null
+    }
+
+}
+
+internal class CodecRegistration<T : Component>(
+    val type: Class<T>,
+    val codec: ComponentCodec<T>,
+    val id: Int
+) {
+    fun write(component: Component, buffer: ByteBuffer) {
+        codec.write(type.cast(component), buffer)
+    }
+}
@@ -15,6 +15,7 @@
  */
 package info.laht.aco.core
 
+import com.badlogic.gdx.utils.Array
 import com.badlogic.gdx.utils.reflect.ClassReflection
 import com.badlogic.gdx.utils.reflect.ReflectionException
 import info.laht.aco.core.ComponentOperationHandler.BooleanInformer
@@ -23,6 +24,9 @@ import info.laht.aco.signals.Signal
 import info.laht.aco.utils.ImmutableArray
 import java.io.Closeable
 import java.io.IOException
+import java.util.concurrent.ForkJoinPool
+import kotlin.math.ceil
+import kotlin.math.max
 
 /**
  * The heart of the Entity framework. It is responsible for keeping track of [Entity] and
@@ -51,6 +55,9 @@ open class Engine @JvmOverloads constructor(
     private val entityManager = EntityManager(EngineEntityListener())
     private val componentOperationHandler = ComponentOperationHandler(EngineDelayedInformer())
     private val familyManager = FamilyManager(entityManager.entities)
+    private val archetypeManager = ArchetypeManager(entityManager.entities)
+    private val systemScheduler = SystemScheduler()
+    private val syncPoint = Runnable { processPendingOperations() }
 
     private var updating = false
     var isInitialized = false
@@ -61,6 +68,79 @@ open class Engine @JvmOverloads constructor(
         private set
     var realtimeFactor = 1.0
 
+    /**
+     * The time step passed to [EntitySystem.fixedStep], in seconds. Every [step] runs as many fixed steps as fit into the
+     * simulation time accumulated so far, the remainder is carried over to the next [step]. Set to 0 to never call
+     * [EntitySystem.fixedStep].
+     */
+    var fixedDeltaTime = 1.0 / 60
+        set(value) {
+            require(value >= 0) { "fixedDeltaTime must be non-negative, was $value" }
+            field = value
+            fixedTimeAccumulator = 0.0
+        }
+
+    /**
+     * The maximum number of fixed steps run by a single [step] at a [realtimeFactor] of 1. Should stepping fall behind by
+     * more, the excess simulation time is dropped rather than caught up with, see [droppedFixedSteps]. When running faster
+     * than real time the cap scales with the [realtimeFactor], so the larger scaled time steps are caught up with in
+     * batches of back-to-back fixed steps instead of being dropped.
+     */
+    var maxSubSteps = 5
+        set(value) {
+            require(value >= 1) { "maxSubSteps must be at least 1, was $value" }
+            field = value
+        }
+
+    /**
+     * The number of fixed steps run so far.
+     */
+    var fixedStepNumber: Long = 0
+        private set
+
+    /**
+     * The number of fixed steps dropped because a [step] would have exceeded its [maxSubSteps].
+     */
+    var droppedFixedSteps: Long = 0
+        private set
+
+    internal var fixedTimeAccumulator = 0.0
+        private set
+
+    /**
+     * How far the simulation has advanced past the last fixed step, as a fraction of [fixedDeltaTime] in [0, 1). Systems
+     * presenting state updated in [EntitySystem.fixedStep], e.g. rendering, should interpolate between the two latest
+     * fixed steps by this amount.
+     */
+    val interpolationAlpha: Double
+        get() = if (fixedDeltaTime > 0) fixedTimeAccumulator / fixedDeltaTime else 0.0
+
+    /**
+     * The pool used to step systems concurrently. When null (the default) systems are stepped one after the other in
+     * priority order. Otherwise systems declaring their [EntitySystem.getAccess] run concurrently with other systems
+     * whose access does not conflict, while systems with overlapping access, or no declared access, keep their priority
+     * order. Entity and component changes made by concurrently running systems are applied once they have all finished.
+     */
+    var systemPool: ForkJoinPool? = null
+
+    /**
+     * Buffer for structural changes that are applied in bulk during [step], see [CommandBuffer]. Changes recorded between
+     * steps are applied at the start of the next one, as external changes in the [journal].
+     */
+    val commandBuffer = CommandBuffer(this)
+
+    /**
+     * The journal recording the structural changes of this Engine, or null unless attached through [Journal.attach].
+     */
+    var journal: Journal? = null
+        internal set
+
+    /**
+     * The metrics recorded by this Engine, or null unless enabled through [enableMetrics].
+     */
+    var metrics: EngineMetrics? = null
+        private set
+
     /**
      * Creates a new Entity object.
      *
@@ -70,6 +150,13 @@ open class Engine @JvmOverloads constructor(
         return Entity()
     }
 
+    /**
+     * Releases an entity obtained through [createEntity] that will never be added to this Engine, e.g. one created and
+     * destroyed in the same [CommandBuffer]. Does nothing unless overridden, see [PooledEngine].
+     */
+    protected open fun discardEntity(entity: Entity) {
+    }
+
     /**
      * Creates a new [Component]. To use that method your components must have a visible no-arg constructor
      */
@@ -81,6 +168,54 @@ open class Engine @JvmOverloads constructor(
         }
     }
 
+    /**
+     * Creates the specified number of [Component]s of the same type, appending them to the array. Unless overridden, the
+     * components are created one by one through [createComponent].
+     *
+     * @throws IllegalArgumentException if the components cannot be created
+     */
+    open fun <T : Component> createComponents(componentType: Class<T>, count: Int, components: Array<in T>) {
+        components.ensureCapacity(count)
+        for (i in 0 until count) {
+            val component = createComponent(componentType)
+                ?: throw IllegalArgumentException("Cannot create a ${componentType.name}, it needs a visible no-arg constructor")
+            components.add(component)
+        }
+    }
+
+    /**
+     * Creates entities holding the components of the [EntityTemplate] and adds them to this Engine in one batch. Entities
+     * and components are obtained through [createEntity] and [createComponents], i.e. from the pools of a [PooledEngine].
+     *
+     *
+     * The entities are added like through [addEntities]. Since they share the same component signature, the families they
+     * belong to are matched only once.
+     *
+     * @return The new entities
+     */
+    fun instantiate(template: EntityTemplate, count: Int): Array<Entity> {
+        require(count >= 0) { "count must be non-negative, was $count" }
+        val entities = Array<Entity>(true, count, Entity::class.java)
+        for (i in 0 until count) {
+            entities.add(createEntity())
+        }
+        val components = Array<Component>(true, count, Component::class.java)
+        for (t in 0 until template.size()) {
+            createComponents(template.getType(t), count, components)
+            val initializer = template.getInitializer<Component>(t)
+            for (i in 0 until count) {
+                val component = components[i]
+                initializer?.initialize(component)
+                entities[i].addInternal(component)
+            }
+            components.clear()
+        }
+
+        val delayed = updating || familyManager.notifying()
+        entityManager.addEntities(entities, delayed)
+        return entities
+    }
+
     /**
      * Adds an entity to this Engine.
      * This will throw an IllegalArgumentException if the given entity
@@ -100,7 +235,28 @@ open class Engine @JvmOverloads constructor(
     }
 
     /**
-     * Removes all entities of the given [Family].
+     * Adds entities to this Engine in one batch. Entities sharing the same component signature are matched against the
+     * families once, and every family is appended all the entities joining it at once. Entity listeners are notified once
+     * all the entities have joined their families, a [BatchEntityListener] once for the whole batch.
+     *
+     * @throws IllegalArgumentException if one of the entities was already registered with an engine. The entities preceding
+     * it are added.
+     */
+    fun addEntities(entities: Iterable<Entity>) {
+        val delayed = updating || familyManager.notifying()
+        entityManager.addEntities(entities, delayed)
+    }
+
+    /**
+     * Removes entities from this Engine in one batch, notifying entity listeners like [addEntities] does.
+     */
+    fun removeEntities(entities: Iterable<Entity>) {
+        val delayed = updating || familyManager.notifying()
+        entityManager.removeEntities(entities, delayed)
+    }
+
+    /**
+     * Removes all entities of the given [Family], in one batch.
      */
     fun removeAllEntities(family: Family) {
         val delayed = updating || familyManager.notifying()
@@ -108,7 +264,7 @@ open class Engine @JvmOverloads constructor(
     }
 
     /**
-     * Removes all entities registered with this Engine.
+     * Removes all entities registered with this Engine, in one batch.
      */
     fun removeAllEntities() {
         val delayed = updating || familyManager.notifying()
@@ -145,6 +301,26 @@ open class Engine @JvmOverloads constructor(
     val entities: ImmutableArray<Entity>
         get() = entityManager.entities
 
+    /**
+     * Returns the entity with the specified [Entity.getId], or null if no such entity is registered with this Engine.
+     */
+    fun getEntity(id: Int): Entity? {
+        return entityManager.getEntity(id)
+    }
+
+    /**
+     * Returns the entity referenced by the [EntityHandle], or null if that entity has been removed from this Engine.
+     */
+    fun getEntity(handle: EntityHandle): Entity? {
+        return entityManager.getEntity(handle)
+    }
+
+    /**
+     * One more than the largest entity id handed out so far. Arrays indexed by [Entity.getId] need to be at least this large.
+     */
+    val entityIdCount: Int
+        get() = entityManager.idCount
+
     /**
      * Adds the [EntitySystem] to this Engine.
      * If the Engine already had a system of the same class,
@@ -188,6 +364,69 @@ open class Engine @JvmOverloads constructor(
         return familyManager.getEntitiesFor(family)
     }
 
+    /**
+     * Sets whether the entity array returned by [getEntitiesFor] keeps its entities in the order they joined the
+     * [Family]. By default removal is constant-time: the last entity of the array is moved into the vacated slot.
+     * Preserving the order makes removal linear in the number of entities that follow the removed one.
+     */
+    fun setPreserveOrder(family: Family, preserveOrder: Boolean) {
+        familyManager.setPreserveOrder(family, preserveOrder)
+    }
+
+    /**
+     * Returns immutable collection of the [Archetype]s whose entities match the specified [Family]. Will return the same
+     * instance every time, archetypes created later on are appended to it.
+     *
+     *
+     * Archetype storage is opt-in: the first call to this method makes the Engine start sorting its entities into
+     * [ArchetypeChunk]s, which systems may iterate instead of the per-entity arrays returned by [getEntitiesFor].
+     */
+    fun getArchetypesFor(family: Family): ImmutableArray<Archetype> {
+        return archetypeManager.getArchetypesFor(family)
+    }
+
+    /**
+     * @return immutable array of all the [Archetype]s created by this [Engine]. Empty unless archetype storage has been
+     * enabled through [getArchetypesFor].
+     */
+    val archetypes: ImmutableArray<Archetype>
+        get() = archetypeManager.archetypes
+
+    /**
+     * The number of times an entity has been matched against a [Family] while keeping family membership up to date.
+     */
+    val familyMatchesEvaluated: Long
+        get() = familyManager.evaluatedMatches
+
+    /**
+     * The number of [Family] matches skipped because none of the components added to or removed from an entity are
+     * mentioned by the family.
+     */
+    val familyMatchesSkipped: Long
+        get() = familyManager.skippedMatches
+
+    /**
+     * Starts recording per-system step timings and other [EngineMetrics]. Recording is off by default, and costs two
+     * [System.nanoTime] calls per system and step when enabled.
+     *
+     * @return the metrics being recorded
+     */
+    fun enableMetrics(): EngineMetrics {
+        return metrics ?: EngineMetrics(entityManager, familyManager, componentOperationHandler).also {
+            for (system in systems) {
+                it.addSystem(system)
+            }
+            metrics = it
+        }
+    }
+
+    /**
+     * Stops recording metrics. Metrics recorded so far remain readable from the previously returned [EngineMetrics].
+     */
+    fun disableMetrics() {
+        metrics = null
+    }
+
     /**
      * Adds an [EntityListener].
      *
@@ -259,27 +498,94 @@ open class Engine @JvmOverloads constructor(
         if (!this.isInitialized) {
             init()
         }
+        // Commands recorded between steps come from outside the engine, and are journaled as such before the step
+        if (commandBuffer.hasCommands()) {
+            commandBuffer.playback(entityManager)
+        }
+        journal?.stepStarted(deltaTime, realtimeFactor)
         val scaledDeltaTime = deltaTime * realtimeFactor
+        val metrics = metrics
+        val start = if (metrics != null) System.nanoTime() else 0L
         updating = true
         try {
-            for (system in systems) {
-                if (system.isEnabled) {
-                    system.step(scaledDeltaTime)
-                }
-                while (componentOperationHandler.hasOperationsToProcess() || entityManager.hasPendingOperations()) {
-                    componentOperationHandler.processOperations()
-                    entityManager.processPendingOperations()
+            processPendingOperations()
+            fixedStep(scaledDeltaTime)
+            val pool = systemPool
+            if (pool == null) {
+                for (system in systems) {
+                    if (system.isEnabled) {
+                        if (metrics == null) system.step(scaledDeltaTime) else metrics.step(system, scaledDeltaTime)
+                    }
+                    processPendingOperations()
                 }
+            } else {
+                systemScheduler.step(pool, systems, scaledDeltaTime, syncPoint, metrics)
             }
             currentTime += scaledDeltaTime
             stepNumber += 1
             for (system in systems) {
                 if (system.isEnabled) {
-                    system.postStep()
+                    if (metrics == null) system.postStep() else metrics.postStep(system)
                 }
             }
         } finally {
             updating = false
+            metrics?.recordStep(System.nanoTime() - start)
+        }
+    }
+
+    private fun fixedStep(scaledDeltaTime: Double) {
+        val fixedDeltaTime = fixedDeltaTime
+        if (fixedDeltaTime <= 0) {
+            return
+        }
+
+        fixedTimeAccumulator += scaledDeltaTime
+        var subSteps = (fixedTimeAccumulator / fixedDeltaTime).toLong()
+        val maxSubSteps = maxSubSteps * ceil(max(1.0, realtimeFactor)).toLong()
+        if (subSteps > maxSubSteps) {
+            droppedFixedSteps += subSteps - maxSubSteps
+            fixedTimeAccumulator -= (subSteps - maxSubSteps) * fixedDeltaTime
+            subSteps = maxSubSteps
+        }
+
+        for (i in 0 until subSteps) {
+            for (system in systems) {
+                if (system.isEnabled) {
+                    system.fixedStep(fixedDeltaTime)
+                }
+                processPendingOperations()
+            }
+            fixedTimeAccumulator -= fixedDeltaTime
+            fixedStepNumber += 1
+        }
+        // Guard against rounding leaving the accumulator just outside [0, fixedDeltaTime)
+        fixedTimeAccumulator = fixedTimeAccumulator.coerceIn(0.0, fixedDeltaTime)
+        if (fixedTimeAccumulator == fixedDeltaTime) {
+            fixedTimeAccumulator = 0.0
+        }
+    }
+
+    internal fun restoreClock(currentTime: Double, stepNumber: Long, fixedStepNumber: Long, fixedTimeAccumulator: Double) {
+        check(!updating) { "Cannot restore an Engine that is stepping." }
+        this.currentTime = currentTime
+        this.stepNumber = stepNumber
+        this.fixedStepNumber = fixedStepNumber
+        this.fixedTimeAccumulator = fixedTimeAccumulator
+    }
+
+    // Changes made by systems or entity listeners are made again when replaying, the others have to be replayed
+    private val isExternalChange: Boolean
+        get() = !updating && !familyManager.notifying()
+
+    private fun processPendingOperations() {
+        while (componentOperationHandler.hasOperationsToProcess() || entityManager.hasPendingOperations() ||
+            commandBuffer.hasCommands()
+        ) {
+            commandBuffer.playback(entityManager)
+            metrics?.samplePendingOperations()
+            componentOperationHandler.processOperations()
+            entityManager.processPendingOperations()
         }
     }
 
@@ -300,10 +606,36 @@ open class Engine @JvmOverloads constructor(
         entity.componentAdded.add(componentAdded)
         entity.componentRemoved.add(componentRemoved)
         entity.componentOperationHandler = componentOperationHandler
+        archetypeManager.updateArchetype(entity)
         familyManager.updateFamilyMembership(entity)
     }
 
+    protected fun addEntitiesInternal(entities: ImmutableArray<Entity>) {
+        for (i in 0 until entities.size()) {
+            val entity = entities[i]
+            entity.componentAdded.add(componentAdded)
+            entity.componentRemoved.add(componentRemoved)
+            entity.componentOperationHandler = componentOperationHandler
+            archetypeManager.updateArchetype(entity)
+        }
+        familyManager.addEntities(entities)
+    }
+
+    protected open fun removeEntitiesInternal(entities: ImmutableArray<Entity>) {
+        for (i in 0 until entities.size()) {
+            archetypeManager.updateArchetype(entities[i])
+        }
+        familyManager.removeEntities(entities)
+        for (i in 0 until entities.size()) {
+            val entity = entities[i]
+            entity.componentAdded.remove(componentAdded)
+            entity.componentRemoved.remove(componentRemoved)
+            entity.componentOperationHandler = null
+        }
+    }
+
     protected open fun removeEntityInternal(entity: Entity) {
+        archetypeManager.updateArchetype(entity)
         familyManager.updateFamilyMembership(entity)
         entity.componentAdded.remove(componentAdded)
         entity.componentRemoved.remove(componentRemoved)
@@ -315,28 +647,62 @@ open class Engine @JvmOverloads constructor(
             signal: Signal<Entity>,
             `object`: Entity
         ) {
-            familyManager.updateFamilyMembership(`object`)
+            // Nothing left to do if an earlier notification already covered all the changes
+            if (`object`.dirtyComponentBits.isEmpty) {
+                return
+            }
+            journal?.componentsChanged(`object`, isExternalChange)
+            archetypeManager.updateArchetype(`object`)
+            familyManager.updateFamilyMembership(`object`, true)
         }
     }
 
     private inner class EngineSystemListener : SystemManager.SystemListener {
         override fun systemAdded(system: EntitySystem) {
+            metrics?.addSystem(system)
             system.addedToEngineInternal(this@Engine)
         }
 
         override fun systemRemoved(system: EntitySystem) {
+            metrics?.removeSystem(system)
             system.removedFromEngineInternal(this@Engine)
         }
     }
 
-    private inner class EngineEntityListener : EntityListener {
+    private inner class EngineEntityListener : BatchEntityListener {
         override fun entityAdded(entity: Entity) {
+            journal?.entityAdded(entity, isExternalChange)
             addEntityInternal(entity)
         }
 
         override fun entityRemoved(entity: Entity) {
+            journal?.entityRemoved(entity, isExternalChange)
             removeEntityInternal(entity)
         }
+
+        override fun entitiesAdded(entities: ImmutableArray<Entity>) {
+            journal?.let {
+                val external = isExternalChange
+                it.batchStarted(external)
+                for (i in 0 until entities.size()) {
+                    it.entityAdded(entities[i], external)
+                }
+                it.batchEnded(external)
+            }
+            addEntitiesInternal(entities)
+        }
+
+        override fun entitiesRemoved(entities: ImmutableArray<Entity>) {
+            journal?.let {
+                val external = isExternalChange
+                it.batchStarted(external)
+                for (i in 0 until entities.size()) {
+                    it.entityRemoved(entities[i], external)
+                }
+                it.batchEnded(external)
+            }
+            removeEntitiesInternal(entities)
+        }
     }
 
     private inner class EngineDelayedInformer : BooleanInformer {
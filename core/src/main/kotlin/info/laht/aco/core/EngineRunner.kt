@@ -1,7 +1,6 @@
 package info.laht.aco.core
 
 import info.laht.aco.math.inverse
-import info.laht.aco.utils.Clock
 import java.io.BufferedReader
 import java.io.Closeable
 import java.io.IOException
@@ -10,9 +9,7 @@ import java.util.concurrent.Executors
 import java.util.concurrent.Future
 import java.util.concurrent.FutureTask
 import java.util.concurrent.atomic.AtomicBoolean
-import kotlin.properties.Delegates
-import kotlin.time.ExperimentalTime
-import kotlin.time.measureTime
+import java.util.concurrent.locks.LockSupport
 
 private typealias Predicate = ((Engine) -> Boolean)
 private typealias Callback = () -> Unit
@@ -25,29 +22,62 @@ interface EngineRunner {
 
 }
 
+/**
+ * Steps an [Engine] on a background thread using fixed steps of [stepSize] seconds.
+ *
+ * While [enableRealTimeTarget] is set (the default), the runner sleeps between steps so that simulation time advances
+ * [targetRealTimeFactor] times as fast as wall clock time. Otherwise it steps as fast as possible, which is useful for
+ * offline simulation. Either way the achieved ratio is reported by [actualRealTimeFactor].
+ */
 class HeadlessEngineRunner(
     val engine: Engine
 ): EngineRunner {
 
     var paused = AtomicBoolean(false)
-    private var timePaused = 0.0
 
     private var thread: Thread? = null
     private val stop = AtomicBoolean(false)
 
-    var simulationClock: Double by Delegates.notNull()
+    @Volatile
+    var simulationClock = 0.0
         private set
-    var wallClock: Double by Delegates.notNull()
+    @Volatile
+    var wallClock = 0.0
         private set
 
     val enableRealTimeTarget = AtomicBoolean(true)
 
-    var targetRealTimeFactor: Double by Delegates.observable(1.0) { _, _, newValue ->
-        inverseTargetRealTimeFactor = newValue.inverse()
-    }
-    private var inverseTargetRealTimeFactor = targetRealTimeFactor.inverse()
+    @Volatile
+    private var inverseTargetRealTimeFactor = 1.0
+    private val pacer = Pacer()
+
+    var targetRealTimeFactor = 1.0
+        set(value) {
+            require(value > 0) { "targetRealTimeFactor must be positive, was $value" }
+            field = value
+            inverseTargetRealTimeFactor = value.inverse()
+            pacer.rebase()
+        }
+
+    /**
+     * The time step passed to [Engine.step], in seconds.
+     */
+    @Volatile
+    var stepSize = 1.0 / 100
+        set(value) {
+            require(value > 0) { "stepSize must be positive, was $value" }
+            field = value
+        }
 
-    var actualRealTimeFactor: Double by Delegates.notNull()
+    /**
+     * How far behind the [targetRealTimeFactor] stepping may fall, in seconds of wall clock time, before the runner stops
+     * trying to catch up and continues pacing from the current time instead.
+     */
+    @Volatile
+    var maxLag = 0.25
+
+    @Volatile
+    var actualRealTimeFactor = 0.0
         private set
 
     var callback: Callback? = null
@@ -109,30 +139,38 @@ class HeadlessEngineRunner(
 
     private inner class Runner : Runnable {
 
-
-
-        @ExperimentalTime
         override fun run() {
 
             val inputThread = ConsoleInputReadTask().apply {
                 start()
             }
 
-            val clock = Clock()
+            val startTime = System.nanoTime()
+            var pausedNanos = 0L
             while (!stop.get() && predicate?.invoke(engine) != true) {
 
                 if (!paused.get()) {
 
-                    engine.step(clock.getDelta())
+                    engine.step(stepSize)
 
+                    val now = System.nanoTime()
                     simulationClock = engine.currentTime - engine.startTime
-                    wallClock = clock.elapsedTime_ - timePaused
+                    wallClock = (now - startTime - pausedNanos).toDouble() / 1e9
                     actualRealTimeFactor = simulationClock / wallClock
 
                     callback?.invoke()
 
+                    if (enableRealTimeTarget.get()) {
+                        waitUntil(pacer.target(engine.currentTime, now, inverseTargetRealTimeFactor, maxLag))
+                    } else {
+                        pacer.rebase()
+                    }
+
                 } else {
-                    timePaused += measureTime { Thread.sleep(1L) }.inSeconds
+                    val t0 = System.nanoTime()
+                    LockSupport.parkNanos(PAUSE_NANOS)
+                    pausedNanos += System.nanoTime() - t0
+                    pacer.rebase()
                 }
             }
             stop.set(true)
@@ -142,6 +180,69 @@ class HeadlessEngineRunner(
 
         }
 
+        // Parking may overshoot by the scheduler's granularity, so the last stretch is spent yielding
+        private fun waitUntil(target: Long) {
+            var remaining = target - System.nanoTime()
+            while (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS)
+                remaining = target - System.nanoTime()
+            }
+            while (remaining > 0) {
+                Thread.yield()
+                remaining = target - System.nanoTime()
+            }
+        }
+
+    }
+
+    /**
+     * Tells when the next step is due for simulation time to advance a given factor times as fast as wall clock time, both
+     * measured from when pacing started. Pacing starts anew at the first step, after [rebase], and when stepping falls too
+     * far behind. A Pacer is used by the stepping thread only, except for [rebase].
+     */
+    class Pacer {
+
+        private val rebase = AtomicBoolean(true)
+
+        // Simulation and wall clock time at which pacing started, targets are measured relative to these
+        private var simulationStart = 0.0
+        private var wallStart = 0L
+
+        /**
+         * Makes pacing start anew at the next step, e.g. after pausing or changing the real-time factor.
+         */
+        fun rebase() {
+            rebase.set(true)
+        }
+
+        /**
+         * Computes when the next step is due.
+         *
+         * @param simulationTime        The simulation time reached by the step just taken
+         * @param nanos                 The current [System.nanoTime]
+         * @param inverseRealTimeFactor How many seconds of wall clock time a second of simulation time should last
+         * @param maxLag                How far behind the target stepping may fall, in seconds of wall clock time, before
+         *                              pacing starts anew
+         * @return The [System.nanoTime] at which the next step is due, which is nanos when pacing starts anew
+         */
+        fun target(simulationTime: Double, nanos: Long, inverseRealTimeFactor: Double, maxLag: Double): Long {
+            if (rebase.getAndSet(false)) {
+                return start(simulationTime, nanos)
+            }
+            val target = wallStart + ((simulationTime - simulationStart) * inverseRealTimeFactor * 1e9).toLong()
+            if (target - nanos < -(maxLag * 1e9).toLong()) {
+                // Too far behind, catching up would mean running unpaced for a long time
+                return start(simulationTime, nanos)
+            }
+            return target
+        }
+
+        private fun start(simulationTime: Double, nanos: Long): Long {
+            simulationStart = simulationTime
+            wallStart = nanos
+            return nanos
+        }
+
     }
 
     //https://stackoverflow.com/questions/4983065/how-to-interrupt-java-util-scanner-nextline-call
@@ -153,7 +254,7 @@ class HeadlessEngineRunner(
             var quit = false
             println()
             println("Commandline options:\n")
-//            println("\t 'r' -> Enable/disable realtime execution  ")
+            println("\t 'r' -> Enable/disable realtime execution  ")
             println("\t 'p' -> Pause/unpause execution  ")
             println("\t 'q' -> Abort execution")
             println()
@@ -167,14 +268,14 @@ class HeadlessEngineRunner(
                     null
                 }
                 when (input) {
-//                    "r" -> {
-//                        enableRealTimeTarget.set(!enableRealTimeTarget.get())
-//                        if (enableRealTimeTarget.get()) {
-//                            println("Realtime target enabled, rtf=$targetRealTimeFactor")
-//                        } else {
-//                            println("Realtime target disabled")
-//                        }
-//                    }
+                    "r" -> {
+                        enableRealTimeTarget.set(!enableRealTimeTarget.get())
+                        if (enableRealTimeTarget.get()) {
+                            println("Realtime target enabled, rtf=$targetRealTimeFactor")
+                        } else {
+                            println("Realtime target disabled")
+                        }
+                    }
                     "p" -> {
                         paused.set(!paused.get())
                         if (paused.get()) {
@@ -195,5 +296,9 @@ class HeadlessEngineRunner(
 
     }
 
-}
+    private companion object {
+        private const val PAUSE_NANOS = 1_000_000L
+        private const val SPIN_NANOS = 200_000L
+    }
 
+}
@@ -15,6 +15,8 @@
  */
 package info.laht.aco.core
 
+import info.laht.aco.utils.ImmutableArray
+
 /**
  * Gets notified of [Entity] related events.
  * @author David Saltares
@@ -35,6 +37,25 @@ interface EntityListener {
     fun entityRemoved(entity: Entity)
 }
 
+/**
+ * An [EntityListener] notified once per batch of entities added to or removed from the [Engine] or a [Family] at once,
+ * e.g. through [Engine.addEntities] or [Engine.removeAllEntities], rather than once per entity. Entities added or removed
+ * one at a time are still notified through [entityAdded] and [entityRemoved].
+ */
+interface BatchEntityListener : EntityListener {
+    /**
+     * Called whenever a batch of entities is added to the [Engine] or a specific [Family]
+     * @param entities the added entities, only valid during the call
+     */
+    fun entitiesAdded(entities: ImmutableArray<Entity>)
+
+    /**
+     * Called whenever a batch of entities is removed from the [Engine] or a specific [Family]
+     * @param entities the removed entities, only valid during the call
+     */
+    fun entitiesRemoved(entities: ImmutableArray<Entity>)
+}
+
 abstract class EntityAdapter : EntityListener {
 
     override fun entityAdded(entity: Entity) {
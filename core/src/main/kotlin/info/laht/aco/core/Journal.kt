@@ -0,0 +1,303 @@
+package info.laht.aco.core
+
+import java.io.Closeable
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.WritableByteChannel
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * Append-only record of everything needed to re-drive an [Engine] deterministically: the time step of every
+ * [Engine.step], and the entities and components added and removed. Replay a journal with a [JournalReplayer].
+ *
+ * Changes are told apart by origin. Those made by the application between steps are recorded together with the state of
+ * the added components, encoded by the [ComponentCodec]s of [codecs], as they are the input of the simulation. Those made
+ * by systems and entity listeners are recorded without state, as replaying the steps makes them again; the replayer only
+ * uses them to detect that a replay diverged. Changes to component state that are not structural are not recorded.
+ *
+ * Records are written into blocks on the engine thread and handed over to a background thread writing them to the
+ * channel, so recording neither blocks on I/O nor allocates once warmed up. Should the writer fall behind by more than
+ * the number of blocks, the engine thread waits for it. A write error does not disturb the simulation: the journal stops
+ * writing and reports the error from [flush] and [close].
+ *
+ * A journal records a single engine, from the moment it is attached. Replaying requires an engine in the same state,
+ * e.g. restored from a [Checkpoint] saved at that moment.
+ */
+class Journal @JvmOverloads constructor(
+    private val channel: WritableByteChannel,
+    val codecs: ComponentCodecs,
+    blockSize: Int = 1 shl 16,
+    blocks: Int = 4
+) : Closeable {
+
+    private var engine: Engine? = null
+
+    // Serial numbers identify entities across runs, as ids depend on the order entities are removed in
+    private var serials = LongArray(64)
+    private var nextSerial = 0L
+    private var journalTypes = IntArray(0)
+    private var journalTypeCount = 0
+
+    private val filled = ArrayBlockingQueue<ByteBuffer>(blocks + 1)
+    private val free = ArrayBlockingQueue<ByteBuffer>(blocks)
+    private val writer: BlockWriter
+    private val thread: Thread
+    private val lock = Object()
+    private var submitted = 0L
+    private var written = 0L
+
+    @Volatile
+    private var failure: IOException? = null
+
+    init {
+        require(blocks >= 2) { "At least 2 blocks are needed, was $blocks" }
+        for (i in 1 until blocks) {
+            free.add(allocateBlock(blockSize))
+        }
+        writer = BlockWriter(object : BlockSink {
+            override fun write(block: ByteBuffer): ByteBuffer {
+                synchronized(lock) {
+                    ++submitted
+                }
+                filled.put(block)
+                return free.take()
+            }
+        }, blockSize)
+        thread = Thread(Runnable { writeBlocks() }, "aco-journal")
+        thread.isDaemon = true
+        thread.start()
+    }
+
+    /**
+     * Starts recording the engine. Its current entities are identified by their order in [Engine.entities].
+     *
+     * @throws IllegalStateException if this journal or the engine is already attached
+     */
+    fun attach(engine: Engine) {
+        check(this.engine == null) { "The journal is already attached" }
+        check(engine.journal == null) { "The engine already has a journal" }
+        check(thread.isAlive) { "The journal is closed" }
+        this.engine = engine
+        engine.journal = this
+
+        val entities = engine.entities
+        for (i in 0 until entities.size()) {
+            assignSerial(entities[i])
+        }
+        writer.record { buffer ->
+            buffer.putInt(MAGIC)
+            buffer.putInt(VERSION)
+            buffer.putLong(engine.stepNumber)
+            buffer.putDouble(engine.currentTime)
+            buffer.putInt(entities.size())
+        }
+    }
+
+    /**
+     * Stops recording, flushing what has been recorded so far.
+     */
+    @Throws(IOException::class)
+    fun detach() {
+        val engine = engine ?: return
+        engine.journal = null
+        this.engine = null
+        flush()
+    }
+
+    /**
+     * Hands the records over to the writer and waits until they have been written.
+     *
+     * @throws IOException if writing failed
+     */
+    @Throws(IOException::class)
+    fun flush() {
+        writer.flush()
+        synchronized(lock) {
+            while (written < submitted) {
+                lock.wait()
+            }
+        }
+        failure?.let { throw IOException("Writing the journal failed", it) }
+    }
+
+    /**
+     * Detaches and flushes the journal, then stops the writer thread. The channel is left open.
+     */
+    @Throws(IOException::class)
+    override fun close() {
+        if (!thread.isAlive) {
+            return
+        }
+        try {
+            detach()
+            flush()
+        } finally {
+            filled.put(END)
+            thread.join()
+        }
+    }
+
+    internal fun stepStarted(deltaTime: Double, realtimeFactor: Double) {
+        writer.record { buffer ->
+            buffer.put(STEP)
+            buffer.putDouble(deltaTime)
+            buffer.putDouble(realtimeFactor)
+        }
+    }
+
+    internal fun entityAdded(entity: Entity, external: Boolean) {
+        val serial = assignSerial(entity)
+        val components = entity.components
+        for (i in 0 until components.size()) {
+            defineType(ComponentType.getIndexFor(components[i].javaClass))
+        }
+        writer.record { buffer ->
+            buffer.put(ENTITY_ADDED)
+            buffer.put(if (external) 1 else 0)
+            buffer.putLong(serial)
+            buffer.putShort(components.size().toShort())
+            for (i in 0 until components.size()) {
+                val component = components[i]
+                val typeIndex = ComponentType.getIndexFor(component.javaClass)
+                buffer.putInt(journalTypes[typeIndex])
+                if (external) {
+                    putState(buffer, typeIndex, component)
+                }
+            }
+        }
+    }
+
+    // Brackets the entities added or removed together, so that the replay adds or removes them together too
+    internal fun batchStarted(external: Boolean) {
+        if (external) {
+            writer.record { buffer -> buffer.put(BATCH_STARTED) }
+        }
+    }
+
+    internal fun batchEnded(external: Boolean) {
+        if (external) {
+            writer.record { buffer -> buffer.put(BATCH_ENDED) }
+        }
+    }
+
+    internal fun entityRemoved(entity: Entity, external: Boolean) {
+        val serial = serials[entity.id]
+        writer.record { buffer ->
+            buffer.put(ENTITY_REMOVED)
+            buffer.put(if (external) 1 else 0)
+            buffer.putLong(serial)
+        }
+    }
+
+    internal fun componentsChanged(entity: Entity, external: Boolean) {
+        val dirty = entity.dirtyComponentBits
+        var i = dirty.nextSetBit(0)
+        while (i >= 0) {
+            defineType(i)
+            i = dirty.nextSetBit(i + 1)
+        }
+        val serial = serials[entity.id]
+        writer.record { buffer ->
+            buffer.put(COMPONENTS_CHANGED)
+            buffer.put(if (external) 1 else 0)
+            buffer.putLong(serial)
+            val countPosition = buffer.position()
+            buffer.putShort(0)
+            var count = 0
+            var typeIndex = dirty.nextSetBit(0)
+            while (typeIndex >= 0) {
+                val component = entity.getComponent<Component>(ComponentType.getFor(typeIndex))
+                buffer.putInt(journalTypes[typeIndex])
+                buffer.put(if (component != null) 1 else 0)
+                if (external && component != null) {
+                    putState(buffer, typeIndex, component)
+                }
+                ++count
+                typeIndex = dirty.nextSetBit(typeIndex + 1)
+            }
+            buffer.putShort(countPosition, count.toShort())
+        }
+    }
+
+    private fun assignSerial(entity: Entity): Long {
+        val id = entity.id
+        if (id >= serials.size) {
+            serials = serials.copyOf(maxOf(id + 1, serials.size * 2))
+        }
+        serials[id] = nextSerial
+        return nextSerial++
+    }
+
+    // Component types are named in the journal the first time they appear
+    private fun defineType(typeIndex: Int) {
+        if (typeIndex >= journalTypes.size) {
+            val size = journalTypes.size
+            journalTypes = journalTypes.copyOf(maxOf(typeIndex + 1, size * 2))
+            journalTypes.fill(-1, size, journalTypes.size)
+        }
+        if (journalTypes[typeIndex] >= 0) {
+            return
+        }
+        val id = journalTypeCount++
+        journalTypes[typeIndex] = id
+        val name = ComponentType.getFor(typeIndex).type.name
+        writer.record { buffer ->
+            buffer.put(TYPE)
+            buffer.putInt(id)
+            putString(buffer, name)
+        }
+    }
+
+    // Length prefixed, -1 if the type has no codec
+    private fun putState(buffer: ByteBuffer, typeIndex: Int, component: Component) {
+        val registration = codecs.forTypeIndex(typeIndex)
+        if (registration == null) {
+            buffer.putInt(-1)
+            return
+        }
+        val lengthPosition = buffer.position()
+        buffer.putInt(0)
+        registration.write(component, buffer)
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4)
+    }
+
+    private fun writeBlocks() {
+        while (true) {
+            val block = filled.take()
+            if (block === END) {
+                return
+            }
+            try {
+                if (failure == null) {
+                    while (block.hasRemaining()) {
+                        channel.write(block)
+                    }
+                }
+            } catch (e: IOException) {
+                failure = e
+            }
+            // Blocks grown for oversized records are recycled too
+            free.offer(block)
+            synchronized(lock) {
+                ++written
+                lock.notifyAll()
+            }
+        }
+    }
+
+    internal companion object {
+        internal const val MAGIC = 0x41434f4a // ACOJ
+        internal const val VERSION = 1
+
+        internal const val TYPE: Byte = 0
+        internal const val STEP: Byte = 1
+        internal const val ENTITY_ADDED: Byte = 2
+        internal const val ENTITY_REMOVED: Byte = 3
+        internal const val COMPONENTS_CHANGED: Byte = 4
+        internal const val BATCH_STARTED: Byte = 5
+        internal const val BATCH_ENDED: Byte = 6
+
+        private val END = ByteBuffer.allocate(0)
+    }
+
+}
@@ -0,0 +1,256 @@
+package info.laht.aco.core
+
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Re-drives an [Engine] from a [Journal]: the changes the application made between steps are made again, and the steps
+ * are taken with the recorded time steps and real-time factors, as fast as the engine can step.
+ *
+ * The engine must be in the state the recorded engine was in when the journal was attached, including its systems, and
+ * its entities in the same order. Replaying is only as deterministic as the systems are. Changes made by systems and entity
+ * listeners are expected to be made again by the replay; should an entity recorded as created by them be missing, the
+ * replay diverged and an [IllegalStateException] is thrown.
+ */
+class JournalReplayer private constructor(
+    private val engine: Engine,
+    private val codecs: ComponentCodecs,
+    private val reader: BlockReader
+) {
+
+    /**
+     * Replays the journal read from the channel.
+     */
+    @Throws(IOException::class)
+    constructor(engine: Engine, codecs: ComponentCodecs, channel: ReadableByteChannel) :
+            this(engine, codecs, BlockReader(channel, null))
+
+    private val entitiesBySerial = HashMap<Long, Entity>()
+    private var serials = LongArray(64)
+    private var nextSerial = 0L
+    private val types = ArrayList<CodecRegistration<*>?>()
+    private val typeNames = ArrayList<String>()
+
+    // The entities added or removed together by the recorded engine
+    private var batching = false
+    private val batchAdded = ArrayList<Entity>()
+    private val batchSerials = ArrayList<Long>()
+    private val batchRemoved = ArrayList<Entity>()
+
+    private val listener = object : EntityListener {
+        override fun entityAdded(entity: Entity) {
+            assignSerial(entity)
+        }
+
+        override fun entityRemoved(entity: Entity) {
+            entitiesBySerial.remove(serials[entity.id])
+        }
+    }
+
+    init {
+        val buffer = reader.next()
+        if (buffer.int != Journal.MAGIC) {
+            throw IOException("Not a journal")
+        }
+        val version = buffer.int
+        if (version != Journal.VERSION) {
+            throw IOException("Unsupported journal version $version")
+        }
+        val stepNumber = buffer.long
+        buffer.double
+        val entityCount = buffer.int
+        require(engine.stepNumber == stepNumber) { "The journal starts at step $stepNumber, the engine is at ${engine.stepNumber}" }
+        require(engine.entities.size() == entityCount) { "The journal starts with $entityCount entities, the engine has ${engine.entities.size()}" }
+
+        val entities = engine.entities
+        for (i in 0 until entities.size()) {
+            assignSerial(entities[i])
+        }
+        engine.addEntityListener(Int.MIN_VALUE, listener)
+    }
+
+    /**
+     * Replays the journal until the engine has taken the specified step, leaving the changes recorded after that step for
+     * the next call.
+     *
+     * @return Whether the step was reached before the end of the journal
+     */
+    @Throws(IOException::class)
+    fun replayTo(stepNumber: Long): Boolean {
+        while (engine.stepNumber < stepNumber) {
+            if (!reader.hasNext()) {
+                return false
+            }
+            replay(reader.next())
+        }
+        return true
+    }
+
+    /**
+     * Replays the rest of the journal.
+     */
+    @Throws(IOException::class)
+    fun replayAll() {
+        while (reader.hasNext()) {
+            replay(reader.next())
+        }
+    }
+
+    /**
+     * Stops listening to the engine.
+     */
+    fun detach() {
+        engine.removeEntityListener(listener)
+    }
+
+    private fun replay(buffer: ByteBuffer) {
+        when (val type = buffer.get()) {
+            Journal.TYPE -> {
+                val id = buffer.int
+                val name = getString(buffer)
+                while (types.size <= id) {
+                    types.add(null)
+                    typeNames.add("")
+                }
+                types[id] = codecs.forName(name)
+                typeNames[id] = name
+            }
+            Journal.STEP -> {
+                val deltaTime = buffer.double
+                engine.realtimeFactor = buffer.double
+                engine.step(deltaTime)
+            }
+            Journal.ENTITY_ADDED -> {
+                val external = buffer.get().toInt() != 0
+                val serial = buffer.long
+                val count = buffer.short.toInt()
+                if (external) {
+                    val entity = engine.createEntity()
+                    for (i in 0 until count) {
+                        entity.add(readState(buffer, buffer.int))
+                    }
+                    if (batching) {
+                        batchAdded.add(entity)
+                        batchSerials.add(serial)
+                    } else {
+                        engine.addEntity(entity)
+                        checkCreated(serial, entity)
+                    }
+                } else {
+                    buffer.position(buffer.position() + count * 4)
+                    check(serial < nextSerial) { "Replay diverged, entity $serial was not created" }
+                }
+            }
+            Journal.ENTITY_REMOVED -> {
+                val external = buffer.get().toInt() != 0
+                val serial = buffer.long
+                if (external) {
+                    if (batching) {
+                        batchRemoved.add(entity(serial))
+                    } else {
+                        engine.removeEntity(entity(serial))
+                    }
+                }
+            }
+            Journal.BATCH_STARTED -> batching = true
+            Journal.BATCH_ENDED -> {
+                batching = false
+                if (batchAdded.isNotEmpty()) {
+                    engine.addEntities(batchAdded)
+                    for (i in batchAdded.indices) {
+                        checkCreated(batchSerials[i], batchAdded[i])
+                    }
+                }
+                if (batchRemoved.isNotEmpty()) {
+                    engine.removeEntities(batchRemoved)
+                }
+                batchAdded.clear()
+                batchSerials.clear()
+                batchRemoved.clear()
+            }
+            Journal.COMPONENTS_CHANGED -> {
+                val external = buffer.get().toInt() != 0
+                val serial = buffer.long
+                val count = buffer.short.toInt()
+                val entity = if (external) entity(serial) else null
+                for (i in 0 until count) {
+                    val id = buffer.int
+                    val present = buffer.get().toInt() != 0
+                    if (entity == null) {
+                        continue
+                    }
+                    if (present) {
+                        entity.add(readState(buffer, id))
+                    } else {
+                        entity.remove(componentClass(id))
+                    }
+                }
+            }
+            else -> throw IOException("Corrupt journal, unknown record type $type")
+        }
+    }
+
+    private fun checkCreated(serial: Long, entity: Entity) {
+        check(entitiesBySerial[serial] === entity) { "Replay diverged, entity $serial was not created as recorded" }
+    }
+
+    private fun entity(serial: Long): Entity {
+        return entitiesBySerial[serial] ?: throw IllegalStateException("Replay diverged, entity $serial does not exist")
+    }
+
+    private fun registration(id: Int): CodecRegistration<*> {
+        if (id < 0 || id >= types.size) {
+            throw IOException("Corrupt journal, unknown component type $id")
+        }
+        return types[id] ?: throw IOException("No codec registered for component type ${typeNames[id]}")
+    }
+
+    // Removing a component only needs its class, which is looked up by name if it has no codec
+    private fun componentClass(id: Int): Class<out Component> {
+        if (id >= 0 && id < types.size && types[id] == null) {
+            return Class.forName(typeNames[id]).asSubclass(Component::class.java)
+        }
+        return registration(id).type
+    }
+
+    private fun readState(buffer: ByteBuffer, id: Int): Component {
+        val length = buffer.int
+        val registration = registration(id)
+        if (length < 0) {
+            throw IOException("The state of component type ${registration.type.name} was not recorded")
+        }
+        val end = buffer.position() + length
+        val component = registration.codec.read(buffer)
+        buffer.position(end)
+        return component
+    }
+
+    private fun assignSerial(entity: Entity) {
+        val id = entity.id
+        if (id >= serials.size) {
+            serials = serials.copyOf(maxOf(id + 1, serials.size * 2))
+        }
+        serials[id] = nextSerial
+        entitiesBySerial[nextSerial++] = entity
+    }
+
+    companion object {
+
+        /**
+         * Replays the journal file, which is memory-mapped.
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun open(engine: Engine, codecs: ComponentCodecs, path: Path): JournalReplayer {
+            FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+                val mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                return JournalReplayer(engine, codecs, BlockReader(null, mapped.order(BLOCK_BYTE_ORDER)))
+            }
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+package info.laht.aco.render
+
+import info.laht.aco.core.*
+import info.laht.aco.render.geometry.Aabb
+import info.laht.aco.render.geometry.GeometryComponent
+import info.laht.aco.render.geometry.Shape
+import info.laht.aco.utils.ImmutableArray
+import kotlin.math.max
+
+/**
+ * The world space bounds of the entities having both a [TransformComponent] and a [GeometryComponent], as computed by
+ * [Shape.computeAabb], shared by the systems querying them. The bounds of an entity are found in [bounds] at index
+ * `id * BOUNDS_SIZE`, as its minimum x, y and z followed by its maximum x, y and z.
+ *
+ * Entities are cached as soon as they join the family, and forgotten as soon as they leave it, which the owning system is
+ * told about through the [Listener]. Their bounds are only recomputed by [refresh] when their world matrix changed, as
+ * told by [TransformComponent.worldVersion], or when their transform or shape was replaced.
+ */
+internal class BoundsCache(private val listener: Listener) {
+
+    // Indexed by entity id
+    private var cached = arrayOfNulls<Entity>(INITIAL_CAPACITY)
+    // What the bounds were computed from
+    private var transforms = arrayOfNulls<TransformComponent>(INITIAL_CAPACITY)
+    private var shapes = arrayOfNulls<Shape>(INITIAL_CAPACITY)
+    private var worldVersions = IntArray(INITIAL_CAPACITY)
+
+    /**
+     * The bounds, [BOUNDS_SIZE] doubles per entity id. Replaced when the cache grows.
+     */
+    var bounds = DoubleArray(INITIAL_CAPACITY * BOUNDS_SIZE)
+        private set
+
+    /**
+     * The entities of the family, in the order of the engine, or null when not added to an engine.
+     */
+    var entities: ImmutableArray<Entity>? = null
+        private set
+
+    /**
+     * The number of cached entities.
+     */
+    var size = 0
+        private set
+
+    /**
+     * The number of entity ids the cache currently holds.
+     */
+    val capacity: Int
+        get() = cached.size
+
+    private val tmpBounds = Aabb()
+
+    private val tm = ComponentMapper.getFor(TransformComponent::class.java)
+    private val gm = ComponentMapper.getFor(GeometryComponent::class.java)
+
+    private val entityListener = object : EntityListener {
+        override fun entityAdded(entity: Entity) {
+            add(entity)
+        }
+
+        override fun entityRemoved(entity: Entity) {
+            remove(entity)
+        }
+    }
+
+    fun addedToEngine(engine: Engine) {
+        val entities = engine.getEntitiesFor(family)
+        this.entities = entities
+        engine.addEntityListener(family, entityListener)
+        for (i in 0 until entities.size()) {
+            add(entities[i])
+        }
+    }
+
+    /**
+     * Forgets all the cached entities, without telling the listener, which is expected to reset its own state.
+     */
+    fun removedFromEngine(engine: Engine) {
+        engine.removeEntityListener(entityListener)
+        cached.fill(null)
+        transforms.fill(null)
+        shapes.fill(null)
+        entities = null
+        size = 0
+    }
+
+    fun contains(entity: Entity): Boolean {
+        val id = entity.id
+        return id >= 0 && id < cached.size && cached[id] === entity
+    }
+
+    /**
+     * @return The entity cached at the id, or null if none is
+     */
+    operator fun get(id: Int): Entity? {
+        return cached[id]
+    }
+
+    /**
+     * Recomputes the bounds of the cached entity if its world matrix, transform or shape changed.
+     *
+     * @return whether the bounds were recomputed
+     */
+    fun refresh(id: Int): Boolean {
+        val entity = cached[id]!!
+        val transform = tm.get(entity)
+        val shape = gm.get(entity).shape
+        if (transforms[id] === transform && shapes[id] === shape && worldVersions[id] == transform.worldVersion) {
+            return false
+        }
+        // Read the version after the world matrix, which may bring it up to date
+        write(id, shape.computeAabb(transform.getWorld(), tmpBounds))
+        transforms[id] = transform
+        shapes[id] = shape
+        worldVersions[id] = transform.worldVersion
+        return true
+    }
+
+    fun getBounds(id: Int, dest: Aabb): Aabb {
+        val offset = id * BOUNDS_SIZE
+        return dest.set(
+            bounds[offset], bounds[offset + 1], bounds[offset + 2],
+            bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]
+        )
+    }
+
+    fun centerX(id: Int): Double {
+        return (bounds[id * BOUNDS_SIZE] + bounds[id * BOUNDS_SIZE + 3]) * 0.5
+    }
+
+    fun centerY(id: Int): Double {
+        return (bounds[id * BOUNDS_SIZE + 1] + bounds[id * BOUNDS_SIZE + 4]) * 0.5
+    }
+
+    fun centerZ(id: Int): Double {
+        return (bounds[id * BOUNDS_SIZE + 2] + bounds[id * BOUNDS_SIZE + 5]) * 0.5
+    }
+
+    /**
+     * @return The largest half extent of the bounds along any axis
+     */
+    fun maxHalfExtent(id: Int): Double {
+        val offset = id * BOUNDS_SIZE
+        return max(max(bounds[offset + 3] - bounds[offset], bounds[offset + 4] - bounds[offset + 1]), bounds[offset + 5] - bounds[offset + 2]) * 0.5
+    }
+
+    fun overlaps(id: Int, aabb: Aabb): Boolean {
+        val offset = id * BOUNDS_SIZE
+        return bounds[offset] <= aabb.maxX && bounds[offset + 3] >= aabb.minX &&
+                bounds[offset + 1] <= aabb.maxY && bounds[offset + 4] >= aabb.minY &&
+                bounds[offset + 2] <= aabb.maxZ && bounds[offset + 5] >= aabb.minZ
+    }
+
+    fun overlaps(id: Int, other: Int): Boolean {
+        val a = id * BOUNDS_SIZE
+        val b = other * BOUNDS_SIZE
+        return bounds[a] <= bounds[b + 3] && bounds[a + 3] >= bounds[b] &&
+                bounds[a + 1] <= bounds[b + 4] && bounds[a + 4] >= bounds[b + 1] &&
+                bounds[a + 2] <= bounds[b + 5] && bounds[a + 5] >= bounds[b + 2]
+    }
+
+    private fun add(entity: Entity) {
+        if (contains(entity)) {
+            return
+        }
+        val id = entity.id
+        ensureCapacity(id + 1)
+        cached[id] = entity
+        transforms[id] = null
+        refresh(id)
+        ++size
+        listener.boundsAdded(id)
+    }
+
+    private fun remove(entity: Entity) {
+        if (!contains(entity)) {
+            return
+        }
+        listener.boundsRemoved(entity.id)
+        val id = entity.id
+        cached[id] = null
+        transforms[id] = null
+        shapes[id] = null
+        --size
+    }
+
+    private fun write(id: Int, aabb: Aabb) {
+        val offset = id * BOUNDS_SIZE
+        bounds[offset] = aabb.minX
+        bounds[offset + 1] = aabb.minY
+        bounds[offset + 2] = aabb.minZ
+        bounds[offset + 3] = aabb.maxX
+        bounds[offset + 4] = aabb.maxY
+        bounds[offset + 5] = aabb.maxZ
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity <= cached.size) {
+            return
+        }
+        val newCapacity = max(capacity, cached.size * 2)
+        cached = cached.copyOf(newCapacity)
+        transforms = transforms.copyOf(newCapacity)
+        shapes = shapes.copyOf(newCapacity)
+        worldVersions = worldVersions.copyOf(newCapacity)
+        bounds = bounds.copyOf(newCapacity * BOUNDS_SIZE)
+    }
+
+    /**
+     * Told when an entity joins or leaves the cache.
+     */
+    interface Listener {
+
+        /**
+         * Called once the bounds of the entity are computed. The [capacity] of the cache covers the id.
+         */
+        fun boundsAdded(id: Int)
+
+        /**
+         * Called before the entity is forgotten, so that it is still found at the id.
+         */
+        fun boundsRemoved(id: Int)
+
+    }
+
+    companion object {
+        const val BOUNDS_SIZE = 6
+        private const val INITIAL_CAPACITY = 64
+
+        private val family = Family.all(TransformComponent::class.java, GeometryComponent::class.java).get()
+    }
+
+}
@@ -0,0 +1,477 @@
+package info.laht.aco.render
+
+import com.badlogic.gdx.utils.Array
+import info.laht.aco.core.*
+import info.laht.aco.render.BoundsCache.Companion.BOUNDS_SIZE
+import info.laht.aco.render.geometry.Aabb
+import info.laht.aco.render.geometry.GeometryComponent
+import kotlin.math.abs
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Indexes the entities having both a [TransformComponent] and a [GeometryComponent] in a uniform grid, so that range,
+ * nearest neighbour and overlap queries only visit the entities near the region of interest instead of the whole family.
+ *
+ * The index is a loose grid: every entity is stored in the single cell holding the center of its world space bounds, as
+ * computed by [info.laht.aco.render.geometry.Shape.computeAabb], and queries widen their search by the largest half
+ * extent of the indexed bounds. Every step, the bounds of the entities whose world matrix changed, as told by
+ * [TransformComponent.worldVersion], or whose transform or shape was replaced are refreshed, and an entity is only moved
+ * when its center changes cell. Entities are indexed as soon as they join the family. Choose a [cellSize] in the order of
+ * the size of the typical entity; cells are hashed, so the grid is unbounded and empty space costs nothing.
+ *
+ * Once warmed up, neither maintaining the index nor querying it allocates. By default the system runs after all other
+ * systems of default priority.
+ */
+class SpatialIndexSystem @JvmOverloads constructor(
+    val cellSize: Double = 1.0,
+    priority: Int = Int.MAX_VALUE - 1
+) : EntitySystem(priority) {
+
+    private val cache: BoundsCache = BoundsCache(object : BoundsCache.Listener {
+        override fun boundsAdded(id: Int) {
+            ensureCapacity(cache.capacity)
+            link(id, cellKey(id))
+            include(id)
+        }
+
+        override fun boundsRemoved(id: Int) {
+            unlink(id)
+        }
+    })
+
+    // Indexed by entity id
+    private var cellKeys = LongArray(INITIAL_CAPACITY)
+    private var next = IntArray(INITIAL_CAPACITY)
+    private var prev = IntArray(INITIAL_CAPACITY)
+
+    // Open addressing hash table from cell key to the first entity id of the cell
+    private var keys = LongArray(INITIAL_CELLS).apply { fill(EMPTY) }
+    private var heads = IntArray(INITIAL_CELLS)
+    private var spareKeys: LongArray? = null
+    private var spareHeads: IntArray? = null
+    private var usedCells = 0
+
+    // Conservative range of the occupied cells
+    private var minCellX = 0
+    private var minCellY = 0
+    private var minCellZ = 0
+    private var maxCellX = -1
+    private var maxCellY = -1
+    private var maxCellZ = -1
+    private var maxHalfExtent = 0.0
+
+    private var nearestIds = IntArray(0)
+    private var nearestDistances = DoubleArray(0)
+    private var nearestCount = 0
+
+    init {
+        require(cellSize > 0) { "Cell size must be positive, was $cellSize" }
+    }
+
+    /**
+     * The number of indexed entities.
+     */
+    val size: Int
+        get() = cache.size
+
+    override fun addedToEngine(engine: Engine) {
+        cache.addedToEngine(engine)
+        update()
+    }
+
+    override fun removedFromEngine(engine: Engine) {
+        cache.removedFromEngine(engine)
+        keys.fill(EMPTY)
+        usedCells = 0
+    }
+
+    override fun step(deltaTime: Double) {
+        update()
+    }
+
+    /**
+     * Refreshes the bounds of the indexed entities whose world matrix, transform or shape changed, moving those whose
+     * center changed cell.
+     */
+    fun update() {
+        val entities = cache.entities ?: return
+        minCellX = Int.MAX_VALUE
+        minCellY = Int.MAX_VALUE
+        minCellZ = Int.MAX_VALUE
+        maxCellX = Int.MIN_VALUE
+        maxCellY = Int.MIN_VALUE
+        maxCellZ = Int.MIN_VALUE
+        maxHalfExtent = 0.0
+        for (i in 0 until entities.size()) {
+            val entity = entities[i]
+            val id = entity.id
+            if (!cache.contains(entity)) {
+                continue
+            }
+            if (cache.refresh(id)) {
+                val key = cellKey(id)
+                if (cellKeys[id] != key) {
+                    unlink(id)
+                    link(id, key)
+                }
+            }
+            include(id)
+        }
+    }
+
+    /**
+     * @return The bounds the entity is indexed with
+     * @throws IllegalArgumentException if the entity is not indexed
+     */
+    fun getBounds(entity: Entity, dest: Aabb): Aabb {
+        require(cache.contains(entity)) { "Entity is not indexed" }
+        return cache.getBounds(entity.id, dest)
+    }
+
+    /**
+     * Collects the entities whose bounds overlap the specified bounds.
+     *
+     * @return result, cleared first
+     */
+    fun query(bounds: Aabb, result: Array<Entity>): Array<Entity> {
+        result.clear()
+        if (size == 0 || bounds.isEmpty) {
+            return result
+        }
+        val m = maxHalfExtent
+        val x0 = max(cellCoord(bounds.minX - m), minCellX)
+        val y0 = max(cellCoord(bounds.minY - m), minCellY)
+        val z0 = max(cellCoord(bounds.minZ - m), minCellZ)
+        val x1 = min(cellCoord(bounds.maxX + m), maxCellX)
+        val y1 = min(cellCoord(bounds.maxY + m), maxCellY)
+        val z1 = min(cellCoord(bounds.maxZ + m), maxCellZ)
+        if (cellCount(x0, y0, z0, x1, y1, z1) > size) {
+            // Cheaper to test everything than to visit mostly empty cells
+            val entities = cache.entities!!
+            for (i in 0 until entities.size()) {
+                if (cache.contains(entities[i]) && cache.overlaps(entities[i].id, bounds)) {
+                    result.add(entities[i])
+                }
+            }
+            return result
+        }
+        for (x in x0..x1) {
+            for (y in y0..y1) {
+                for (z in z0..z1) {
+                    val cell = findCell(cellKey(x, y, z))
+                    if (cell < 0) {
+                        continue
+                    }
+                    var id = heads[cell]
+                    while (id >= 0) {
+                        if (cache.overlaps(id, bounds)) {
+                            result.add(cache[id])
+                        }
+                        id = next[id]
+                    }
+                }
+            }
+        }
+        return result
+    }
+
+    /**
+     * Collects the k entities whose bounds have their center closest to the specified point, nearest first.
+     *
+     * @return result, cleared first
+     */
+    fun nearest(x: Double, y: Double, z: Double, k: Int, result: Array<Entity>): Array<Entity> {
+        result.clear()
+        if (k <= 0 || size == 0) {
+            return result
+        }
+        if (nearestIds.size < k) {
+            nearestIds = IntArray(k)
+            nearestDistances = DoubleArray(k)
+        }
+        nearestCount = 0
+
+        val cx = cellCoord(x)
+        val cy = cellCoord(y)
+        val cz = cellCoord(z)
+        // Shells closer than the occupied cells are empty, and so are those further away
+        val firstRing = max(max(ringDistance(cx, minCellX, maxCellX), ringDistance(cy, minCellY, maxCellY)), ringDistance(cz, minCellZ, maxCellZ))
+        val lastRing = max(max(max(abs(cx - minCellX), abs(cx - maxCellX)), max(abs(cy - minCellY), abs(cy - maxCellY))), max(abs(cz - minCellZ), abs(cz - maxCellZ)))
+        for (r in firstRing..lastRing) {
+            visitShell(cx, cy, cz, r, x, y, z, k)
+            // Entities outside the shell are at least r cells away
+            val reach = r * cellSize
+            if (nearestCount == k && nearestDistances[k - 1] <= reach * reach) {
+                break
+            }
+        }
+        for (i in 0 until nearestCount) {
+            result.add(cache[nearestIds[i]])
+        }
+        return result
+    }
+
+    /**
+     * Reports every pair of indexed entities whose bounds overlap, once per pair.
+     */
+    fun forEachOverlappingPair(callback: OverlapCallback) {
+        val entities = cache.entities ?: return
+        val bounds = cache.bounds
+        val m = maxHalfExtent
+        for (i in 0 until entities.size()) {
+            val entity = entities[i]
+            val id = entity.id
+            if (!cache.contains(entity)) {
+                continue
+            }
+            val offset = id * BOUNDS_SIZE
+            val x0 = max(cellCoord(bounds[offset] - m), minCellX)
+            val y0 = max(cellCoord(bounds[offset + 1] - m), minCellY)
+            val z0 = max(cellCoord(bounds[offset + 2] - m), minCellZ)
+            val x1 = min(cellCoord(bounds[offset + 3] + m), maxCellX)
+            val y1 = min(cellCoord(bounds[offset + 4] + m), maxCellY)
+            val z1 = min(cellCoord(bounds[offset + 5] + m), maxCellZ)
+            for (x in x0..x1) {
+                for (y in y0..y1) {
+                    for (z in z0..z1) {
+                        val cell = findCell(cellKey(x, y, z))
+                        if (cell < 0) {
+                            continue
+                        }
+                        var other = heads[cell]
+                        while (other >= 0) {
+                            if (other > id && cache.overlaps(id, other)) {
+                                callback.overlap(entity, cache[other]!!)
+                            }
+                            other = next[other]
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private fun cellKey(id: Int): Long {
+        return cellKey(cellCoord(cache.centerX(id)), cellCoord(cache.centerY(id)), cellCoord(cache.centerZ(id)))
+    }
+
+    // Widens the range of the occupied cells and the largest half extent to cover the bounds
+    private fun include(id: Int) {
+        val x = cellCoord(cache.centerX(id))
+        val y = cellCoord(cache.centerY(id))
+        val z = cellCoord(cache.centerZ(id))
+        maxHalfExtent = max(maxHalfExtent, cache.maxHalfExtent(id))
+        minCellX = min(minCellX, x)
+        minCellY = min(minCellY, y)
+        minCellZ = min(minCellZ, z)
+        maxCellX = max(maxCellX, x)
+        maxCellY = max(maxCellY, y)
+        maxCellZ = max(maxCellZ, z)
+    }
+
+    private fun visitShell(cx: Int, cy: Int, cz: Int, r: Int, px: Double, py: Double, pz: Double, k: Int) {
+        val z0 = max(cz - r, minCellZ)
+        val z1 = min(cz + r, maxCellZ)
+        for (x in max(cx - r, minCellX)..min(cx + r, maxCellX)) {
+            for (y in max(cy - r, minCellY)..min(cy + r, maxCellY)) {
+                if (abs(x - cx) == r || abs(y - cy) == r) {
+                    for (z in z0..z1) {
+                        visitNearest(x, y, z, px, py, pz, k)
+                    }
+                } else if (r > 0) {
+                    if (cz - r >= minCellZ) visitNearest(x, y, cz - r, px, py, pz, k)
+                    if (cz + r <= maxCellZ) visitNearest(x, y, cz + r, px, py, pz, k)
+                }
+            }
+        }
+    }
+
+    private fun visitNearest(x: Int, y: Int, z: Int, px: Double, py: Double, pz: Double, k: Int) {
+        val cell = findCell(cellKey(x, y, z))
+        if (cell < 0) {
+            return
+        }
+        var id = heads[cell]
+        while (id >= 0) {
+            val dx = cache.centerX(id) - px
+            val dy = cache.centerY(id) - py
+            val dz = cache.centerZ(id) - pz
+            insertNearest(id, dx * dx + dy * dy + dz * dz, k)
+            id = next[id]
+        }
+    }
+
+    private fun insertNearest(id: Int, distance: Double, k: Int) {
+        var i: Int
+        if (nearestCount < k) {
+            i = nearestCount++
+        } else if (distance < nearestDistances[k - 1]) {
+            i = k - 1
+        } else {
+            return
+        }
+        while (i > 0 && nearestDistances[i - 1] > distance) {
+            nearestDistances[i] = nearestDistances[i - 1]
+            nearestIds[i] = nearestIds[i - 1]
+            --i
+        }
+        nearestDistances[i] = distance
+        nearestIds[i] = id
+    }
+
+    private fun cellCoord(v: Double): Int {
+        val c = floor(v / cellSize)
+        return if (c.isNaN()) 0 else c.coerceIn(-CELL_LIMIT.toDouble(), CELL_LIMIT.toDouble()).toInt()
+    }
+
+    private fun link(id: Int, key: Long) {
+        val cell = findOrInsertCell(key)
+        val head = heads[cell]
+        next[id] = head
+        prev[id] = -1
+        if (head >= 0) {
+            prev[head] = id
+        }
+        heads[cell] = id
+        cellKeys[id] = key
+    }
+
+    private fun unlink(id: Int) {
+        val p = prev[id]
+        val n = next[id]
+        if (p >= 0) {
+            next[p] = n
+        } else {
+            heads[findCell(cellKeys[id])] = n
+        }
+        if (n >= 0) {
+            prev[n] = p
+        }
+    }
+
+    private fun findCell(key: Long): Int {
+        val mask = keys.size - 1
+        var i = hash(key) and mask
+        while (true) {
+            val k = keys[i]
+            if (k == key) return i
+            if (k == EMPTY) return -1
+            i = (i + 1) and mask
+        }
+    }
+
+    private fun findOrInsertCell(key: Long): Int {
+        val cell = findCell(key)
+        if (cell >= 0) {
+            return cell
+        }
+        // Emptied cells are kept, so that probe sequences stay intact, until the table is rebuilt
+        if ((usedCells + 1) * 2 > keys.size) {
+            rehash()
+        }
+        val mask = keys.size - 1
+        var i = hash(key) and mask
+        while (keys[i] != EMPTY) {
+            i = (i + 1) and mask
+        }
+        keys[i] = key
+        heads[i] = -1
+        ++usedCells
+        return i
+    }
+
+    private fun rehash() {
+        var occupied = 0
+        for (i in keys.indices) {
+            if (keys[i] != EMPTY && heads[i] >= 0) ++occupied
+        }
+        var capacity = INITIAL_CELLS
+        while (capacity < (occupied + 1) * 4) {
+            capacity *= 2
+        }
+
+        val oldKeys = keys
+        val oldHeads = heads
+        var newKeys = spareKeys
+        var newHeads = spareHeads
+        if (newKeys == null || newHeads == null || newKeys.size != capacity) {
+            newKeys = LongArray(capacity)
+            newHeads = IntArray(capacity)
+        }
+        newKeys.fill(EMPTY)
+        keys = newKeys
+        heads = newHeads
+        usedCells = 0
+        val mask = capacity - 1
+        for (i in oldKeys.indices) {
+            if (oldKeys[i] == EMPTY || oldHeads[i] < 0) {
+                continue
+            }
+            var j = hash(oldKeys[i]) and mask
+            while (keys[j] != EMPTY) {
+                j = (j + 1) and mask
+            }
+            keys[j] = oldKeys[i]
+            heads[j] = oldHeads[i]
+            ++usedCells
+        }
+        // Kept for the next rebuild at the same capacity, which is the common case once cells churn
+        spareKeys = oldKeys
+        spareHeads = oldHeads
+    }
+
+    // Follows the capacity of the cache, which grows geometrically
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity <= cellKeys.size) {
+            return
+        }
+        cellKeys = cellKeys.copyOf(capacity)
+        next = next.copyOf(capacity)
+        prev = prev.copyOf(capacity)
+    }
+
+    /**
+     * Receives the pairs reported by [forEachOverlappingPair].
+     */
+    interface OverlapCallback {
+
+        fun overlap(a: Entity, b: Entity)
+
+    }
+
+    private companion object {
+        private const val INITIAL_CAPACITY = 64
+        private const val INITIAL_CELLS = 64
+        private const val CELL_BITS = 21
+        private const val CELL_MASK = (1L shl CELL_BITS) - 1
+        private const val CELL_LIMIT = (1 shl (CELL_BITS - 1)) - 1
+
+        // Packed keys are non-negative
+        private const val EMPTY = Long.MIN_VALUE
+
+        private fun cellKey(x: Int, y: Int, z: Int): Long {
+            return ((x.toLong() and CELL_MASK) shl (2 * CELL_BITS)) or
+                    ((y.toLong() and CELL_MASK) shl CELL_BITS) or
+                    (z.toLong() and CELL_MASK)
+        }
+
+        private fun hash(key: Long): Int {
+            val h = key * -7046029254386353131L
+            return (h xor (h ushr 32)).toInt()
+        }
+
+        private fun ringDistance(c: Int, min: Int, max: Int): Int {
+            return if (c < min) min - c else if (c > max) c - max else 0
+        }
+
+        private fun cellCount(x0: Int, y0: Int, z0: Int, x1: Int, y1: Int, z1: Int): Long {
+            if (x1 < x0 || y1 < y0 || z1 < z0) {
+                return 0
+            }
+            return (x1 - x0 + 1).toLong() * (y1 - y0 + 1) * (z1 - z0 + 1)
+        }
+    }
+
+}
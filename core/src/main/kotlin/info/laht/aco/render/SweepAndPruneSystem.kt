@@ -0,0 +1,177 @@
+package info.laht.aco.render
+
+import info.laht.aco.core.*
+import info.laht.aco.render.BoundsCache.Companion.BOUNDS_SIZE
+import info.laht.aco.render.geometry.GeometryComponent
+
+/**
+ * Broad-phase collision detection for the entities having both a [TransformComponent] and a [GeometryComponent]. Every
+ * step, the world space bounds of the entities that moved are refreshed, like those of a [SpatialIndexSystem], and the
+ * pairs of entities whose bounds overlap are collected into a pair list, see [pairCount], [getFirst] and [getSecond].
+ *
+ * The entities are kept sorted by the lower bound of their bounds along [axis], and candidate pairs are found by sweeping
+ * along that axis. The order is restored with an insertion sort, which is close to linear when entities move little
+ * between steps, as is usually the case. Choose the axis along which the entities are the most spread out.
+ *
+ * Pairs involving an entity are dropped as soon as it leaves the family. Once warmed up, neither the step nor reading the
+ * pair list allocates. By default the system runs after all other systems of default priority, so that the pair list
+ * reflects the state at the end of a step; systems of default priority read it during the following step.
+ */
+class SweepAndPruneSystem @JvmOverloads constructor(
+    val axis: Int = 0,
+    priority: Int = Int.MAX_VALUE - 1
+) : EntitySystem(priority) {
+
+    private val cache: BoundsCache = BoundsCache(object : BoundsCache.Listener {
+        override fun boundsAdded(id: Int) {
+            if (size == order.size) {
+                order = order.copyOf(size * 2)
+            }
+            // Appended last, the next sort moves it into place
+            order[size++] = id
+        }
+
+        override fun boundsRemoved(id: Int) {
+            // Shifting keeps the order sorted
+            var i = 0
+            while (order[i] != id) {
+                ++i
+            }
+            System.arraycopy(order, i + 1, order, i, size - i - 1)
+            --size
+            removePairs(cache[id]!!)
+        }
+    })
+
+    // Ids of the indexed entities, sorted by the lower bound along the axis
+    private var order = IntArray(INITIAL_CAPACITY)
+    private var size = 0
+
+    private var firsts = arrayOfNulls<Entity>(INITIAL_CAPACITY)
+    private var seconds = arrayOfNulls<Entity>(INITIAL_CAPACITY)
+
+    /**
+     * The number of overlapping pairs found by the last step.
+     */
+    var pairCount = 0
+        private set
+
+    init {
+        require(axis in 0..2) { "Axis must be 0, 1 or 2, was $axis" }
+    }
+
+    override fun addedToEngine(engine: Engine) {
+        cache.addedToEngine(engine)
+    }
+
+    override fun removedFromEngine(engine: Engine) {
+        cache.removedFromEngine(engine)
+        size = 0
+        clearPairs()
+    }
+
+    override fun step(deltaTime: Double) {
+        updateBounds()
+        sort()
+        sweep()
+    }
+
+    /**
+     * @return The first entity of the pair at the specified index, in [0, [pairCount])
+     */
+    fun getFirst(pair: Int): Entity {
+        checkPair(pair)
+        return firsts[pair]!!
+    }
+
+    /**
+     * @return The second entity of the pair at the specified index, in [0, [pairCount])
+     */
+    fun getSecond(pair: Int): Entity {
+        checkPair(pair)
+        return seconds[pair]!!
+    }
+
+    private fun checkPair(pair: Int) {
+        if (pair < 0 || pair >= pairCount) {
+            throw IndexOutOfBoundsException("Pair $pair is out of bounds, count is $pairCount")
+        }
+    }
+
+    private fun updateBounds() {
+        for (i in 0 until size) {
+            cache.refresh(order[i])
+        }
+    }
+
+    private fun sort() {
+        val order = order
+        val bounds = cache.bounds
+        for (i in 1 until size) {
+            val id = order[i]
+            val key = bounds[id * BOUNDS_SIZE + axis]
+            var j = i - 1
+            while (j >= 0 && bounds[order[j] * BOUNDS_SIZE + axis] > key) {
+                order[j + 1] = order[j]
+                --j
+            }
+            order[j + 1] = id
+        }
+    }
+
+    private fun sweep() {
+        clearPairs()
+        val order = order
+        val bounds = cache.bounds
+        val minAxis = axis
+        val maxAxis = axis + 3
+        for (i in 0 until size) {
+            val max = bounds[order[i] * BOUNDS_SIZE + maxAxis]
+            for (j in i + 1 until size) {
+                if (bounds[order[j] * BOUNDS_SIZE + minAxis] > max) {
+                    // Every following entity starts further along the axis
+                    break
+                }
+                if (cache.overlaps(order[i], order[j])) {
+                    addPair(cache[order[i]]!!, cache[order[j]]!!)
+                }
+            }
+        }
+    }
+
+    private fun addPair(first: Entity, second: Entity) {
+        if (pairCount == firsts.size) {
+            firsts = firsts.copyOf(pairCount * 2)
+            seconds = seconds.copyOf(pairCount * 2)
+        }
+        firsts[pairCount] = first
+        seconds[pairCount] = second
+        ++pairCount
+    }
+
+    // Keeps the order of the remaining pairs
+    private fun removePairs(entity: Entity) {
+        var count = 0
+        for (i in 0 until pairCount) {
+            if (firsts[i] !== entity && seconds[i] !== entity) {
+                firsts[count] = firsts[i]
+                seconds[count] = seconds[i]
+                ++count
+            }
+        }
+        firsts.fill(null, count, pairCount)
+        seconds.fill(null, count, pairCount)
+        pairCount = count
+    }
+
+    private fun clearPairs() {
+        firsts.fill(null, 0, pairCount)
+        seconds.fill(null, 0, pairCount)
+        pairCount = 0
+    }
+
+    private companion object {
+        private const val INITIAL_CAPACITY = 64
+    }
+
+}
@@ -10,34 +10,173 @@ class TransformComponent : Component {
     var parent: TransformComponent? = null
         private set
 
-    private val local = Matrix4d()
-    private val world = Matrix4d()
+    // Authoritative unless the transform is attached to a TransformStore, in which case they cache the store's slot
+    private val localMatrix = Matrix4d()
+    private val worldMatrix = Matrix4d()
+    private var store: TransformStore? = null
+    internal var slot = -1
+        private set
+    // Whether worldMatrix holds the world matrix of the store's slot, so that reading it need not copy the slot again
+    internal var worldCached = false
+    private val worldInverse = Matrix4d()
+    private var worldInverseNeedsUpdate = false
+    private val tmpQuat = Quaterniond()
+    private val tmpMatrix = Matrix4d()
     private val children = mutableListOf<TransformComponent>()
-    private var worldNeedsUpdate = false
+
+    /**
+     * Whether the cached world matrix is out of date, i.e. the local matrix of this transform or one of its ancestors has
+     * changed since it was computed. The descendants of a transform needing an update need one too.
+     */
+    var worldNeedsUpdate = false
+        private set
+
+    /**
+     * Incremented every time the world matrix is flagged out of date, recomputed or written, so that data derived from it,
+     * like the bounds indexed by a [SpatialIndexSystem], need only be refreshed when the version differs from the one they
+     * were derived at.
+     */
+    var worldVersion = 0
+        private set
+
+    /**
+     * The store holding the matrices of this transform, if any.
+     */
+    val transformStore: TransformStore?
+        get() = store
+
+    private val local: Matrix4d
+        get() {
+            store?.getLocal(slot, localMatrix)
+            return localMatrix
+        }
+
+    private val world: Matrix4d
+        get() {
+            val store = store
+            if (store != null && !worldNeedsUpdate && !worldCached) {
+                store.getWorld(slot, worldMatrix)
+                worldCached = true
+            }
+            return worldMatrix
+        }
 
     fun getLocal(): Matrix4dc {
         return local
     }
 
-    fun getWorld(force: Boolean = true): Matrix4dc {
-        if (autoUpdate || force) {
+    // Must follow every modification of the local matrix
+    private fun localChanged(local: Matrix4d) {
+        store?.setLocal(slot, local)
+        setWorldNeedsUpdate()
+    }
+
+    /**
+     * Returns the cached world matrix. Unless [autoUpdate] is disabled, an out of date matrix is brought up to date first,
+     * which only recomputes the transforms on the path from the topmost out of date ancestor. A [TransformSystem] keeps
+     * the matrices up to date once per step, so that reading them is constant-time.
+     *
+     * @param force whether to recompute the world matrix even if it is not known to be out of date
+     */
+    @JvmOverloads
+    fun getWorld(force: Boolean = false): Matrix4dc {
+        if (force || (autoUpdate && worldNeedsUpdate)) {
             updateMatrixWorld()
         }
         return world
     }
 
     fun updateMatrixWorld() {
-        if (!hasParent()) {
-            world.set(local)
+        val parent = parent
+        if (parent == null) {
+            worldMatrix.set(local)
         } else {
-            world.set(parent!!.getWorld(true)).mul(local)
+            if (parent.worldNeedsUpdate) {
+                parent.updateMatrixWorld()
+            }
+            worldMatrix.set(parent.world).mul(local)
         }
+        store?.setWorld(slot, worldMatrix)
+        worldUpdated()
+        worldCached = true
+    }
+
+    internal fun worldUpdated() {
         worldNeedsUpdate = false
+        worldWritten()
+    }
+
+    // The store's slot was written, leaving the cached world matrix and its inverse out of date
+    internal fun worldWritten() {
+        worldInverseNeedsUpdate = true
+        worldCached = false
+        ++worldVersion
+    }
+
+    internal fun attach(store: TransformStore, slot: Int) {
+        check(this.store == null) { "The transform is already attached to a store" }
+        // Read before attaching, as reading goes through the store afterwards
+        val local = local
+        val world = getWorld()
+        this.store = store
+        this.slot = slot
+        store.setLocal(slot, local)
+        store.setWorld(slot, world)
+        worldCached = true
+    }
+
+    internal fun detach() {
+        // Copy the state out of the store, so that the transform remains valid on its own
+        store?.getLocal(slot, localMatrix)
+        if (!worldNeedsUpdate) {
+            store?.getWorld(slot, worldMatrix)
+        }
+        store = null
+        slot = -1
+        worldCached = false
+    }
+
+    /**
+     * Returns the inverse of [getWorld], cached until the world matrix changes.
+     */
+    fun getWorldInverse(): Matrix4dc {
+        val world = getWorld()
+        if (worldInverseNeedsUpdate) {
+            world.invertAffine(worldInverse)
+            worldInverseNeedsUpdate = false
+        }
+        return worldInverse
+    }
+
+    // Transforms from world space into the space of the local matrix, null meaning identity
+    private fun parentWorldInverse(): Matrix4dc? {
+        return parent?.getWorldInverse()
+    }
+
+    /**
+     * Brings the world matrices of this transform and all its descendants up to date, parents before children. The parent
+     * of this transform must be up to date.
+     */
+    internal fun updateMatrixWorldSubtree() {
+        updateMatrixWorld()
+        for (i in children.indices) {
+            val child = children[i]
+            if (child.worldNeedsUpdate) {
+                child.updateMatrixWorldSubtree()
+            }
+        }
     }
 
     fun setWorldNeedsUpdate() {
+        // Already flagged transforms have their whole subtree flagged
+        if (worldNeedsUpdate) {
+            return
+        }
         worldNeedsUpdate = true
-        children.forEach { obj: TransformComponent -> obj.setWorldNeedsUpdate() }
+        ++worldVersion
+        for (i in children.indices) {
+            children[i].setWorldNeedsUpdate()
+        }
     }
 
     fun hasParent(): Boolean {
@@ -50,6 +189,8 @@ class TransformComponent : Component {
             detatchFromParent()
         }
         this.parent = parent
+        parent.children.add(this)
+        store?.hierarchyChanged()
         setWorldNeedsUpdate()
     }
 
@@ -61,6 +202,7 @@ class TransformComponent : Component {
         val w = getWorld()
         parent!!.children.remove(this)
         parent = null
+        store?.hierarchyChanged()
         setLocal(w)
     }
 
@@ -82,12 +224,17 @@ class TransformComponent : Component {
         get() = getWorldTranslation(Vector3d())
 
     fun getWorldTranslation(store: Vector3d): Vector3dc {
+        val transformStore = this.store
+        if (transformStore != null && !worldNeedsUpdate) {
+            return transformStore.getWorldTranslation(slot, store)
+        }
         return getWorld().getTranslation(store)
     }
 
     var localQuaternion: Quaterniondc
         get() = getLocalQuaternion(Quaterniond())
         set(q) {
+            val local = local
             val m30 = local.m30()
             val m31 = local.m31()
             val m32 = local.m32()
@@ -95,7 +242,7 @@ class TransformComponent : Component {
             local.m30(m30)
             local.m31(m31)
             local.m32(m32)
-            setWorldNeedsUpdate()
+            localChanged(local)
         }
 
     fun getLocalQuaternion(store: Quaterniond): Quaterniond {
@@ -106,21 +253,30 @@ class TransformComponent : Component {
         get() = getWorldQuaternion(Quaterniond())
 
     fun getWorldQuaternion(store: Quaterniond): Quaterniond {
-        return localToWorld(store)
+        return getWorld().getNormalizedRotation(store)
     }
 
     fun setLocalTranslation(x: Double, y: Double, z: Double) {
-        local.setTranslation(x, y, z)
-        setWorldNeedsUpdate()
+        val store = store
+        if (store != null) {
+            store.setLocalTranslation(slot, x, y, z)
+        } else {
+            localChanged(localMatrix.setTranslation(x, y, z))
+        }
     }
 
     fun setLocal(m: Matrix4dc) {
-        local.set(m)
-        setWorldNeedsUpdate()
+        localChanged(localMatrix.set(m))
     }
 
     fun setWorld(m: Matrix4dc) {
-        setLocal(worldToLocal(Matrix4d(m)))
+        val parentWorldInverse = parentWorldInverse()
+        if (parentWorldInverse == null) {
+            localMatrix.set(m)
+        } else {
+            parentWorldInverse.mulAffine(m, localMatrix)
+        }
+        localChanged(localMatrix)
     }
 
     fun localToWorld(v: Vector3d): Vector3d {
@@ -151,99 +307,121 @@ class TransformComponent : Component {
     }
 
     fun worldToLocal(v: Vector3d): Vector3d {
-        return v.mulPosition(Matrix4d(parent!!.getWorld()).invertAffine())
+        val parentWorldInverse = parentWorldInverse() ?: return v
+        return v.mulPosition(parentWorldInverse)
     }
 
     fun worldToLocal(v: Vector3dc, store: Vector3d): Vector3d {
         throwOnSame(v, store)
-        return store.set(v).mulPosition(Matrix4d(parent!!.getWorld()).invertAffine())
+        return worldToLocal(store.set(v))
     }
 
     fun worldDirectionToLocal(v: Vector3d): Vector3d {
-        return v.mulDirection(Matrix4d(parent!!.getWorld()).invertAffine())
+        val parentWorldInverse = parentWorldInverse() ?: return v
+        return v.mulDirection(parentWorldInverse)
     }
 
     fun worldDirectionToLocal(v: Vector3dc, store: Vector3d): Vector3d {
         throwOnSame(v, store)
-        return store.set(v).mulDirection(Matrix4d(parent!!.getWorld()).invertAffine())
+        return worldDirectionToLocal(store.set(v))
     }
 
     fun worldToLocal(m: Matrix4d): Matrix4d {
-        return m.mulLocalAffine(Matrix4d(parent!!.getWorld()).invertAffine())
+        val parentWorldInverse = parentWorldInverse() ?: return m
+        return m.mulLocalAffine(parentWorldInverse)
     }
 
     fun worldToLocal(m: Matrix4dc, store: Matrix4d): Matrix4d {
         throwOnSame(m, store)
-        return store.set(parent!!.getWorld()).invertAffine().mulAffine(m)
+        val parentWorldInverse = parentWorldInverse() ?: return store.set(m)
+        return parentWorldInverse.mulAffine(m, store)
     }
 
-    fun localToWorld(q: Quaterniond?): Quaterniond {
-        return localToWorld(Matrix4d().set(q)).getNormalizedRotation(q)
+    fun localToWorld(q: Quaterniond): Quaterniond {
+        return q.premul(getWorld().getNormalizedRotation(tmpQuat))
     }
 
-    fun worldToLocal(q: Quaterniond?): Quaterniond {
-        return worldToLocal(Matrix4d().set(q)).getNormalizedRotation(q)
+    fun worldToLocal(q: Quaterniond): Quaterniond {
+        val parent = parent ?: return q
+        return q.premul(parent.getWorld().getNormalizedRotation(tmpQuat).conjugate())
     }
 
     fun forward(): Vector3d {
-        return worldQuaternion.transform(Vector3d(1.0, 0.0, 0.0))
+        return forward(Vector3d())
+    }
+
+    fun forward(store: Vector3d): Vector3d {
+        return getWorld().transformDirection(store.set(1.0, 0.0, 0.0)).normalize()
     }
 
     fun left(): Vector3d {
-        return worldQuaternion.transform(Vector3d(0.0, 1.0, 0.0))
+        return left(Vector3d())
+    }
+
+    fun left(store: Vector3d): Vector3d {
+        return getWorld().transformDirection(store.set(0.0, 1.0, 0.0)).normalize()
     }
 
     fun up(): Vector3d {
-        return worldQuaternion.transform(Vector3d(0.0, 0.0, 1.0))
+        return up(Vector3d())
+    }
+
+    fun up(store: Vector3d): Vector3d {
+        return getWorld().transformDirection(store.set(0.0, 0.0, 1.0)).normalize()
     }
 
     fun mul(m: Matrix4dc?) {
-        local.mulAffine(m)
-        setWorldNeedsUpdate()
+        localChanged(local.mulAffine(m))
     }
 
     fun preMul(m: Matrix4dc?) {
-        local.mulLocalAffine(m)
-        setWorldNeedsUpdate()
+        localChanged(local.mulLocalAffine(m))
     }
 
     @JvmOverloads
-    fun lookAt(lookAtWorld: Vector3dc, up: Vector3dc = Vector3d(0.0, 0.0, 1.0)) {
-        val eye = worldTranslation
-        val dir = lookAtWorld.sub(eye, Vector3d()).normalize()
-        setWorld(Matrix4d().translationRotateTowards(eye, dir, up))
+    fun lookAt(lookAtWorld: Vector3dc, up: Vector3dc = UNIT_Z) {
+        val world = getWorld()
+        val eyeX = world.m30()
+        val eyeY = world.m31()
+        val eyeZ = world.m32()
+        tmpMatrix.translationRotateTowards(
+            eyeX, eyeY, eyeZ,
+            lookAtWorld.x() - eyeX, lookAtWorld.y() - eyeY, lookAtWorld.z() - eyeZ,
+            up.x(), up.y(), up.z()
+        )
+        setWorld(tmpMatrix)
     }
 
     fun localTranslateX(x: Double) {
-        mul(Matrix4d().setTranslation(x, 0.0, 0.0))
+        localTranslate(x, 0.0, 0.0)
     }
 
     fun localTranslateY(y: Double) {
-        mul(Matrix4d().setTranslation(0.0, y, 0.0))
+        localTranslate(0.0, y, 0.0)
     }
 
     fun localTranslateZ(z: Double) {
-        mul(Matrix4d().setTranslation(0.0, 0.0, z))
+        localTranslate(0.0, 0.0, z)
     }
 
     fun localTranslate(x: Double, y: Double, z: Double) {
-        mul(Matrix4d().setTranslation(x, y, z))
+        localChanged(local.translate(x, y, z))
     }
 
     fun localRotateX(angle: Double) {
-        mul(Matrix4d().rotate(angle, 1.0, 0.0, 0.0))
+        localChanged(local.rotateX(angle))
     }
 
     fun localRotateY(angle: Double) {
-        mul(Matrix4d().rotate(angle, 0.0, 1.0, 0.0))
+        localChanged(local.rotateY(angle))
     }
 
     fun localRotateZ(angle: Double) {
-        mul(Matrix4d().rotate(angle, 0.0, 0.0, 1.0))
+        localChanged(local.rotateZ(angle))
     }
 
     fun localRotate(angle: Double, x: Double, y: Double, z: Double) {
-        mul(Matrix4d().rotate(angle, x, y, z))
+        localChanged(local.rotate(angle, x, y, z))
     }
 
     private fun throwOnSame(o1: Any, o2: Any) {
@@ -260,4 +438,8 @@ class TransformComponent : Component {
         ) + DEGREE + ", z=" + Math.toDegrees(e.z) + DEGREE + "]}"
     }
 
+    private companion object {
+        private val UNIT_Z: Vector3dc = Vector3d(0.0, 0.0, 1.0)
+    }
+
 }
@@ -0,0 +1,271 @@
+package info.laht.aco.render
+
+import info.laht.aco.core.*
+import info.laht.aco.signals.Listener
+import info.laht.aco.signals.Signal
+import org.joml.Matrix4d
+import org.joml.Matrix4dc
+import org.joml.Quaterniond
+import org.joml.Vector3d
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.DoubleBuffer
+
+/**
+ * Optional storage keeping the local and world matrices of all the [TransformComponent]s of an [Engine] packed in two
+ * contiguous off-heap buffers. The matrices of an entity are found at its slot, i.e. its [Entity.getId], as 16 doubles in
+ * JOML's column-major layout starting at index `slot * 16`.
+ *
+ * Once the store is added to an engine, the transforms of its entities become views of their slots: their getters read
+ * from the buffers and their setters write to them. Every step, the world matrices of the stored transforms flagged as
+ * out of date are recomputed in a single pass over the buffers, parents before children, so a [TransformSystem] is not
+ * needed.
+ *
+ * Bulk updates may write local matrices through [setLocal] and [setLocalTranslation], which flag the transforms as out of
+ * date. Such writes are reflected in the world matrices at the next step, or after calling [updateWorld]. Local matrices
+ * written straight into [localBuffer] are not flagged, and are only picked up by `updateWorld(true)`. The buffers are
+ * replaced when the store grows, so they should be fetched again after adding entities. Replacing the transform of an
+ * entity detaches the old transform and attaches the new one to the slot.
+ */
+class TransformStore @JvmOverloads constructor(
+    initialCapacity: Int = 1024,
+    priority: Int = Int.MAX_VALUE - 1
+) : EntitySystem(priority) {
+
+    /**
+     * The local matrices, 16 doubles per slot.
+     */
+    var localBuffer: DoubleBuffer = allocate(initialCapacity)
+        private set
+
+    /**
+     * The world matrices, 16 doubles per slot.
+     */
+    var worldBuffer: DoubleBuffer = allocate(initialCapacity)
+        private set
+
+    private var transforms = arrayOfNulls<TransformComponent>(initialCapacity)
+    private var order = IntArray(initialCapacity)
+    private var orderSize = 0
+    private var orderNeedsUpdate = false
+
+    private val tmpLocal = Matrix4d()
+    private val tmpParent = Matrix4d()
+    private val tmpWorld = Matrix4d()
+
+    private val tm = ComponentMapper.getFor(TransformComponent::class.java)
+
+    private val listener = object : EntityListener {
+        override fun entityAdded(entity: Entity) {
+            add(entity)
+        }
+
+        override fun entityRemoved(entity: Entity) {
+            entity.componentAdded.remove(componentListener)
+            detach(entity.id)
+        }
+    }
+
+    // Entities stay in the family when their transform is replaced, so the replacement is only seen as an added component
+    private val componentListener = object : Listener<Entity> {
+        override fun receive(signal: Signal<Entity>, entity: Entity) {
+            val transform = tm.get(entity) ?: return
+            if (transforms[entity.id] !== transform) {
+                detach(entity.id)
+                attach(entity.id, transform)
+            }
+        }
+    }
+
+    /**
+     * The number of slots the buffers currently hold.
+     */
+    val capacity: Int
+        get() = transforms.size
+
+    override fun addedToEngine(engine: Engine) {
+        engine.addEntityListener(family, listener)
+        for (entity in engine.getEntitiesFor(family)) {
+            add(entity)
+        }
+    }
+
+    override fun removedFromEngine(engine: Engine) {
+        engine.removeEntityListener(listener)
+        for (entity in engine.getEntitiesFor(family)) {
+            entity.componentAdded.remove(componentListener)
+        }
+        for (slot in transforms.indices) {
+            detach(slot)
+        }
+    }
+
+    override fun step(deltaTime: Double) {
+        updateWorld()
+    }
+
+    /**
+     * Recomputes the world matrices of the stored transforms whose [TransformComponent.worldNeedsUpdate], parents before
+     * children. Since the flag of a transform is raised along with those of its descendants, the transforms left out are
+     * those whose whole subtree is up to date.
+     *
+     * @param force whether to recompute all the world matrices, e.g. after writing into [localBuffer] directly
+     */
+    @JvmOverloads
+    fun updateWorld(force: Boolean = false) {
+        if (orderNeedsUpdate) {
+            updateOrder()
+        }
+
+        val local = localBuffer
+        val world = worldBuffer
+        for (i in 0 until orderSize) {
+            val slot = order[i]
+            val transform = transforms[slot]!!
+            if (!force && !transform.worldNeedsUpdate) {
+                continue
+            }
+            val parent = transform.parent
+            tmpLocal.set(slot * MATRIX_SIZE, local)
+            if (parent == null) {
+                tmpWorld.set(tmpLocal)
+            } else {
+                val parentWorld = if (parent.transformStore === this) {
+                    tmpParent.set(parent.slot * MATRIX_SIZE, world)
+                } else {
+                    parent.getWorld()
+                }
+                parentWorld.mul(tmpLocal, tmpWorld)
+            }
+            tmpWorld.get(slot * MATRIX_SIZE, world)
+            transform.worldUpdated()
+        }
+    }
+
+    /**
+     * @return The transform stored at the slot, or null if the slot is unused
+     */
+    fun getTransform(slot: Int): TransformComponent? {
+        return if (slot < transforms.size) transforms[slot] else null
+    }
+
+    fun getLocal(slot: Int, dest: Matrix4d): Matrix4d {
+        return dest.set(slot * MATRIX_SIZE, localBuffer)
+    }
+
+    /**
+     * Sets the local matrix at the slot, flagging the world matrices of the transform's subtree as out of date.
+     */
+    fun setLocal(slot: Int, m: Matrix4dc) {
+        m.get(slot * MATRIX_SIZE, localBuffer)
+        transforms[slot]?.setWorldNeedsUpdate()
+    }
+
+    fun getWorld(slot: Int, dest: Matrix4d): Matrix4d {
+        return dest.set(slot * MATRIX_SIZE, worldBuffer)
+    }
+
+    fun setWorld(slot: Int, m: Matrix4dc) {
+        m.get(slot * MATRIX_SIZE, worldBuffer)
+        transforms[slot]?.worldWritten()
+    }
+
+    /**
+     * Sets the translation of the local matrix at the slot, flagging the world matrices of the transform's subtree as out
+     * of date.
+     */
+    fun setLocalTranslation(slot: Int, x: Double, y: Double, z: Double) {
+        val index = slot * MATRIX_SIZE + TRANSLATION_OFFSET
+        localBuffer.put(index, x)
+        localBuffer.put(index + 1, y)
+        localBuffer.put(index + 2, z)
+        transforms[slot]?.setWorldNeedsUpdate()
+    }
+
+    fun getWorldTranslation(slot: Int, dest: Vector3d): Vector3d {
+        val index = slot * MATRIX_SIZE + TRANSLATION_OFFSET
+        return dest.set(worldBuffer.get(index), worldBuffer.get(index + 1), worldBuffer.get(index + 2))
+    }
+
+    fun getWorldQuaternion(slot: Int, dest: Quaterniond): Quaterniond {
+        return getWorld(slot, tmpWorld).getNormalizedRotation(dest)
+    }
+
+    internal fun hierarchyChanged() {
+        orderNeedsUpdate = true
+    }
+
+    private fun add(entity: Entity) {
+        entity.componentAdded.add(componentListener)
+        attach(entity.id, tm.get(entity))
+    }
+
+    private fun attach(slot: Int, transform: TransformComponent) {
+        if (slot >= transforms.size) {
+            grow(slot + 1)
+        }
+        transform.attach(this, slot)
+        transforms[slot] = transform
+        orderNeedsUpdate = true
+    }
+
+    private fun detach(slot: Int) {
+        val transform = transforms[slot] ?: return
+        transform.detach()
+        transforms[slot] = null
+        orderNeedsUpdate = true
+    }
+
+    private fun grow(minCapacity: Int) {
+        val capacity = maxOf(minCapacity, transforms.size * 2)
+        localBuffer = copy(localBuffer, allocate(capacity))
+        worldBuffer = copy(worldBuffer, allocate(capacity))
+        transforms = transforms.copyOf(capacity)
+        order = IntArray(capacity)
+        orderNeedsUpdate = true
+    }
+
+    private fun updateOrder() {
+        orderSize = 0
+        for (slot in transforms.indices) {
+            val transform = transforms[slot] ?: continue
+            val parent = transform.parent
+            if (parent == null || parent.transformStore !== this) {
+                addToOrder(transform)
+            }
+        }
+        orderNeedsUpdate = false
+    }
+
+    private fun addToOrder(transform: TransformComponent) {
+        order[orderSize++] = transform.slot
+        val children = transform.getChildren()
+        for (i in children.indices) {
+            val child = children[i]
+            if (child.transformStore === this) {
+                addToOrder(child)
+            }
+        }
+    }
+
+    private companion object {
+        private const val MATRIX_SIZE = 16
+        private const val TRANSLATION_OFFSET = 12
+
+        private val family = Family.all(TransformComponent::class.java).get()
+
+        private fun allocate(capacity: Int): DoubleBuffer {
+            return ByteBuffer.allocateDirect(capacity * MATRIX_SIZE * java.lang.Double.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asDoubleBuffer()
+        }
+
+        private fun copy(source: DoubleBuffer, dest: DoubleBuffer): DoubleBuffer {
+            for (i in 0 until source.capacity()) {
+                dest.put(i, source.get(i))
+            }
+            return dest
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package info.laht.aco.render
+
+import info.laht.aco.core.ComponentMapper
+import info.laht.aco.core.Entity
+import info.laht.aco.core.Family
+import info.laht.aco.systems.IteratingSystem
+
+/**
+ * Brings the world matrices of all [TransformComponent]s up to date once per step, so that reading them afterwards, e.g.
+ * when rendering, does not recompute anything. Only out of date subtrees of the transform hierarchy are visited, each
+ * starting from its topmost out of date transform, so that parents are always updated before their children and every
+ * matrix is computed at most once.
+ *
+ * By default the system runs after all other systems of default priority.
+ */
+class TransformSystem @JvmOverloads constructor(
+    priority: Int = Int.MAX_VALUE - 1
+) : IteratingSystem(Family.all(TransformComponent::class.java).get(), priority) {
+
+    private val tm = ComponentMapper.getFor(TransformComponent::class.java)
+
+    override fun processEntity(entity: Entity, deltaTime: Double) {
+        var transform = tm.get(entity)
+        if (!transform.worldNeedsUpdate) {
+            return
+        }
+        while (true) {
+            val parent = transform.parent
+            if (parent == null || !parent.worldNeedsUpdate) {
+                break
+            }
+            transform = parent
+        }
+        transform.updateMatrixWorldSubtree()
+    }
+
+}
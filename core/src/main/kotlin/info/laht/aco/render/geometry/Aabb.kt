@@ -0,0 +1,82 @@
+package info.laht.aco.render.geometry
+
+/**
+ * Mutable axis-aligned bounding box. An empty box has its minimum larger than its maximum.
+ */
+class Aabb {
+
+    var minX = Double.POSITIVE_INFINITY
+    var minY = Double.POSITIVE_INFINITY
+    var minZ = Double.POSITIVE_INFINITY
+    var maxX = Double.NEGATIVE_INFINITY
+    var maxY = Double.NEGATIVE_INFINITY
+    var maxZ = Double.NEGATIVE_INFINITY
+
+    val centerX: Double
+        get() = (minX + maxX) * 0.5
+
+    val centerY: Double
+        get() = (minY + maxY) * 0.5
+
+    val centerZ: Double
+        get() = (minZ + maxZ) * 0.5
+
+    val isEmpty: Boolean
+        get() = minX > maxX || minY > maxY || minZ > maxZ
+
+    fun set(minX: Double, minY: Double, minZ: Double, maxX: Double, maxY: Double, maxZ: Double): Aabb {
+        this.minX = minX
+        this.minY = minY
+        this.minZ = minZ
+        this.maxX = maxX
+        this.maxY = maxY
+        this.maxZ = maxZ
+        return this
+    }
+
+    fun set(other: Aabb): Aabb {
+        return set(other.minX, other.minY, other.minZ, other.maxX, other.maxY, other.maxZ)
+    }
+
+    fun setCenterHalfExtents(x: Double, y: Double, z: Double, hx: Double, hy: Double, hz: Double): Aabb {
+        return set(x - hx, y - hy, z - hz, x + hx, y + hy, z + hz)
+    }
+
+    fun makeEmpty(): Aabb {
+        return set(
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY
+        )
+    }
+
+    /**
+     * Grows this box to contain other.
+     */
+    fun union(other: Aabb): Aabb {
+        if (other.minX < minX) minX = other.minX
+        if (other.minY < minY) minY = other.minY
+        if (other.minZ < minZ) minZ = other.minZ
+        if (other.maxX > maxX) maxX = other.maxX
+        if (other.maxY > maxY) maxY = other.maxY
+        if (other.maxZ > maxZ) maxZ = other.maxZ
+        return this
+    }
+
+    /**
+     * @return Whether the boxes overlap, touching counting as overlapping
+     */
+    fun overlaps(other: Aabb): Boolean {
+        return minX <= other.maxX && maxX >= other.minX &&
+                minY <= other.maxY && maxY >= other.minY &&
+                minZ <= other.maxZ && maxZ >= other.minZ
+    }
+
+    fun contains(x: Double, y: Double, z: Double): Boolean {
+        return x in minX..maxX && y in minY..maxY && z in minZ..maxZ
+    }
+
+    override fun toString(): String {
+        return "Aabb{min=[$minX, $minY, $minZ], max=[$maxX, $maxY, $maxZ]}"
+    }
+
+}
@@ -1,7 +1,9 @@
 package info.laht.aco.render.geometry
 
+import org.joml.Matrix4dc
 import org.joml.Vector3f
 import org.joml.Vector3fc
+import kotlin.math.abs
 
 class BoxShape(
     private val extents: Vector3f
@@ -24,4 +26,16 @@ class BoxShape(
     val depth: Float
         get() = extents.z
 
+    override fun computeAabb(world: Matrix4dc, dest: Aabb): Aabb {
+        val hx = width * 0.5
+        val hy = height * 0.5
+        val hz = depth * 0.5
+        return dest.setCenterHalfExtents(
+            world.m30(), world.m31(), world.m32(),
+            abs(world.m00()) * hx + abs(world.m10()) * hy + abs(world.m20()) * hz,
+            abs(world.m01()) * hx + abs(world.m11()) * hy + abs(world.m21()) * hz,
+            abs(world.m02()) * hx + abs(world.m12()) * hy + abs(world.m22()) * hz
+        )
+    }
+
 }
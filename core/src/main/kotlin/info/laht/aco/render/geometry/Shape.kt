@@ -1,3 +1,14 @@
 package info.laht.aco.render.geometry
 
-interface Shape 
+import org.joml.Matrix4dc
+
+interface Shape {
+
+    /**
+     * Computes the world space bounds of the shape when placed by the world matrix.
+     *
+     * @return dest
+     */
+    fun computeAabb(world: Matrix4dc, dest: Aabb): Aabb
+
+}
@@ -1,5 +1,22 @@
 package info.laht.aco.render.geometry
 
+import org.joml.Matrix4dc
+import kotlin.math.max
+import kotlin.math.sqrt
+
 class SphereShape @JvmOverloads constructor(
     val radius: Float = 0.5f
-) : Shape
+) : Shape {
+
+    override fun computeAabb(world: Matrix4dc, dest: Aabb): Aabb {
+        val scaleSquared = max(
+            world.m00() * world.m00() + world.m01() * world.m01() + world.m02() * world.m02(), max(
+                world.m10() * world.m10() + world.m11() * world.m11() + world.m12() * world.m12(),
+                world.m20() * world.m20() + world.m21() * world.m21() + world.m22() * world.m22()
+            )
+        )
+        val r = radius * sqrt(scaleSquared)
+        return dest.setCenterHalfExtents(world.m30(), world.m31(), world.m32(), r, r, r)
+    }
+
+}
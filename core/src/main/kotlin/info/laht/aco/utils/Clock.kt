@@ -13,7 +13,7 @@ class Clock(
         private set
 
     fun start() {
-        startTime = System.currentTimeMillis()
+        startTime = System.nanoTime()
         oldTime = startTime
         elapsedTime_ = 0.0
         running = true
@@ -40,11 +40,12 @@ class Clock(
 
         if (this.running) {
 
-            val newTime = System.currentTimeMillis()
-            diff = (newTime - this.oldTime).toDouble() / 1000.0
+            val newTime = System.nanoTime()
+            diff = (newTime - this.oldTime).toDouble() / 1e9
             this.oldTime = newTime
 
-            elapsedTime_ += diff
+            // Measured from the start rather than summed up, so rounding errors do not accumulate
+            elapsedTime_ = (newTime - startTime).toDouble() / 1e9
 
         }
 
@@ -0,0 +1,201 @@
+package info.laht.aco.core;
+
+import info.laht.aco.utils.ImmutableArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArchetypeTests {
+
+    private static final double deltaTime = 0.16;
+
+    private static class ComponentA implements Component {
+        public int value;
+    }
+
+    private static class ComponentB implements Component {
+    }
+
+    private static class ComponentC implements Component {
+    }
+
+    private static int countEntities(ImmutableArray<Archetype> archetypes) {
+        int count = 0;
+        for (Archetype archetype : archetypes) {
+            for (ArchetypeChunk chunk : archetype.getChunks()) {
+                count += chunk.size();
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void archetypeStorageIsOptIn() {
+        Engine engine = new Engine();
+        engine.addEntity(new Entity().add(new ComponentA()));
+
+        Assert.assertEquals(0, engine.getArchetypes().size());
+
+        ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(Family.all(ComponentA.class).get());
+
+        Assert.assertEquals(1, engine.getArchetypes().size());
+        Assert.assertEquals(1, archetypes.size());
+        Assert.assertEquals(1, countEntities(archetypes));
+    }
+
+    @Test
+    public void entitiesWithSameComponentsShareArchetype() {
+        Engine engine = new Engine();
+        ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(Family.all(ComponentA.class).get());
+
+        Entity entity1 = new Entity().add(new ComponentA()).add(new ComponentB());
+        Entity entity2 = new Entity().add(new ComponentB()).add(new ComponentA());
+        Entity entity3 = new Entity().add(new ComponentA());
+        Entity entity4 = new Entity().add(new ComponentC());
+
+        engine.addEntity(entity1);
+        engine.addEntity(entity2);
+        engine.addEntity(entity3);
+        engine.addEntity(entity4);
+
+        Assert.assertEquals(3, engine.getArchetypes().size());
+        Assert.assertEquals(2, archetypes.size());
+        Assert.assertSame(entity1.archetype, entity2.archetype);
+        Assert.assertNotSame(entity1.archetype, entity3.archetype);
+        Assert.assertEquals(2, entity1.archetype.size());
+        Assert.assertTrue(entity1.archetype.has(ComponentB.class));
+        Assert.assertFalse(entity3.archetype.has(ComponentB.class));
+        Assert.assertEquals(3, countEntities(archetypes));
+    }
+
+    @Test
+    public void chunkColumnsHoldComponents() {
+        Engine engine = new Engine();
+        ComponentMapper<ComponentA> am = ComponentMapper.getFor(ComponentA.class);
+        ComponentMapper<ComponentC> cm = ComponentMapper.getFor(ComponentC.class);
+        ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(Family.all(ComponentA.class).get());
+
+        int numEntities = ArchetypeChunk.CAPACITY * 2 + 3;
+        for (int i = 0; i < numEntities; ++i) {
+            ComponentA a = new ComponentA();
+            a.value = i;
+            engine.addEntity(new Entity().add(a));
+        }
+
+        Archetype archetype = archetypes.first();
+        Assert.assertEquals(numEntities, archetype.size());
+        Assert.assertEquals(3, archetype.getChunks().size());
+
+        int sum = 0;
+        for (ArchetypeChunk chunk : archetype.getChunks()) {
+            ComponentA[] column = am.getColumn(chunk);
+            Assert.assertNull(cm.getColumn(chunk));
+            for (int i = 0; i < chunk.size(); ++i) {
+                Assert.assertSame(am.get(chunk.getEntity(i)), column[i]);
+                sum += column[i].value;
+            }
+        }
+        Assert.assertEquals(numEntities * (numEntities - 1) / 2, sum);
+    }
+
+    @Test
+    public void componentChangesMoveEntityBetweenArchetypes() {
+        Engine engine = new Engine();
+        ComponentMapper<ComponentA> am = ComponentMapper.getFor(ComponentA.class);
+        ImmutableArray<Archetype> archetypesA = engine.getArchetypesFor(Family.all(ComponentA.class).get());
+        ImmutableArray<Archetype> archetypesAB = engine.getArchetypesFor(Family.all(ComponentA.class, ComponentB.class).get());
+
+        Entity entity = new Entity().add(new ComponentA());
+        engine.addEntity(entity);
+
+        Assert.assertEquals(1, countEntities(archetypesA));
+        Assert.assertEquals(0, countEntities(archetypesAB));
+
+        entity.add(new ComponentB());
+
+        Assert.assertEquals(1, countEntities(archetypesA));
+        Assert.assertEquals(1, countEntities(archetypesAB));
+        Assert.assertEquals(0, archetypesA.first().size());
+
+        ComponentA replacement = new ComponentA();
+        entity.add(replacement);
+
+        ArchetypeChunk chunk = entity.archetype.getChunks().first();
+        Assert.assertSame(replacement, am.getColumn(chunk)[0]);
+
+        entity.remove(ComponentA.class);
+
+        Assert.assertEquals(0, countEntities(archetypesA));
+        Assert.assertEquals(3, engine.getArchetypes().size());
+    }
+
+    @Test
+    public void removalKeepsChunksDense() {
+        Engine engine = new Engine();
+        ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(Family.all(ComponentA.class).get());
+
+        int numEntities = ArchetypeChunk.CAPACITY + 1;
+        Entity[] entities = new Entity[numEntities];
+        for (int i = 0; i < numEntities; ++i) {
+            entities[i] = new Entity().add(new ComponentA());
+            engine.addEntity(entities[i]);
+        }
+
+        engine.removeEntity(entities[0]);
+        engine.removeEntity(entities[5]);
+
+        Archetype archetype = archetypes.first();
+        Assert.assertEquals(numEntities - 2, archetype.size());
+        Assert.assertEquals(1, archetype.getChunks().size());
+        Assert.assertNull(entities[0].archetype);
+
+        ArchetypeChunk chunk = archetype.getChunks().first();
+        for (int i = 0; i < chunk.size(); ++i) {
+            Entity entity = chunk.getEntity(i);
+            Assert.assertNotSame(entities[0], entity);
+            Assert.assertNotSame(entities[5], entity);
+            Assert.assertEquals(i, entity.archetypeSlot);
+        }
+
+        engine.removeAllEntities();
+
+        Assert.assertEquals(0, archetype.size());
+        Assert.assertEquals(0, archetype.getChunks().size());
+    }
+
+    @Test
+    public void structuralChangesWhileIteratingChunks() {
+        final Engine engine = new Engine();
+        final ImmutableArray<Archetype> archetypes = engine.getArchetypesFor(Family.all(ComponentA.class).get());
+
+        for (int i = 0; i < 10; ++i) {
+            engine.addEntity(new Entity().add(new ComponentA()));
+        }
+
+        engine.addSystem(new EntitySystem() {
+            @Override
+            protected void step(double deltaTime) {
+                for (Archetype archetype : archetypes) {
+                    for (ArchetypeChunk chunk : archetype.getChunks()) {
+                        for (int i = 0; i < chunk.size(); ++i) {
+                            Entity entity = chunk.getEntity(i);
+                            if (i % 2 == 0) {
+                                engine.removeEntity(entity);
+                            } else {
+                                entity.add(new ComponentB());
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(2, archetypes.size());
+        Assert.assertEquals(5, countEntities(archetypes));
+        for (Archetype archetype : archetypes) {
+            Assert.assertEquals(archetype.has(ComponentB.class) ? 5 : 0, archetype.size());
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package info.laht.aco.core;
+
+import info.laht.aco.systems.IntervalSystem;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class CheckpointTests {
+
+    private static final double deltaTime = 0.1;
+
+    private static class Position implements Component {
+        double x, y;
+
+        Position(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static class Payload implements Component {
+        final byte[] data;
+
+        Payload(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static class Transient implements Component {
+    }
+
+    private static class PositionCodec implements ComponentCodec<Position> {
+        @Override
+        public void write(@NotNull Position component, @NotNull ByteBuffer buffer) {
+            buffer.putDouble(component.x);
+            buffer.putDouble(component.y);
+        }
+
+        @NotNull
+        @Override
+        public Position read(@NotNull ByteBuffer buffer) {
+            return new Position(buffer.getDouble(), buffer.getDouble());
+        }
+    }
+
+    private static class PayloadCodec implements ComponentCodec<Payload> {
+        @Override
+        public void write(@NotNull Payload component, @NotNull ByteBuffer buffer) {
+            buffer.putInt(component.data.length);
+            buffer.put(component.data);
+        }
+
+        @NotNull
+        @Override
+        public Payload read(@NotNull ByteBuffer buffer) {
+            byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            return new Payload(data);
+        }
+    }
+
+    private static class CountingSystem extends IntervalSystem {
+        int count;
+
+        CountingSystem() {
+            super(0.25);
+        }
+
+        @Override
+        protected void updateInterval(double currentTime, double deltaTime) {
+            ++count;
+        }
+    }
+
+    private static Checkpoint checkpoint() {
+        return new Checkpoint()
+                .register(Position.class, new PositionCodec())
+                .register(Payload.class, new PayloadCodec());
+    }
+
+    private static Engine createEngine(int entities) {
+        Engine engine = new Engine();
+        for (int i = 0; i < entities; ++i) {
+            Entity entity = new Entity().add(new Position(i, -i));
+            if (i % 3 == 0) {
+                entity.add(new Transient());
+            }
+            engine.addEntity(entity);
+        }
+        return engine;
+    }
+
+    private static void assertRestored(Engine restored, int entities) {
+        ComponentMapper<Position> pm = ComponentMapper.getFor(Position.class);
+        Assert.assertEquals(entities, restored.getEntities().size());
+        for (int i = 0; i < entities; ++i) {
+            Entity entity = restored.getEntities().get(i);
+            Assert.assertEquals(i, pm.get(entity).x, 0);
+            Assert.assertEquals(-i, pm.get(entity).y, 0);
+            Assert.assertNull(entity.getComponent(Transient.class));
+        }
+    }
+
+    @Test
+    public void roundTripThroughFile() throws IOException {
+        int entities = 100_000;
+        Engine engine = createEngine(entities);
+        engine.step(deltaTime);
+        engine.step(deltaTime);
+
+        Engine restored = new Engine();
+        restored.addEntity(new Entity().add(new Position(42, 42)));
+        Path path = Files.createTempFile("checkpoint", ".bin");
+        try {
+            checkpoint().save(engine, path);
+            checkpoint().restore(restored, path);
+        } finally {
+            Files.delete(path);
+        }
+
+        assertRestored(restored, entities);
+        Assert.assertEquals(engine.getCurrentTime(), restored.getCurrentTime(), 0);
+        Assert.assertEquals(2, restored.getStepNumber());
+        Assert.assertEquals(engine.getFixedStepNumber(), restored.getFixedStepNumber());
+        Assert.assertEquals(engine.getInterpolationAlpha(), restored.getInterpolationAlpha(), 0);
+    }
+
+    @Test
+    public void roundTripThroughChannel() throws IOException {
+        Engine engine = createEngine(10);
+        byte[] large = new byte[3 << 20];
+        large[large.length - 1] = 7;
+        engine.addEntity(new Entity().add(new Payload(large)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        checkpoint().save(engine, Channels.newChannel(out));
+
+        Engine restored = new Engine();
+        // Registered in another order
+        new Checkpoint()
+                .register(Payload.class, new PayloadCodec())
+                .register(Position.class, new PositionCodec())
+                .restore(restored, Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+
+        Assert.assertEquals(11, restored.getEntities().size());
+        Payload payload = restored.getEntities().get(10).getComponent(Payload.class);
+        Assert.assertEquals(large.length, payload.data.length);
+        Assert.assertEquals(7, payload.data[large.length - 1]);
+    }
+
+    @Test
+    public void intervalSystemsResumeWhereTheyLeftOff() throws IOException {
+        Engine engine = new Engine();
+        CountingSystem system = new CountingSystem();
+        engine.addSystem(system);
+        for (int i = 0; i < 3; ++i) {
+            engine.step(deltaTime);
+        }
+        Assert.assertEquals(1, system.count);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        checkpoint().save(engine, Channels.newChannel(out));
+
+        Engine restored = new Engine();
+        CountingSystem restoredSystem = new CountingSystem();
+        restored.addSystem(restoredSystem);
+        checkpoint().restore(restored, Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+
+        // 0.05 left in the accumulator, so the next interval completes after two steps
+        restored.step(deltaTime);
+        Assert.assertEquals(0, restoredSystem.count);
+        restored.step(deltaTime);
+        Assert.assertEquals(1, restoredSystem.count);
+    }
+
+    @Test
+    public void statesOfMissingSystemsAreSkipped() throws IOException {
+        Engine engine = createEngine(10);
+        engine.addSystem(new CountingSystem());
+        engine.step(deltaTime);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        checkpoint().save(engine, Channels.newChannel(out));
+
+        Engine restored = new Engine();
+        checkpoint().restore(restored, Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+
+        assertRestored(restored, 10);
+        Assert.assertEquals(1, restored.getStepNumber());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingCodecsAreReported() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        checkpoint().save(createEngine(1), Channels.newChannel(out));
+
+        new Checkpoint()
+                .register(Position.class, new PositionCodec())
+                .restore(new Engine(), Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+}
@@ -0,0 +1,105 @@
+package info.laht.aco.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnTests {
+
+    private static class PositionComponent extends ColumnComponent {
+        static final DoubleColumn X = new DoubleColumn(PositionComponent.class);
+        static final DoubleColumn Y = new DoubleColumn(PositionComponent.class);
+    }
+
+    private static class StatsComponent extends ColumnComponent {
+        static final FloatColumn WEIGHT = new FloatColumn(StatsComponent.class);
+        static final IntColumn LEVEL = new IntColumn(StatsComponent.class);
+        static final LongColumn ID = new LongColumn(StatsComponent.class);
+    }
+
+    private static class ComponentA implements Component {
+    }
+
+    private static class ComponentB implements Component {
+    }
+
+    @Test
+    public void valuesAreKeptByDetachedComponents() {
+        Entity entity = new Entity().add(new PositionComponent()).add(new StatsComponent());
+
+        Assert.assertEquals(0.0, PositionComponent.X.get(entity), 0.0);
+
+        PositionComponent.X.set(entity, 1.5);
+        PositionComponent.Y.set(entity, -2.5);
+        StatsComponent.WEIGHT.set(entity, 0.25f);
+        StatsComponent.LEVEL.set(entity, -7);
+        StatsComponent.ID.set(entity, Long.MAX_VALUE);
+
+        Assert.assertEquals(1.5, PositionComponent.X.get(entity), 0.0);
+        Assert.assertEquals(-2.5, PositionComponent.Y.get(entity), 0.0);
+        Assert.assertEquals(0.25f, StatsComponent.WEIGHT.get(entity), 0f);
+        Assert.assertEquals(-7, StatsComponent.LEVEL.get(entity));
+        Assert.assertEquals(Long.MAX_VALUE, StatsComponent.ID.get(entity));
+    }
+
+    @Test
+    public void valuesMoveIntoChunkArrays() {
+        Engine engine = new Engine();
+        engine.getArchetypesFor(Family.all(PositionComponent.class).get());
+
+        Entity entity1 = new Entity().add(new PositionComponent()).add(new ComponentA());
+        Entity entity2 = new Entity().add(new PositionComponent()).add(new ComponentA());
+        PositionComponent.X.set(entity1, 1.0);
+        PositionComponent.X.set(entity2, 2.0);
+
+        engine.addEntity(entity1);
+        engine.addEntity(entity2);
+
+        ArchetypeChunk chunk = entity1.archetype.getChunks().first();
+        double[] x = PositionComponent.X.getArray(chunk);
+        Assert.assertNotNull(x);
+        Assert.assertNull(StatsComponent.LEVEL.getArray(chunk));
+        Assert.assertEquals(1.0, x[entity1.archetypeSlot], 0.0);
+        Assert.assertEquals(2.0, x[entity2.archetypeSlot], 0.0);
+
+        x[entity2.archetypeSlot] = 3.0;
+        Assert.assertEquals(3.0, PositionComponent.X.get(entity2), 0.0);
+
+        PositionComponent.Y.set(entity1, 4.0);
+        Assert.assertEquals(4.0, PositionComponent.Y.getArray(chunk)[entity1.archetypeSlot], 0.0);
+    }
+
+    @Test
+    public void valuesSurviveStructuralChanges() {
+        Engine engine = new Engine();
+        engine.getArchetypesFor(Family.all(PositionComponent.class).get());
+
+        Entity[] entities = new Entity[ArchetypeChunk.CAPACITY + 2];
+        for (int i = 0; i < entities.length; ++i) {
+            entities[i] = new Entity().add(new PositionComponent());
+            engine.addEntity(entities[i]);
+            PositionComponent.X.set(entities[i], i);
+        }
+
+        // Moves the entity to another archetype and swaps the last entity into its row
+        entities[3].add(new ComponentB());
+        engine.removeEntity(entities[5]);
+
+        for (int i = 0; i < entities.length; ++i) {
+            Assert.assertEquals(i, PositionComponent.X.get(entities[i]), 0.0);
+        }
+
+        // Removed entities keep their values in their components
+        Assert.assertNull(entities[5].archetype);
+        Assert.assertEquals(5.0, PositionComponent.X.get(entities[5]), 0.0);
+
+        PositionComponent replacement = new PositionComponent();
+        entities[3].add(replacement);
+        Assert.assertEquals(0.0, PositionComponent.X.get(entities[3]), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingComponentThrows() {
+        PositionComponent.X.get(new Entity().add(new ComponentA()));
+    }
+
+}
@@ -0,0 +1,232 @@
+package info.laht.aco.core;
+
+import info.laht.aco.signals.Listener;
+import info.laht.aco.signals.Signal;
+import info.laht.aco.utils.ImmutableArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class CommandBufferTests {
+
+    private static final double deltaTime = 0.16;
+
+    private static class ComponentA implements Component {
+    }
+
+    private static class ComponentB implements Component {
+    }
+
+    private static class ComponentC implements Component {
+    }
+
+    private static class CountingListener implements Listener<Entity> {
+        int count;
+
+        @Override
+        public void receive(Signal<Entity> signal, Entity object) {
+            ++count;
+        }
+    }
+
+    private static class CountingEntityListener extends EntityAdapter {
+        int added;
+        int removed;
+
+        @Override
+        public void entityAdded(Entity entity) {
+            ++added;
+        }
+
+        @Override
+        public void entityRemoved(Entity entity) {
+            ++removed;
+        }
+    }
+
+    @Test
+    public void commandsArePlayedBackDuringStep() {
+        Engine engine = new Engine();
+        CommandBuffer commands = engine.getCommandBuffer();
+        ImmutableArray<Entity> familyA = engine.getEntitiesFor(Family.all(ComponentA.class).get());
+
+        Entity entity = commands.createEntity(new ComponentA(), new ComponentB());
+
+        Assert.assertTrue(commands.hasCommands());
+        Assert.assertEquals(0, engine.getEntities().size());
+
+        engine.step(deltaTime);
+
+        Assert.assertFalse(commands.hasCommands());
+        Assert.assertEquals(1, familyA.size());
+        Assert.assertSame(entity, familyA.first());
+        Assert.assertTrue(entity.getId() >= 0);
+
+        commands.destroyEntity(entity);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(0, engine.getEntities().size());
+        Assert.assertEquals(0, familyA.size());
+    }
+
+    @Test
+    public void changesToOneEntityAreCoalesced() {
+        final Engine engine = new Engine();
+        final CommandBuffer commands = engine.getCommandBuffer();
+        ImmutableArray<Entity> familyAB = engine.getEntitiesFor(Family.all(ComponentA.class, ComponentB.class).get());
+        CountingEntityListener familyListener = new CountingEntityListener();
+        engine.addEntityListener(Family.all(ComponentA.class, ComponentB.class).get(), familyListener);
+
+        final Entity entity = new Entity().add(new ComponentC());
+        engine.addEntity(entity);
+
+        CountingListener added = new CountingListener();
+        CountingListener removed = new CountingListener();
+        entity.componentAdded.add(added);
+        entity.componentRemoved.add(removed);
+
+        engine.addSystem(new EntitySystem() {
+            @Override
+            protected void step(double deltaTime) {
+                if (engine.getStepNumber() == 0) {
+                    commands.addComponent(entity, new ComponentA());
+                    commands.addComponent(entity, new ComponentB());
+                    commands.removeComponent(entity, ComponentC.class);
+                    commands.addComponent(entity, new ComponentA());
+                }
+            }
+        });
+
+        long evaluated = engine.getFamilyMatchesEvaluated();
+        engine.step(deltaTime);
+
+        Assert.assertEquals(1, familyAB.size());
+        Assert.assertEquals(1, familyListener.added);
+        Assert.assertEquals(1, added.count);
+        Assert.assertEquals(1, removed.count);
+        Assert.assertFalse(entity.hasComponent(ComponentType.getFor(ComponentC.class)));
+        // One incremental update touching the single family mentioning A, B or C
+        Assert.assertEquals(1, engine.getFamilyMatchesEvaluated() - evaluated);
+    }
+
+    @Test
+    public void entitiesCreatedAndDestroyedInOneBufferAreNeverAdded() {
+        Engine engine = new Engine();
+        CountingEntityListener listener = new CountingEntityListener();
+        engine.addEntityListener(listener);
+
+        CommandBuffer commands = engine.getCommandBuffer();
+        Entity entity = commands.createEntity(new ComponentA());
+        commands.destroyEntity(entity);
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(0, listener.added);
+        Assert.assertEquals(0, engine.getEntities().size());
+    }
+
+    @Test
+    public void pooledEnginesCreateEntitiesFromTheirPool() {
+        PooledEngine engine = new PooledEngine();
+        CommandBuffer commands = engine.getCommandBuffer();
+        Entity entity = commands.createEntity(engine.createComponent(ComponentA.class));
+        engine.step(deltaTime);
+
+        commands.removeComponent(entity, ComponentA.class);
+        commands.destroyEntity(entity);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(1, engine.getComponentPool(ComponentA.class).getFree());
+        Assert.assertSame(entity, engine.createEntity());
+    }
+
+    @Test
+    public void pooledEnginesTakeBackEntitiesCreatedAndDestroyedInOneBuffer() {
+        PooledEngine engine = new PooledEngine();
+        CommandBuffer commands = engine.getCommandBuffer();
+        Entity entity = commands.createEntity(engine.createComponent(ComponentA.class));
+        commands.destroyEntity(entity);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(0, engine.getEntities().size());
+        Assert.assertEquals(0, entity.getComponents().size());
+        Assert.assertEquals(1, engine.getComponentPool(ComponentA.class).getFree());
+        Assert.assertSame(entity, engine.createEntity());
+    }
+
+    @Test
+    public void recordingFromSeveralThreads() throws InterruptedException {
+        Engine engine = new Engine();
+        final CommandBuffer commands = engine.getCommandBuffer();
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        final int numEntities = 1000;
+        for (int i = 0; i < numEntities; ++i) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    commands.createEntity(new ComponentA());
+                }
+            });
+        }
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(numEntities, engine.getEntitiesFor(Family.all(ComponentA.class).get()).size());
+    }
+
+    @Test
+    public void recordingPooledEntitiesFromSeveralThreads() throws InterruptedException {
+        final PooledEngine engine = new PooledEngine();
+        final CommandBuffer commands = engine.getCommandBuffer();
+        final int numEntities = 1000;
+
+        for (int round = 0; round < 3; ++round) {
+            ForkJoinPool pool = new ForkJoinPool(4);
+            for (int i = 0; i < numEntities; ++i) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        commands.createEntity(engine.createComponent(ComponentA.class), engine.createComponent(ComponentB.class));
+                    }
+                });
+            }
+            pool.shutdown();
+            Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+            engine.step(deltaTime);
+            Assert.assertEquals(numEntities, engine.getEntitiesFor(Family.all(ComponentA.class, ComponentB.class).get()).size());
+            engine.removeAllEntities();
+        }
+
+        ComponentPool<ComponentA> pool = engine.getComponentPool(ComponentA.class);
+        Assert.assertEquals(3 * numEntities, pool.getHits() + pool.getMisses());
+    }
+
+    @Test
+    public void removingComponentTypesBeyondTheCapacityOfTheEntity() {
+        Engine engine = new Engine();
+        CommandBuffer commands = engine.getCommandBuffer();
+        Entity entity = commands.createEntity(new ComponentA());
+        engine.step(deltaTime);
+
+        // A type whose index exceeds the capacity of the entity, at least 64 and at most twice the index of ComponentA
+        int capacity = Math.max(64, 2 * ComponentType.getIndexFor(ComponentA.class));
+        ComponentClassFactory factory = new ComponentClassFactory();
+        Class<? extends Component> type;
+        int i = 0;
+        do {
+            type = factory.createComponentType("CommandBufferComponent" + i++);
+        } while (ComponentType.getIndexFor(type) < capacity);
+        commands.removeComponent(entity, type);
+        commands.removeComponent(entity, ComponentA.class);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(0, entity.getComponents().size());
+    }
+
+}
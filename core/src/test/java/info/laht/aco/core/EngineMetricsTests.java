@@ -0,0 +1,160 @@
+package info.laht.aco.core;
+
+import info.laht.aco.utils.Histogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+public class EngineMetricsTests {
+
+    private static final double deltaTime = 0.16;
+
+    private static class ComponentA implements Component {
+    }
+
+    private static class ComponentB implements Component {
+    }
+
+    private static class SystemA extends EntitySystem {
+        @Override
+        protected void step(double deltaTime) {
+            getEngine().addEntity(new Entity().add(new ComponentA()));
+        }
+    }
+
+    private static class SystemB extends EntitySystem {
+        @Override
+        public SystemAccess getAccess() {
+            return SystemAccess.writes(ComponentB.class).get();
+        }
+    }
+
+    private static class SystemC extends EntitySystem {
+        @Override
+        public SystemAccess getAccess() {
+            return SystemAccess.reads(ComponentB.class).get();
+        }
+    }
+
+    @Test
+    public void metricsAreOffByDefault() {
+        Engine engine = new Engine();
+        engine.addSystem(new SystemA());
+        engine.step(deltaTime);
+
+        Assert.assertNull(engine.getMetrics());
+    }
+
+    @Test
+    public void systemStepsAreTimed() {
+        Engine engine = new Engine();
+        SystemA systemA = new SystemA();
+        engine.addSystem(systemA);
+
+        EngineMetrics metrics = engine.enableMetrics();
+        Assert.assertSame(metrics, engine.enableMetrics());
+
+        SystemB systemB = new SystemB();
+        engine.addSystem(systemB);
+
+        engine.step(deltaTime);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(2, metrics.getSystemMetrics().size());
+        Assert.assertEquals(2, metrics.getSystemMetrics(systemA).getStepNanos().getCount());
+        Assert.assertEquals(2, metrics.getSystemMetrics(systemA).getPostStepNanos().getCount());
+        Assert.assertEquals(2, metrics.getSystemMetrics(systemB).getStepNanos().getCount());
+        Assert.assertEquals(2, metrics.getStepNanos().getCount());
+        Assert.assertEquals(1, metrics.getPendingEntityOperations().getMax());
+        // Once per step, not at every sync point
+        Assert.assertEquals(2, metrics.getPendingEntityOperations().getCount());
+
+        engine.removeSystem(systemB);
+        Assert.assertNull(metrics.getSystemMetrics(systemB));
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getStepNanos().getCount());
+        Assert.assertEquals(0, metrics.getSystemMetrics(systemA).getStepNanos().getCount());
+
+        engine.disableMetrics();
+        engine.step(deltaTime);
+        Assert.assertNull(engine.getMetrics());
+        Assert.assertEquals(0, metrics.getStepNanos().getCount());
+    }
+
+    @Test
+    public void concurrentSystemStepsAreTimed() {
+        Engine engine = new Engine();
+        engine.setSystemPool(new ForkJoinPool(2));
+        SystemB systemB = new SystemB();
+        SystemC systemC = new SystemC();
+        engine.addSystem(systemB);
+        engine.addSystem(systemC);
+
+        EngineMetrics metrics = engine.enableMetrics();
+        engine.step(deltaTime);
+
+        Assert.assertEquals(1, metrics.getSystemMetrics(systemB).getStepNanos().getCount());
+        Assert.assertEquals(1, metrics.getSystemMetrics(systemC).getStepNanos().getCount());
+    }
+
+    @Test
+    public void visitReportsGaugesAndHistograms() {
+        Engine engine = new Engine();
+        engine.addSystem(new SystemA());
+        engine.getEntitiesFor(Family.all(ComponentA.class).get());
+        EngineMetrics metrics = engine.enableMetrics();
+
+        engine.step(deltaTime);
+        engine.step(deltaTime);
+
+        final Map<String, Long> gauges = new HashMap<>();
+        final Map<String, Histogram> histograms = new HashMap<>();
+        metrics.visit(new EngineMetrics.Visitor() {
+            @Override
+            public void gauge(String name, long value) {
+                gauges.put(name, value);
+            }
+
+            @Override
+            public void histogram(String name, Histogram histogram) {
+                histograms.put(name, histogram);
+            }
+        });
+
+        Assert.assertEquals(Long.valueOf(2), gauges.get("engine.entities"));
+        Assert.assertTrue(gauges.containsValue(2L));
+        Assert.assertEquals(2, histograms.get("system.SystemA.step.nanos").getCount());
+        Assert.assertEquals(2, histograms.get("engine.step.nanos").getCount());
+        Assert.assertTrue(histograms.containsKey("engine.pending.entityOperations"));
+        Assert.assertTrue(histograms.containsKey("engine.pending.componentOperations"));
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getSum());
+        Assert.assertEquals(1, histogram.getMin());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(50.5, histogram.getMean(), 1e-9);
+        // 50 lies in the bucket [32, 63], 99 and 100 in [64, 127]
+        Assert.assertEquals(63, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(100, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(1, histogram.getBucketCount(1));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMin());
+    }
+
+}
@@ -971,4 +971,75 @@ public class EngineTests {
         ComponentC componentC = engine.createComponent(ComponentC.class);
         Assert.assertNull(componentC);
     }
+
+    private static class FixedStepCounter extends EntitySystem {
+        int fixedSteps;
+        int steps;
+        double fixedTime;
+
+        @Override
+        protected void fixedStep(double deltaTime) {
+            ++fixedSteps;
+            fixedTime += deltaTime;
+        }
+
+        @Override
+        protected void step(double deltaTime) {
+            ++steps;
+        }
+    }
+
+    @Test
+    public void fixedStepsAccumulate() {
+        Engine engine = new Engine();
+        engine.setFixedDeltaTime(0.1);
+        FixedStepCounter system = new FixedStepCounter();
+        engine.addSystem(system);
+
+        engine.step(0.05);
+        Assert.assertEquals(0, system.fixedSteps);
+        Assert.assertEquals(0.5, engine.getInterpolationAlpha(), 1e-9);
+
+        engine.step(0.075);
+        Assert.assertEquals(1, system.fixedSteps);
+        Assert.assertEquals(0.25, engine.getInterpolationAlpha(), 1e-9);
+
+        engine.step(0.3);
+        Assert.assertEquals(4, system.fixedSteps);
+        Assert.assertEquals(3, system.steps);
+        Assert.assertEquals(0.4, system.fixedTime, 1e-9);
+        Assert.assertEquals(4, engine.getFixedStepNumber());
+    }
+
+    @Test
+    public void fixedStepsAreCappedPerStep() {
+        Engine engine = new Engine();
+        engine.setFixedDeltaTime(0.1);
+        engine.setMaxSubSteps(3);
+        FixedStepCounter system = new FixedStepCounter();
+        engine.addSystem(system);
+
+        engine.step(1.05);
+        Assert.assertEquals(3, system.fixedSteps);
+        Assert.assertEquals(7, engine.getDroppedFixedSteps());
+        Assert.assertEquals(0.5, engine.getInterpolationAlpha(), 1e-9);
+
+        // Faster than real time the cap scales with the realtime factor
+        engine.setRealtimeFactor(4);
+        engine.step(0.25);
+        Assert.assertEquals(13, system.fixedSteps);
+        Assert.assertEquals(7, engine.getDroppedFixedSteps());
+    }
+
+    @Test
+    public void fixedStepCanBeDisabled() {
+        Engine engine = new Engine();
+        engine.setFixedDeltaTime(0);
+        FixedStepCounter system = new FixedStepCounter();
+        engine.addSystem(system);
+
+        engine.step(1);
+        Assert.assertEquals(0, system.fixedSteps);
+        Assert.assertEquals(1, system.steps);
+    }
 }
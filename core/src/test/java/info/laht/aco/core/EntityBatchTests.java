@@ -0,0 +1,258 @@
+package info.laht.aco.core;
+
+import info.laht.aco.utils.ImmutableArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class EntityBatchTests {
+
+    private static final double deltaTime = 0.16;
+
+    private static class ComponentA implements Component {
+    }
+
+    private static class ComponentB implements Component {
+    }
+
+    static class RecordingListener implements BatchEntityListener {
+        final List<Integer> addedBatches = new ArrayList<>();
+        final List<Integer> removedBatches = new ArrayList<>();
+        int added;
+        int removed;
+
+        @Override
+        public void entitiesAdded(ImmutableArray<Entity> entities) {
+            addedBatches.add(entities.size());
+        }
+
+        @Override
+        public void entitiesRemoved(ImmutableArray<Entity> entities) {
+            removedBatches.add(entities.size());
+        }
+
+        @Override
+        public void entityAdded(Entity entity) {
+            ++added;
+        }
+
+        @Override
+        public void entityRemoved(Entity entity) {
+            ++removed;
+        }
+    }
+
+    private static class CountingEntityListener extends EntityAdapter {
+        int added;
+        int removed;
+
+        @Override
+        public void entityAdded(Entity entity) {
+            ++added;
+        }
+
+        @Override
+        public void entityRemoved(Entity entity) {
+            ++removed;
+        }
+    }
+
+    private static List<Entity> createEntities() {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 9; ++i) {
+            Entity entity = new Entity();
+            if (i % 3 != 2) {
+                entity.add(new ComponentA());
+            }
+            if (i % 3 != 0) {
+                entity.add(new ComponentB());
+            }
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    @Test
+    public void addedEntitiesJoinTheirFamiliesInOrder() {
+        Engine engine = new Engine();
+        Family familyA = Family.all(ComponentA.class).get();
+        Family familyB = Family.all(ComponentB.class).get();
+        ImmutableArray<Entity> entitiesA = engine.getEntitiesFor(familyA);
+        ImmutableArray<Entity> entitiesB = engine.getEntitiesFor(familyB);
+        List<Entity> entities = createEntities();
+
+        long evaluated = engine.getFamilyMatchesEvaluated();
+        engine.addEntities(entities);
+
+        // Two families matched once for each of the three signatures
+        Assert.assertEquals(6, engine.getFamilyMatchesEvaluated() - evaluated);
+        Assert.assertEquals(9, engine.getEntities().size());
+        Assert.assertEquals(6, entitiesA.size());
+        Assert.assertEquals(6, entitiesB.size());
+        int a = 0;
+        int b = 0;
+        for (Entity entity : entities) {
+            Assert.assertSame(entity, engine.getEntity(entity.getId()));
+            if (familyA.matches(entity)) {
+                Assert.assertSame(entity, entitiesA.get(a++));
+            }
+            if (familyB.matches(entity)) {
+                Assert.assertSame(entity, entitiesB.get(b++));
+            }
+        }
+    }
+
+    @Test
+    public void batchListenersAreNotifiedOncePerBatch() {
+        Engine engine = new Engine();
+        RecordingListener engineListener = new RecordingListener();
+        RecordingListener listenerA = new RecordingListener();
+        CountingEntityListener listenerB = new CountingEntityListener();
+        engine.addEntityListener(engineListener);
+        engine.addEntityListener(Family.all(ComponentA.class).get(), listenerA);
+        engine.addEntityListener(Family.all(ComponentB.class).get(), listenerB);
+        List<Entity> entities = createEntities();
+
+        engine.addEntities(entities);
+        engine.removeEntities(entities.subList(0, 3));
+
+        Assert.assertEquals(Arrays.asList(9), engineListener.addedBatches);
+        Assert.assertEquals(Arrays.asList(3), engineListener.removedBatches);
+        Assert.assertEquals(Arrays.asList(6), listenerA.addedBatches);
+        Assert.assertEquals(Arrays.asList(2), listenerA.removedBatches);
+        Assert.assertEquals(0, listenerA.added + listenerA.removed);
+        Assert.assertEquals(6, listenerB.added);
+        Assert.assertEquals(2, listenerB.removed);
+
+        // Single entities are still notified one by one
+        engine.removeEntity(entities.get(3));
+        Assert.assertEquals(1, engineListener.removed);
+        Assert.assertEquals(1, listenerA.removed);
+    }
+
+    @Test
+    public void removedEntitiesLeaveTheirFamilies() {
+        Engine engine = new Engine();
+        Family familyA = Family.all(ComponentA.class).get();
+        Family familyB = Family.all(ComponentB.class).get();
+        engine.setPreserveOrder(familyA, true);
+        ImmutableArray<Entity> entitiesA = engine.getEntitiesFor(familyA);
+        ImmutableArray<Entity> entitiesB = engine.getEntitiesFor(familyB);
+        List<Entity> entities = createEntities();
+        engine.addEntities(entities);
+
+        engine.removeEntities(Arrays.asList(entities.get(0), entities.get(4), entities.get(7), entities.get(0)));
+
+        Assert.assertEquals(6, engine.getEntities().size());
+        Assert.assertEquals(-1, entities.get(4).getId());
+        Assert.assertFalse(entities.get(4).isScheduledForRemoval());
+        Assert.assertEquals(Arrays.asList(entities.get(1), entities.get(3), entities.get(6)), toList(entitiesA));
+        Assert.assertEquals(4, entitiesB.size());
+
+        // The remaining entities can still be removed one by one
+        for (Entity entity : entities) {
+            engine.removeEntity(entity);
+        }
+        Assert.assertEquals(0, entitiesA.size());
+        Assert.assertEquals(0, entitiesB.size());
+        Assert.assertEquals(0, engine.getEntities().size());
+    }
+
+    @Test
+    public void removeAllEntitiesRemovesThemInOneBatch() {
+        Engine engine = new Engine();
+        RecordingListener listener = new RecordingListener();
+        engine.addEntityListener(listener);
+        List<Entity> entities = createEntities();
+        engine.addEntities(entities);
+
+        engine.removeAllEntities(Family.all(ComponentA.class).exclude(ComponentB.class).get());
+        Assert.assertEquals(Arrays.asList(3), listener.removedBatches);
+
+        engine.removeAllEntities();
+        Assert.assertEquals(Arrays.asList(3, 6), listener.removedBatches);
+        Assert.assertEquals(0, engine.getEntities().size());
+        for (Entity entity : entities) {
+            Assert.assertEquals(-1, entity.getId());
+        }
+    }
+
+    @Test
+    public void batchesMadeWhileSteppingAreAppliedAfterTheSystem() {
+        Engine engine = new Engine();
+        RecordingListener listener = new RecordingListener();
+        engine.addEntityListener(listener);
+        List<Entity> entities = createEntities();
+        int[] sizesDuringStep = new int[2];
+        engine.addSystem(new EntitySystem() {
+            @Override
+            public void step(double deltaTime) {
+                Engine engine = getEngine();
+                if (engine.getStepNumber() == 0) {
+                    engine.addEntities(entities);
+                    sizesDuringStep[0] = engine.getEntities().size();
+                } else {
+                    engine.removeEntities(entities.subList(0, 4));
+                    engine.removeEntity(entities.get(0));
+                    sizesDuringStep[1] = engine.getEntities().size();
+                }
+            }
+        });
+
+        engine.step(deltaTime);
+        Assert.assertEquals(0, sizesDuringStep[0]);
+        Assert.assertEquals(9, engine.getEntities().size());
+
+        engine.step(deltaTime);
+        Assert.assertEquals(9, sizesDuringStep[1]);
+        Assert.assertEquals(5, engine.getEntities().size());
+        Assert.assertEquals(Arrays.asList(9), listener.addedBatches);
+        Assert.assertEquals(Arrays.asList(4), listener.removedBatches);
+        Assert.assertEquals(0, listener.removed);
+    }
+
+    @Test
+    public void entitiesAlreadyRegisteredAreRejected() {
+        Engine engine = new Engine();
+        List<Entity> entities = createEntities();
+        engine.addEntity(entities.get(5));
+
+        try {
+            engine.addEntities(entities);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // Those before the rejected one were added
+        Assert.assertEquals(6, engine.getEntities().size());
+        Assert.assertEquals(-1, entities.get(6).getId());
+    }
+
+    @Test
+    public void pooledEnginesRecycleRemovedEntities() {
+        PooledEngine engine = new PooledEngine();
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            entities.add(engine.createEntity().add(engine.createComponent(ComponentB.class)));
+        }
+        engine.addEntities(entities);
+
+        engine.removeEntities(entities);
+
+        Entity entity = engine.createEntity();
+        Assert.assertTrue(entities.contains(entity));
+        Assert.assertEquals(0, entity.getComponents().size());
+    }
+
+    private static List<Entity> toList(ImmutableArray<Entity> entities) {
+        List<Entity> list = new ArrayList<>();
+        for (Entity entity : entities) {
+            list.add(entity);
+        }
+        return list;
+    }
+
+}
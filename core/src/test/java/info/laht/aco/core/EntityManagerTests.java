@@ -164,4 +164,76 @@ public class EntityManagerTests {
 		manager.processPendingOperations();
 		Assert.assertEquals(1, manager.getEntities().size());
 	}
+
+	@Test
+	public void removalSwapsLastEntityIntoSlot () {
+		EntityListenerMock listener = new EntityListenerMock();
+		EntityManager manager = new EntityManager(listener);
+
+		Entity[] entities = new Entity[5];
+		for (int i = 0; i < entities.length; ++i) {
+			entities[i] = new Entity();
+			manager.addEntity(entities[i]);
+		}
+
+		manager.removeEntity(entities[1]);
+		manager.removeEntity(entities[1]);
+
+		ImmutableArray<Entity> managed = manager.getEntities();
+		Assert.assertEquals(1, listener.removedCount);
+		Assert.assertEquals(4, managed.size());
+		Assert.assertSame(entities[4], managed.get(1));
+		for (int i = 0; i < managed.size(); ++i) {
+			Assert.assertEquals(i, managed.get(i).engineSlot);
+		}
+
+		manager.removeAllEntities();
+		Assert.assertEquals(0, managed.size());
+		Assert.assertEquals(-1, entities[0].engineSlot);
+
+		manager.addEntity(entities[1]);
+		Assert.assertEquals(1, managed.size());
+	}
+
+	@Test
+	public void idsAreDenseAndReused () {
+		EntityManager manager = new EntityManager(new EntityListenerMock());
+
+		Entity entity1 = new Entity();
+		Entity entity2 = new Entity();
+		Entity entity3 = new Entity();
+		Assert.assertEquals(-1, entity1.getId());
+		Assert.assertNull(entity1.getHandle());
+
+		manager.addEntity(entity1);
+		manager.addEntity(entity2);
+
+		Assert.assertEquals(0, entity1.getId());
+		Assert.assertEquals(1, entity2.getId());
+		Assert.assertEquals(2, manager.getIdCount());
+		Assert.assertSame(entity2, manager.getEntity(1));
+
+		EntityHandle handle = entity1.getHandle();
+		Assert.assertSame(entity1, manager.getEntity(handle));
+
+		manager.removeEntity(entity1);
+
+		Assert.assertEquals(-1, entity1.getId());
+		Assert.assertNull(manager.getEntity(0));
+		Assert.assertNull(manager.getEntity(handle));
+
+		manager.addEntity(entity3);
+
+		Assert.assertEquals(0, entity3.getId());
+		Assert.assertEquals(2, manager.getIdCount());
+		Assert.assertNotEquals(handle, entity3.getHandle());
+		Assert.assertNull(manager.getEntity(handle));
+		Assert.assertSame(entity3, manager.getEntity(entity3.getHandle()));
+
+		for (int i = 0; i < 100; ++i) {
+			manager.addEntity(new Entity());
+		}
+		Assert.assertEquals(102, manager.getIdCount());
+		Assert.assertSame(entity3, manager.getEntity(0));
+	}
 }
@@ -0,0 +1,185 @@
+package info.laht.aco.core;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool.Poolable;
+import info.laht.aco.utils.ImmutableArray;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+
+public class EntityTemplateTests {
+
+    private static final double deltaTime = 0.16;
+
+    public static class PositionComponent implements Component {
+        public double x;
+        public double y;
+    }
+
+    public static class VelocityComponent implements Component, Poolable {
+        public double x;
+        public double y;
+        public boolean reset;
+
+        @Override
+        public void reset() {
+            x = 0;
+            y = 0;
+            reset = true;
+        }
+    }
+
+    public static class MarkerComponent implements Component {
+    }
+
+    private static class CountingEntityListener extends EntityAdapter {
+        final ImmutableArray<Entity> family;
+        int added;
+        int familySizeOnFirstAdd = -1;
+
+        CountingEntityListener(ImmutableArray<Entity> family) {
+            this.family = family;
+        }
+
+        @Override
+        public void entityAdded(Entity entity) {
+            if (added++ == 0) {
+                familySizeOnFirstAdd = family.size();
+            }
+        }
+    }
+
+    private static final EntityTemplate particle = EntityTemplate.builder()
+            .add(PositionComponent.class)
+            .add(VelocityComponent.class, velocity -> velocity.x = 2)
+            .get();
+
+    @Test
+    public void instancesHoldTheComponentsOfTheTemplate() {
+        Engine engine = new Engine();
+        ImmutableArray<Entity> moving = engine.getEntitiesFor(Family.all(PositionComponent.class, VelocityComponent.class).get());
+        ImmutableArray<Entity> marked = engine.getEntitiesFor(Family.all(MarkerComponent.class).get());
+
+        Array<Entity> entities = engine.instantiate(particle, 100);
+
+        Assert.assertEquals(100, entities.size);
+        Assert.assertEquals(100, engine.getEntities().size());
+        Assert.assertEquals(100, moving.size());
+        Assert.assertEquals(0, marked.size());
+        IdentityHashMap<Component, Boolean> seen = new IdentityHashMap<>();
+        for (Entity entity : entities) {
+            Assert.assertTrue(entity.getId() >= 0);
+            Assert.assertSame(entity, engine.getEntity(entity.getId()));
+            Assert.assertEquals(2, entity.getComponents().size());
+            Assert.assertEquals(2, entity.getComponent(VelocityComponent.class).x, 0);
+            Assert.assertNull(seen.put(entity.getComponent(PositionComponent.class), true));
+        }
+        for (int i = 0; i < moving.size(); ++i) {
+            Assert.assertSame(entities.get(i), moving.get(i));
+        }
+    }
+
+    @Test
+    public void familiesAreMatchedOncePerBatch() {
+        Engine engine = new Engine();
+        engine.getEntitiesFor(Family.all(PositionComponent.class).get());
+        engine.getEntitiesFor(Family.all(MarkerComponent.class).get());
+        engine.getEntitiesFor(Family.exclude(MarkerComponent.class).get());
+
+        long evaluated = engine.getFamilyMatchesEvaluated();
+        engine.instantiate(particle, 1000);
+
+        Assert.assertEquals(3, engine.getFamilyMatchesEvaluated() - evaluated);
+    }
+
+    @Test
+    public void listenersAreNotifiedOnceTheBatchJoinedItsFamilies() {
+        Engine engine = new Engine();
+        Family family = Family.all(PositionComponent.class).get();
+        CountingEntityListener listener = new CountingEntityListener(engine.getEntitiesFor(family));
+        CountingEntityListener engineListener = new CountingEntityListener(engine.getEntities());
+        engine.addEntityListener(family, listener);
+        engine.addEntityListener(engineListener);
+        engine.addEntity(new Entity().add(new PositionComponent()));
+
+        engine.instantiate(particle, 10);
+
+        Assert.assertEquals(11, listener.added);
+        Assert.assertEquals(11, engineListener.added);
+        Assert.assertEquals(1, listener.familySizeOnFirstAdd);
+
+        // Components added later on still update family membership
+        Entity entity = engine.getEntities().get(5);
+        entity.remove(PositionComponent.class);
+        Assert.assertEquals(10, engine.getEntitiesFor(family).size());
+        entity.add(new MarkerComponent());
+        Assert.assertEquals(1, engine.getEntitiesFor(Family.all(MarkerComponent.class).get()).size());
+    }
+
+    @Test
+    public void instancesCreatedWhileSteppingAreAddedAfterTheSystem() {
+        Engine engine = new Engine();
+        ImmutableArray<Entity> family = engine.getEntitiesFor(Family.all(PositionComponent.class).get());
+        int[] sizeDuringStep = {-1};
+        engine.addSystem(new EntitySystem() {
+            @Override
+            public void step(double deltaTime) {
+                getEngine().instantiate(particle, 5);
+                sizeDuringStep[0] = family.size();
+            }
+        });
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(0, sizeDuringStep[0]);
+        Assert.assertEquals(5, family.size());
+        Assert.assertEquals(5, engine.getEntities().size());
+    }
+
+    @Test
+    public void pooledEnginesReuseEntitiesAndComponents() {
+        PooledEngine engine = new PooledEngine();
+        Array<Entity> first = engine.instantiate(particle, 10);
+        IdentityHashMap<Component, Boolean> velocities = new IdentityHashMap<>();
+        for (Entity entity : first) {
+            velocities.put(entity.getComponent(VelocityComponent.class), true);
+        }
+
+        engine.removeAllEntities();
+        Array<Entity> second = engine.instantiate(particle, 10);
+
+        for (Entity entity : second) {
+            VelocityComponent velocity = entity.getComponent(VelocityComponent.class);
+            Assert.assertTrue(velocities.containsKey(velocity));
+            Assert.assertTrue(velocity.reset);
+            Assert.assertEquals(2, velocity.x, 0);
+        }
+    }
+
+    @Test
+    public void laterTypesReplaceEarlierOnes() {
+        EntityTemplate template = EntityTemplate.builder()
+                .add(VelocityComponent.class, velocity -> velocity.x = 1)
+                .add(MarkerComponent.class)
+                .add(VelocityComponent.class, velocity -> velocity.y = 1)
+                .get();
+
+        Assert.assertEquals(2, template.size());
+        Assert.assertSame(VelocityComponent.class, template.getType(0));
+
+        Entity entity = new Engine().instantiate(template, 1).first();
+        VelocityComponent velocity = entity.getComponent(VelocityComponent.class);
+        Assert.assertEquals(0, velocity.x, 0);
+        Assert.assertEquals(1, velocity.y, 0);
+    }
+
+    @Test
+    public void templatesOfTypesHaveNoInitializers() {
+        Entity entity = new Engine().instantiate(EntityTemplate.of(MarkerComponent.class, PositionComponent.class), 1).first();
+
+        Assert.assertNotNull(entity.getComponent(MarkerComponent.class));
+        Assert.assertEquals(0, entity.getComponent(PositionComponent.class).x, 0);
+    }
+
+}
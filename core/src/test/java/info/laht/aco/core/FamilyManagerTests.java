@@ -266,4 +266,89 @@ public class FamilyManagerTests {
 		Assert.assertTrue(thrown);
 		Assert.assertFalse(manager.notifying());
 	}
+
+	@Test
+	public void componentChangesOnlyEvaluateAffectedFamilies () {
+		Array<Entity> entities = new Array<Entity>();
+		ImmutableArray<Entity> immutableEntities = new ImmutableArray<Entity>(entities);
+		FamilyManager manager = new FamilyManager(immutableEntities);
+
+		ImmutableArray<Entity> familyA = manager.getEntitiesFor(Family.all(ComponentA.class).get());
+		ImmutableArray<Entity> familyB = manager.getEntitiesFor(Family.all(ComponentB.class).get());
+		ImmutableArray<Entity> familyNotC = manager.getEntitiesFor(Family.exclude(ComponentC.class).get());
+
+		Entity entity = new Entity();
+		entities.add(entity);
+		manager.updateFamilyMembership(entity);
+
+		Assert.assertEquals(0, familyA.size());
+		Assert.assertEquals(1, familyNotC.size());
+		Assert.assertEquals(3, manager.getEvaluatedMatches());
+
+		entity.add(new ComponentA());
+		manager.updateFamilyMembership(entity, true);
+
+		Assert.assertEquals(1, familyA.size());
+		Assert.assertEquals(0, familyB.size());
+		Assert.assertEquals(4, manager.getEvaluatedMatches());
+		Assert.assertEquals(2, manager.getSkippedMatches());
+
+		entity.add(new ComponentC());
+		entity.add(new ComponentB());
+		manager.updateFamilyMembership(entity, true);
+
+		Assert.assertEquals(1, familyB.size());
+		Assert.assertEquals(0, familyNotC.size());
+		Assert.assertEquals(6, manager.getEvaluatedMatches());
+		Assert.assertEquals(3, manager.getSkippedMatches());
+
+		// Nothing changed since the last update
+		manager.updateFamilyMembership(entity, true);
+
+		Assert.assertEquals(6, manager.getEvaluatedMatches());
+		Assert.assertEquals(6, manager.getSkippedMatches());
+	}
+
+	@Test
+	public void familyRemovalOrder () {
+		Array<Entity> entities = new Array<Entity>();
+		ImmutableArray<Entity> immutableEntities = new ImmutableArray<Entity>(entities);
+		FamilyManager manager = new FamilyManager(immutableEntities);
+
+		Family unordered = Family.all(ComponentA.class).get();
+		Family ordered = Family.all(ComponentA.class).exclude(ComponentC.class).get();
+		ImmutableArray<Entity> unorderedEntities = manager.getEntitiesFor(unordered);
+		ImmutableArray<Entity> orderedEntities = manager.getEntitiesFor(ordered);
+		manager.setPreserveOrder(ordered, true);
+
+		Entity[] added = new Entity[5];
+		for (int i = 0; i < added.length; ++i) {
+			added[i] = new Entity();
+			added[i].add(new ComponentA());
+			entities.add(added[i]);
+			manager.updateFamilyMembership(added[i]);
+		}
+
+		added[1].remove(ComponentA.class);
+		manager.updateFamilyMembership(added[1], true);
+
+		Assert.assertEquals(4, unorderedEntities.size());
+		Assert.assertSame(added[4], unorderedEntities.get(1));
+
+		Assert.assertEquals(4, orderedEntities.size());
+		Assert.assertSame(added[0], orderedEntities.get(0));
+		Assert.assertSame(added[2], orderedEntities.get(1));
+		Assert.assertSame(added[3], orderedEntities.get(2));
+		Assert.assertSame(added[4], orderedEntities.get(3));
+
+		added[0].add(new ComponentC());
+		manager.updateFamilyMembership(added[0], true);
+		added[3].remove(ComponentA.class);
+		manager.updateFamilyMembership(added[3], true);
+
+		Assert.assertEquals(2, orderedEntities.size());
+		Assert.assertSame(added[2], orderedEntities.get(0));
+		Assert.assertSame(added[4], orderedEntities.get(1));
+		Assert.assertEquals(3, unorderedEntities.size());
+	}
 }
@@ -0,0 +1,79 @@
+package info.laht.aco.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeadlessEngineRunnerTests {
+
+    private static final double maxLag = 0.25;
+
+    @Test
+    public void stepsAreDueWhenSimulationTimeCatchesUpWithWallClockTime() {
+        HeadlessEngineRunner.Pacer pacer = new HeadlessEngineRunner.Pacer();
+        // Pacing starts at the first step, which is due right away
+        Assert.assertEquals(1000, pacer.target(2, 1000, 1, maxLag));
+
+        Assert.assertEquals(1000 + 500_000_000, pacer.target(2.5, 2000, 1, maxLag));
+        // Measured from the start, however late the previous step was
+        Assert.assertEquals(1000 + 1_000_000_000, pacer.target(3, 600_000_000, 1, maxLag));
+        // Twice as fast
+        Assert.assertEquals(1000 + 750_000_000, pacer.target(3.5, 600_000_000, 0.5, maxLag));
+    }
+
+    @Test
+    public void fallingBehindMoreThanTheMaxLagStartsPacingAnew() {
+        HeadlessEngineRunner.Pacer pacer = new HeadlessEngineRunner.Pacer();
+        pacer.target(0, 0, 1, maxLag);
+
+        // Exactly the max lag behind, so catching up
+        Assert.assertEquals(500_000_000, pacer.target(0.5, 750_000_000, 1, maxLag));
+        Assert.assertEquals(1_000_000_000, pacer.target(1, 1_000_000_000, 1, maxLag));
+
+        long now = 1_500_000_001;
+        Assert.assertEquals(now, pacer.target(1.25, now, 1, maxLag));
+        Assert.assertEquals(now + 250_000_000, pacer.target(1.5, now, 1, maxLag));
+    }
+
+    @Test
+    public void rebasingStartsPacingAnew() {
+        HeadlessEngineRunner.Pacer pacer = new HeadlessEngineRunner.Pacer();
+        pacer.target(0, 0, 1, maxLag);
+        Assert.assertEquals(250_000_000, pacer.target(0.25, 0, 1, maxLag));
+
+        // As after pausing, or changing the real-time factor or enabling it again
+        pacer.rebase();
+        long now = 5_000_000_000L;
+        Assert.assertEquals(now, pacer.target(0.5, now, 2, maxLag));
+        Assert.assertEquals(now + 1_000_000_000, pacer.target(1, now, 2, maxLag));
+
+        // Rebasing twice is the same as once
+        pacer.rebase();
+        pacer.rebase();
+        Assert.assertEquals(now, pacer.target(1.25, now, 2, maxLag));
+        Assert.assertEquals(now + 500_000_000, pacer.target(1.5, now, 2, maxLag));
+    }
+
+    @Test
+    public void realTimeFactorAndStepSizeAreValidated() {
+        HeadlessEngineRunner runner = new HeadlessEngineRunner(new Engine());
+        runner.setTargetRealTimeFactor(4);
+        runner.setStepSize(0.5);
+
+        double[] invalid = {0, -1, Double.NaN};
+        for (double value : invalid) {
+            try {
+                runner.setTargetRealTimeFactor(value);
+                Assert.fail("Accepted a real-time factor of " + value);
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                runner.setStepSize(value);
+                Assert.fail("Accepted a step size of " + value);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        Assert.assertEquals(4, runner.getTargetRealTimeFactor(), 0);
+        Assert.assertEquals(0.5, runner.getStepSize(), 0);
+    }
+
+}
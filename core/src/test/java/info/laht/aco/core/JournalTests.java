@@ -0,0 +1,261 @@
+package info.laht.aco.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class JournalTests {
+
+    private static final double deltaTime = 0.1;
+
+    private static class Position implements Component {
+        double x;
+
+        Position(double x) {
+            this.x = x;
+        }
+    }
+
+    private static class Velocity implements Component {
+        double v;
+
+        Velocity(double v) {
+            this.v = v;
+        }
+    }
+
+    private static class Marker implements Component {
+    }
+
+    private static class PositionCodec implements ComponentCodec<Position> {
+        @Override
+        public void write(@NotNull Position component, @NotNull ByteBuffer buffer) {
+            buffer.putDouble(component.x);
+        }
+
+        @NotNull
+        @Override
+        public Position read(@NotNull ByteBuffer buffer) {
+            return new Position(buffer.getDouble());
+        }
+    }
+
+    private static class VelocityCodec implements ComponentCodec<Velocity> {
+        @Override
+        public void write(@NotNull Velocity component, @NotNull ByteBuffer buffer) {
+            buffer.putDouble(component.v);
+        }
+
+        @NotNull
+        @Override
+        public Velocity read(@NotNull ByteBuffer buffer) {
+            return new Velocity(buffer.getDouble());
+        }
+    }
+
+    private static class MarkerCodec implements ComponentCodec<Marker> {
+        @Override
+        public void write(@NotNull Marker component, @NotNull ByteBuffer buffer) {
+        }
+
+        @NotNull
+        @Override
+        public Marker read(@NotNull ByteBuffer buffer) {
+            return new Marker();
+        }
+    }
+
+    // Moves entities, spawns one every third step and removes those past x = 10
+    private static class SimulationSystem extends EntitySystem {
+        private final ComponentMapper<Position> pm = ComponentMapper.getFor(Position.class);
+        private final ComponentMapper<Velocity> vm = ComponentMapper.getFor(Velocity.class);
+
+        @Override
+        protected void step(double deltaTime) {
+            Engine engine = getEngine();
+            for (Entity entity : engine.getEntitiesFor(Family.all(Position.class).get())) {
+                Position position = pm.get(entity);
+                Velocity velocity = vm.get(entity);
+                if (velocity != null) {
+                    position.x += velocity.v * deltaTime;
+                }
+                if (position.x > 10) {
+                    engine.removeEntity(entity);
+                }
+            }
+            if (engine.getStepNumber() % 3 == 0) {
+                engine.addEntity(new Entity().add(new Position(0)).add(new Velocity(20)).add(new Marker()));
+            }
+        }
+    }
+
+    private static ComponentCodecs codecs() {
+        return new ComponentCodecs()
+                .register(Position.class, new PositionCodec())
+                .register(Velocity.class, new VelocityCodec())
+                .register(Marker.class, new MarkerCodec());
+    }
+
+    private static List<Double> state(Engine engine) {
+        List<Double> state = new ArrayList<>();
+        for (Entity entity : engine.getEntities()) {
+            Position position = entity.getComponent(Position.class);
+            Velocity velocity = entity.getComponent(Velocity.class);
+            state.add((position == null ? -1000 : position.x) + (velocity == null ? 0.5 : velocity.v) * 1000);
+        }
+        Collections.sort(state);
+        return state;
+    }
+
+    private static Engine createEngine() {
+        Engine engine = new Engine();
+        engine.addSystem(new SimulationSystem());
+        engine.addEntity(new Entity().add(new Position(1)).add(new Velocity(1)));
+        return engine;
+    }
+
+    private static byte[] record(Engine engine, List<List<Double>> states) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Journal journal = new Journal(Channels.newChannel(out), codecs(), 256, 2)) {
+            journal.attach(engine);
+            Entity external = null;
+            for (int i = 0; i < 20; ++i) {
+                switch (i % 5) {
+                    case 0:
+                        external = new Entity().add(new Position(i)).add(new Marker());
+                        engine.addEntity(external);
+                        break;
+                    case 1:
+                        external.add(new Velocity(i));
+                        break;
+                    case 2:
+                        engine.setRealtimeFactor(2);
+                        external.remove(Marker.class);
+                        break;
+                    case 3:
+                        engine.setRealtimeFactor(1);
+                        external.remove(Position.class);
+                        break;
+                    default:
+                        engine.removeEntity(external);
+                        break;
+                }
+                engine.step(deltaTime);
+                states.add(state(engine));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void replayReproducesTheRecordedSteps() throws IOException {
+        List<List<Double>> states = new ArrayList<>();
+        byte[] journal = record(createEngine(), states);
+
+        Engine engine = createEngine();
+        JournalReplayer replayer = new JournalReplayer(engine, codecs(), Channels.newChannel(new ByteArrayInputStream(journal)));
+        Assert.assertTrue(replayer.replayTo(7));
+        Assert.assertEquals(7, engine.getStepNumber());
+        Assert.assertEquals(states.get(6), state(engine));
+
+        Assert.assertFalse(replayer.replayTo(100));
+        Assert.assertEquals(20, engine.getStepNumber());
+        Assert.assertEquals(states.get(19), state(engine));
+        Assert.assertEquals(1, engine.getRealtimeFactor(), 0);
+    }
+
+    @Test
+    public void batchesAreReplayedTogether() throws IOException {
+        Engine recorded = createEngine();
+        EntityBatchTests.RecordingListener recordedListener = new EntityBatchTests.RecordingListener();
+        recorded.addEntityListener(recordedListener);
+        List<Entity> batch = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Journal journal = new Journal(Channels.newChannel(out), codecs())) {
+            journal.attach(recorded);
+            for (int i = 0; i < 3; ++i) {
+                batch.add(new Entity().add(new Position(i)).add(new Velocity(i)));
+            }
+            recorded.addEntities(batch);
+            recorded.step(deltaTime);
+            recorded.removeEntities(batch.subList(0, 2));
+            recorded.step(deltaTime);
+        }
+
+        Engine engine = createEngine();
+        EntityBatchTests.RecordingListener listener = new EntityBatchTests.RecordingListener();
+        engine.addEntityListener(listener);
+        new JournalReplayer(engine, codecs(), Channels.newChannel(new ByteArrayInputStream(out.toByteArray()))).replayAll();
+
+        Assert.assertEquals(state(recorded), state(engine));
+        Assert.assertEquals(recordedListener.addedBatches, listener.addedBatches);
+        Assert.assertEquals(recordedListener.removedBatches, listener.removedBatches);
+    }
+
+    @Test
+    public void commandsRecordedBetweenStepsAreReplayed() throws IOException {
+        Engine recorded = createEngine();
+        CommandBuffer commands = recorded.getCommandBuffer();
+        List<List<Double>> states = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Journal journal = new Journal(Channels.newChannel(out), codecs())) {
+            journal.attach(recorded);
+            Entity external = null;
+            for (int i = 0; i < 8; ++i) {
+                switch (i % 4) {
+                    case 0:
+                        external = commands.createEntity(new Position(i), new Velocity(-i));
+                        commands.destroyEntity(commands.createEntity(new Position(100)));
+                        break;
+                    case 1:
+                        commands.addComponent(external, new Velocity(i));
+                        commands.addComponent(external, new Marker());
+                        break;
+                    case 2:
+                        commands.removeComponent(external, Marker.class);
+                        break;
+                    default:
+                        commands.destroyEntity(external);
+                        break;
+                }
+                recorded.step(deltaTime);
+                states.add(state(recorded));
+            }
+        }
+
+        Engine engine = createEngine();
+        JournalReplayer replayer = new JournalReplayer(engine, codecs(), Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        for (int i = 0; i < states.size(); ++i) {
+            Assert.assertTrue(replayer.replayTo(i + 1));
+            Assert.assertEquals(states.get(i), state(engine));
+        }
+        Assert.assertFalse(engine.getCommandBuffer().hasCommands());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void divergingReplaysAreDetected() throws IOException {
+        byte[] journal = record(createEngine(), new ArrayList<>());
+
+        Engine engine = new Engine();
+        engine.addEntity(new Entity().add(new Position(1)).add(new Velocity(1)));
+        new JournalReplayer(engine, codecs(), Channels.newChannel(new ByteArrayInputStream(journal))).replayAll();
+    }
+
+    @Test(expected = IOException.class)
+    public void missingCodecsAreReported() throws IOException {
+        byte[] journal = record(createEngine(), new ArrayList<>());
+
+        ComponentCodecs codecs = new ComponentCodecs().register(Position.class, new PositionCodec());
+        new JournalReplayer(createEngine(), codecs, Channels.newChannel(new ByteArrayInputStream(journal))).replayAll();
+    }
+
+}
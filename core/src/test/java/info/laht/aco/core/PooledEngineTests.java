@@ -291,4 +291,120 @@ public class PooledEngineTests {
 
 		Assert.assertNotEquals(newComponent1, newComponent2);
 	}
+
+	@Test
+	public void staleHandlesToPooledEntities () {
+		PooledEngine engine = new PooledEngine();
+
+		Entity entity = engine.createEntity();
+		engine.addEntity(entity);
+		EntityHandle handle = entity.getHandle();
+
+		Assert.assertSame(entity, engine.getEntity(handle));
+
+		engine.removeEntity(entity);
+		Entity reused = engine.createEntity();
+		engine.addEntity(reused);
+
+		Assert.assertSame(entity, reused);
+		Assert.assertEquals(handle.getId(), reused.getId());
+		Assert.assertNull(engine.getEntity(handle));
+		Assert.assertSame(reused, engine.getEntity(reused.getHandle()));
+		Assert.assertSame(reused, engine.getEntity(handle.getId()));
+	}
+
+	@Test
+	public void registeredFactoriesAndResetsAreUsed () {
+		PooledEngine engine = new PooledEngine();
+		int[] created = {0};
+		ComponentPool<PositionComponent> pool = engine.registerComponentPool(PositionComponent.class, () -> {
+			++created[0];
+			PositionComponent position = new PositionComponent();
+			position.x = 1;
+			return position;
+		}, position -> position.x = 2, 0, 4);
+
+		Assert.assertSame(pool, engine.getComponentPool(PositionComponent.class));
+		Entity entity = engine.createEntity();
+		PositionComponent position = engine.createComponent(PositionComponent.class);
+		Assert.assertEquals(1, created[0]);
+		Assert.assertEquals(1, position.x, 0);
+
+		entity.add(position);
+		entity.remove(PositionComponent.class);
+		Assert.assertEquals(2, position.x, 0);
+		Assert.assertSame(position, engine.createComponent(PositionComponent.class));
+		Assert.assertEquals(1, created[0]);
+	}
+
+	@Test
+	public void poolsAreSizedPerType () {
+		PooledEngine engine = new PooledEngine();
+		ComponentPool<PoolableComponent> pool = engine.registerComponentPool(PoolableComponent.class, PoolableComponent::new, null, 0, 2);
+		ComponentPool<ComponentA> defaultPool = engine.getComponentPool(ComponentA.class);
+		Assert.assertEquals(2, pool.getMaxSize());
+		Assert.assertEquals(100, defaultPool.getMaxSize());
+
+		PoolableComponent[] components = new PoolableComponent[3];
+		for (int i = 0; i < components.length; ++i) {
+			components[i] = engine.createComponent(PoolableComponent.class);
+			components[i].reset = false;
+		}
+		for (PoolableComponent component : components) {
+			pool.free(component);
+		}
+
+		// Without a registered reset, Poolable components reset themselves
+		Assert.assertTrue(components[2].reset);
+		Assert.assertEquals(2, pool.getFree());
+		Assert.assertEquals(1, pool.getDiscarded());
+
+		pool.fill(10);
+		Assert.assertEquals(2, pool.getFree());
+		Assert.assertEquals(0, defaultPool.getFree());
+		defaultPool.fill(3);
+		Assert.assertEquals(3, defaultPool.getFree());
+	}
+
+	@Test
+	public void initialSizesAreCappedByMaxSizes () {
+		PooledEngine engine = new PooledEngine(200, 100, 200, 100);
+		engine.addEntity(engine.createEntity().add(engine.createComponent(PositionComponent.class)));
+
+		ComponentPool<PositionComponent> pool = engine.getComponentPool(PositionComponent.class);
+		Assert.assertEquals(100, pool.getMaxSize());
+		Assert.assertEquals(100, engine.registerComponentPool(ComponentA.class, ComponentA::new).getMaxSize());
+	}
+
+	@Test
+	public void poolStatisticsCountHitsAndMisses () {
+		PooledEngine engine = new PooledEngine();
+		EntityTemplate template = EntityTemplate.of(PositionComponent.class);
+
+		engine.instantiate(template, 5);
+		ComponentPool<PositionComponent> pool = engine.getComponentPool(PositionComponent.class);
+		Assert.assertEquals(0, pool.getHits());
+		Assert.assertEquals(5, pool.getMisses());
+
+		engine.removeAllEntities();
+		Assert.assertEquals(5, pool.getFree());
+		engine.instantiate(template, 8);
+		Assert.assertEquals(5, pool.getHits());
+		Assert.assertEquals(8, pool.getMisses());
+		Assert.assertEquals(0, pool.getFree());
+
+		Assert.assertTrue(engine.getComponentPools().contains(pool, true));
+		pool.resetStatistics();
+		Assert.assertEquals(0, pool.getHits() + pool.getMisses() + pool.getDiscarded());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void componentsWithoutNoArgConstructorsNeedAFactory () {
+		new PooledEngine().createComponent(ComponentWithArgument.class);
+	}
+
+	public static class ComponentWithArgument implements Component {
+		public ComponentWithArgument(int argument) {
+		}
+	}
 }
@@ -0,0 +1,185 @@
+package info.laht.aco.core;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class SystemSchedulerTests {
+
+    private static final double deltaTime = 0.16;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+    private static class ComponentA implements Component {
+    }
+
+    private static class ComponentB implements Component {
+    }
+
+    private static class ComponentC implements Component {
+    }
+
+    private class AccessSystem extends EntitySystem {
+
+        private final String name;
+        private final SystemAccess access;
+        private final CyclicBarrier barrier;
+
+        AccessSystem(String name, int priority, SystemAccess access, CyclicBarrier barrier) {
+            super(priority);
+            this.name = name;
+            this.access = access;
+            this.barrier = barrier;
+        }
+
+        @Override
+        public SystemAccess getAccess() {
+            return access;
+        }
+
+        @Override
+        protected void step(double deltaTime) {
+            if (barrier != null) {
+                try {
+                    // Only passes if all parties run at the same time
+                    barrier.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            log.add(name);
+        }
+    }
+
+    // Distinct classes, as the engine holds one system per class
+    private class SystemA extends AccessSystem {
+        SystemA(int priority, SystemAccess access, CyclicBarrier barrier) {
+            super("A", priority, access, barrier);
+        }
+    }
+
+    private class SystemB extends AccessSystem {
+        SystemB(int priority, SystemAccess access, CyclicBarrier barrier) {
+            super("B", priority, access, barrier);
+        }
+    }
+
+    private class SystemC extends AccessSystem {
+        SystemC(int priority, SystemAccess access, CyclicBarrier barrier) {
+            super("C", priority, access, barrier);
+        }
+    }
+
+    @After
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void accessConflicts() {
+        SystemAccess readA = SystemAccess.reads(ComponentA.class).get();
+        SystemAccess writeA = SystemAccess.writes(ComponentA.class).get();
+        SystemAccess readAWriteB = SystemAccess.reads(ComponentA.class).writes(ComponentB.class).get();
+
+        Assert.assertFalse(readA.conflictsWith(readA));
+        Assert.assertTrue(readA.conflictsWith(writeA));
+        Assert.assertTrue(writeA.conflictsWith(readA));
+        Assert.assertTrue(writeA.conflictsWith(writeA));
+        Assert.assertFalse(readA.conflictsWith(readAWriteB));
+        Assert.assertTrue(readAWriteB.readsComponent(ComponentB.class));
+        Assert.assertTrue(readAWriteB.writesComponent(ComponentB.class));
+        Assert.assertFalse(readAWriteB.writesComponent(ComponentA.class));
+    }
+
+    @Test
+    public void nonConflictingSystemsRunConcurrently() {
+        Engine engine = new Engine();
+        engine.setSystemPool(pool);
+
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        engine.addSystem(new SystemA(0, SystemAccess.writes(ComponentA.class).get(), barrier));
+        engine.addSystem(new SystemB(1, SystemAccess.writes(ComponentB.class).get(), barrier));
+        engine.addSystem(new SystemC(2, SystemAccess.reads(ComponentC.class).get(), barrier));
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(3, log.size());
+    }
+
+    @Test
+    public void conflictingSystemsRunInPriorityOrder() {
+        Engine engine = new Engine();
+        engine.setSystemPool(pool);
+
+        engine.addSystem(new SystemC(2, SystemAccess.reads(ComponentA.class).get(), null));
+        engine.addSystem(new SystemB(1, SystemAccess.writes(ComponentA.class).get(), null));
+        engine.addSystem(new SystemA(0, SystemAccess.reads(ComponentA.class).get(), null));
+
+        for (int i = 0; i < 20; ++i) {
+            log.clear();
+            engine.step(deltaTime);
+            Assert.assertEquals("A", log.get(0));
+            Assert.assertEquals("B", log.get(1));
+            Assert.assertEquals("C", log.get(2));
+        }
+    }
+
+    @Test
+    public void exclusiveSystemsSeeEarlierChanges() {
+        final Engine engine = new Engine();
+        engine.setSystemPool(pool);
+        final Family family = Family.all(ComponentA.class).get();
+
+        engine.addSystem(new SystemA(0, SystemAccess.writes(ComponentA.class).get(), null) {
+            @Override
+            protected void step(double deltaTime) {
+                engine.addEntity(new Entity().add(new ComponentA()));
+            }
+        });
+        engine.addSystem(new SystemB(1, SystemAccess.writes(ComponentB.class).get(), null) {
+            @Override
+            protected void step(double deltaTime) {
+                engine.addEntity(new Entity().add(new ComponentA()));
+            }
+        });
+        engine.addSystem(new EntitySystem(2) {
+            @Override
+            protected void step(double deltaTime) {
+                log.add(String.valueOf(engine.getEntitiesFor(family).size()));
+            }
+        });
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(Collections.singletonList("2"), log);
+    }
+
+    @Test
+    public void exceptionsArePropagated() {
+        Engine engine = new Engine();
+        engine.setSystemPool(pool);
+
+        engine.addSystem(new SystemA(0, SystemAccess.reads(ComponentA.class).get(), null) {
+            @Override
+            protected void step(double deltaTime) {
+                throw new IllegalStateException();
+            }
+        });
+        engine.addSystem(new SystemB(0, SystemAccess.reads(ComponentB.class).get(), null));
+
+        try {
+            engine.step(deltaTime);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+}
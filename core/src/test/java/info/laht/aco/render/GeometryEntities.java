@@ -0,0 +1,66 @@
+package info.laht.aco.render;
+
+import com.badlogic.gdx.utils.Array;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import info.laht.aco.render.geometry.Aabb;
+import info.laht.aco.render.geometry.BoxShape;
+import info.laht.aco.render.geometry.GeometryComponent;
+import info.laht.aco.render.geometry.SphereShape;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Creates entities having a {@link TransformComponent} and a {@link GeometryComponent}, and computes what the systems
+ * querying their bounds are expected to report by brute force.
+ */
+final class GeometryEntities {
+
+    private GeometryEntities() {
+    }
+
+    /**
+     * Adds an entity holding a unit box or a sphere of unit diameter, centered at the specified position.
+     */
+    static Entity createEntity(Engine engine, double x, double y, double z, boolean box) {
+        TransformComponent transform = new TransformComponent();
+        transform.setLocalTranslation(x, y, z);
+        Entity entity = new Entity()
+                .add(transform)
+                .add(new GeometryComponent(box ? new BoxShape(1f) : new SphereShape(0.5f)));
+        engine.addEntity(entity);
+        return entity;
+    }
+
+    static Aabb bounds(Entity entity) {
+        TransformComponent transform = entity.getComponent(TransformComponent.class);
+        GeometryComponent geometry = entity.getComponent(GeometryComponent.class);
+        return geometry.getShape().computeAabb(transform.getWorld(), new Aabb());
+    }
+
+    /**
+     * @return A key identifying the pair regardless of the order of the entities
+     */
+    static String pairKey(Entity a, Entity b) {
+        int i = Math.min(a.getId(), b.getId());
+        int j = Math.max(a.getId(), b.getId());
+        return i + ":" + j;
+    }
+
+    /**
+     * @return The keys of all the pairs of entities whose bounds overlap
+     */
+    static Set<String> overlappingPairs(Array<Entity> entities) {
+        Set<String> pairs = new HashSet<>();
+        for (int i = 0; i < entities.size; ++i) {
+            for (int j = i + 1; j < entities.size; ++j) {
+                if (bounds(entities.get(i)).overlaps(bounds(entities.get(j)))) {
+                    pairs.add(pairKey(entities.get(i), entities.get(j)));
+                }
+            }
+        }
+        return pairs;
+    }
+
+}
@@ -0,0 +1,190 @@
+package info.laht.aco.render;
+
+import com.badlogic.gdx.utils.Array;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import info.laht.aco.render.geometry.Aabb;
+import info.laht.aco.render.geometry.BoxShape;
+import info.laht.aco.render.geometry.GeometryComponent;
+import info.laht.aco.render.geometry.Shape;
+import info.laht.aco.render.geometry.SphereShape;
+import org.jetbrains.annotations.NotNull;
+import org.joml.Matrix4dc;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class SpatialIndexSystemTest {
+
+    private static final double deltaTime = 0.16;
+
+    private static class CountingShape implements Shape {
+        private final Shape shape = new BoxShape(1f);
+        int computed;
+
+        @NotNull
+        @Override
+        public Aabb computeAabb(@NotNull Matrix4dc world, @NotNull Aabb dest) {
+            ++computed;
+            return shape.computeAabb(world, dest);
+        }
+    }
+
+    @Test
+    public void shapesComputeWorldBounds() {
+        TransformComponent transform = new TransformComponent();
+        transform.setLocalTranslation(1, 2, 3);
+        transform.localRotateZ(Math.PI / 4);
+
+        Aabb box = new BoxShape(2f).computeAabb(transform.getWorld(), new Aabb());
+        Assert.assertEquals(1 - Math.sqrt(2), box.getMinX(), 1e-9);
+        Assert.assertEquals(1 + Math.sqrt(2), box.getMaxX(), 1e-9);
+        Assert.assertEquals(2, box.getMinZ(), 1e-9);
+        Assert.assertEquals(4, box.getMaxZ(), 1e-9);
+
+        Aabb sphere = new SphereShape(1f).computeAabb(transform.getWorld(), new Aabb());
+        Assert.assertEquals(0, sphere.getMinX(), 1e-9);
+        Assert.assertEquals(3, sphere.getMaxY(), 1e-9);
+    }
+
+    @Test
+    public void queriesFollowMovingEntities() {
+        Engine engine = new Engine();
+        SpatialIndexSystem index = new SpatialIndexSystem(1.0);
+        engine.addSystem(index);
+
+        Entity a = GeometryEntities.createEntity(engine, 0, 0, 0, true);
+        Entity b = GeometryEntities.createEntity(engine, 10, 0, 0, false);
+        Assert.assertEquals(2, index.getSize());
+
+        Array<Entity> result = new Array<>();
+        Aabb region = new Aabb().set(-1, -1, -1, 1, 1, 1);
+        index.query(region, result);
+        Assert.assertEquals(1, result.size);
+        Assert.assertSame(a, result.first());
+
+        b.getComponent(TransformComponent.class).setLocalTranslation(0.5, 0, 0);
+        engine.step(deltaTime);
+        index.query(region, result);
+        Assert.assertEquals(2, result.size);
+
+        index.nearest(10, 0, 0, 1, result);
+        Assert.assertSame(b, result.first());
+
+        engine.removeEntity(b);
+        Assert.assertEquals(1, index.getSize());
+        index.query(region, result);
+        Assert.assertEquals(1, result.size);
+        Assert.assertSame(a, result.first());
+    }
+
+    @Test
+    public void onlyChangedBoundsAreRefreshed() {
+        Engine engine = new Engine();
+        SpatialIndexSystem index = new SpatialIndexSystem(1.0);
+        engine.addSystem(index);
+        engine.addSystem(new TransformStore());
+
+        TransformComponent parent = new TransformComponent();
+        CountingShape parentShape = new CountingShape();
+        engine.addEntity(new Entity().add(parent).add(new GeometryComponent(parentShape)));
+        TransformComponent child = new TransformComponent();
+        child.setParent(parent);
+        child.setLocalTranslation(1, 0, 0);
+        CountingShape childShape = new CountingShape();
+        Entity childEntity = new Entity().add(child).add(new GeometryComponent(childShape));
+        engine.addEntity(childEntity);
+        CountingShape otherShape = new CountingShape();
+        Entity other = new Entity().add(new TransformComponent()).add(new GeometryComponent(otherShape));
+        engine.addEntity(other);
+        engine.step(deltaTime);
+
+        parentShape.computed = 0;
+        childShape.computed = 0;
+        otherShape.computed = 0;
+        engine.step(deltaTime);
+        Assert.assertEquals(0, parentShape.computed + childShape.computed + otherShape.computed);
+
+        // Moving the parent moves the child
+        parent.setLocalTranslation(10, 0, 0);
+        engine.step(deltaTime);
+        Assert.assertEquals(1, parentShape.computed);
+        Assert.assertEquals(1, childShape.computed);
+        Assert.assertEquals(0, otherShape.computed);
+        Assert.assertEquals(11, index.getBounds(childEntity, new Aabb()).getCenterX(), 1e-12);
+
+        // Replaced shapes and transforms are picked up as well
+        CountingShape replacement = new CountingShape();
+        other.add(new GeometryComponent(replacement));
+        engine.step(deltaTime);
+        Assert.assertEquals(1, replacement.computed);
+        TransformComponent transform = new TransformComponent();
+        transform.setLocalTranslation(-5, 0, 0);
+        other.add(transform);
+        engine.step(deltaTime);
+        Assert.assertEquals(2, replacement.computed);
+        Assert.assertEquals(-5, index.getBounds(other, new Aabb()).getCenterX(), 1e-12);
+        Assert.assertEquals(1, parentShape.computed);
+        Assert.assertEquals(1, childShape.computed);
+    }
+
+    @Test
+    public void queriesMatchBruteForce() {
+        Engine engine = new Engine();
+        SpatialIndexSystem index = new SpatialIndexSystem(2.0);
+        engine.addSystem(index);
+
+        Random random = new Random(42);
+        Array<Entity> entities = new Array<>();
+        for (int i = 0; i < 300; ++i) {
+            entities.add(GeometryEntities.createEntity(engine,
+                    random.nextDouble() * 40 - 20, random.nextDouble() * 40 - 20, random.nextDouble() * 10, random.nextBoolean()));
+        }
+
+        for (int s = 0; s < 3; ++s) {
+            for (Entity entity : entities) {
+                entity.getComponent(TransformComponent.class).localTranslate(random.nextDouble() - 0.5, random.nextDouble() - 0.5, 0);
+            }
+            engine.step(deltaTime);
+
+            Set<String> expectedPairs = GeometryEntities.overlappingPairs(entities);
+            Set<String> pairs = new HashSet<>();
+            index.forEachOverlappingPair((a, b) -> Assert.assertTrue(pairs.add(GeometryEntities.pairKey(a, b))));
+            Assert.assertEquals(expectedPairs, pairs);
+
+            Aabb region = new Aabb().set(-5, -5, 0, 5, 5, 3);
+            Array<Entity> result = new Array<>();
+            index.query(region, result);
+            int expected = 0;
+            for (Entity entity : entities) {
+                if (GeometryEntities.bounds(entity).overlaps(region)) ++expected;
+            }
+            Assert.assertEquals(expected, result.size);
+
+            index.nearest(1, 2, 3, 5, result);
+            Assert.assertEquals(5, result.size);
+            double last = 0;
+            int closer = 0;
+            for (Entity entity : result) {
+                last = Math.max(last, distanceSquared(entity, 1, 2, 3));
+            }
+            for (Entity entity : entities) {
+                if (distanceSquared(entity, 1, 2, 3) < last) ++closer;
+            }
+            Assert.assertEquals(4, closer);
+        }
+    }
+
+    private static double distanceSquared(Entity entity, double x, double y, double z) {
+        Aabb aabb = GeometryEntities.bounds(entity);
+        double dx = aabb.getCenterX() - x;
+        double dy = aabb.getCenterY() - y;
+        double dz = aabb.getCenterZ() - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+
+}
@@ -0,0 +1,84 @@
+package info.laht.aco.render;
+
+import com.badlogic.gdx.utils.Array;
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class SweepAndPruneSystemTest {
+
+    private static final double deltaTime = 0.16;
+
+    @Test
+    public void pairsFollowMovingEntities() {
+        Engine engine = new Engine();
+        SweepAndPruneSystem broadPhase = new SweepAndPruneSystem();
+        engine.addSystem(broadPhase);
+
+        Entity a = GeometryEntities.createEntity(engine, 0, 0, 0, true);
+        Entity b = GeometryEntities.createEntity(engine, 0.5, 0, 0, false);
+        Entity c = GeometryEntities.createEntity(engine, 5, 0, 0, true);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(1, broadPhase.getPairCount());
+        Assert.assertEquals(GeometryEntities.pairKey(a, b), GeometryEntities.pairKey(broadPhase.getFirst(0), broadPhase.getSecond(0)));
+
+        c.getComponent(TransformComponent.class).setLocalTranslation(-0.5, 0, 0);
+        b.getComponent(TransformComponent.class).setLocalTranslation(0.5, 0, 5);
+        engine.step(deltaTime);
+        Assert.assertEquals(1, broadPhase.getPairCount());
+        Assert.assertEquals(GeometryEntities.pairKey(a, c), GeometryEntities.pairKey(broadPhase.getFirst(0), broadPhase.getSecond(0)));
+
+        engine.removeEntity(c);
+        Assert.assertEquals(0, broadPhase.getPairCount());
+        engine.step(deltaTime);
+        Assert.assertEquals(0, broadPhase.getPairCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void pairIndexIsChecked() {
+        Engine engine = new Engine();
+        SweepAndPruneSystem broadPhase = new SweepAndPruneSystem();
+        engine.addSystem(broadPhase);
+        engine.step(deltaTime);
+        broadPhase.getFirst(0);
+    }
+
+    @Test
+    public void pairsMatchBruteForce() {
+        Engine engine = new Engine();
+        SweepAndPruneSystem broadPhase = new SweepAndPruneSystem(1);
+        engine.addSystem(broadPhase);
+
+        Random random = new Random(7);
+        Array<Entity> entities = new Array<>();
+        for (int i = 0; i < 300; ++i) {
+            entities.add(GeometryEntities.createEntity(engine,
+                    random.nextDouble() * 40 - 20, random.nextDouble() * 40 - 20, random.nextDouble() * 10, random.nextBoolean()));
+        }
+
+        for (int s = 0; s < 5; ++s) {
+            for (Entity entity : entities) {
+                entity.getComponent(TransformComponent.class).localTranslate(random.nextDouble() - 0.5, random.nextDouble() - 0.5, 0);
+            }
+            if (s == 2) {
+                engine.removeEntity(entities.pop());
+                entities.add(GeometryEntities.createEntity(engine, 0, 0, 0, true));
+            }
+            engine.step(deltaTime);
+
+            Set<String> expected = GeometryEntities.overlappingPairs(entities);
+            Set<String> pairs = new HashSet<>();
+            for (int i = 0; i < broadPhase.getPairCount(); ++i) {
+                Assert.assertTrue(pairs.add(GeometryEntities.pairKey(broadPhase.getFirst(i), broadPhase.getSecond(i))));
+            }
+            Assert.assertEquals(expected, pairs);
+        }
+    }
+
+}
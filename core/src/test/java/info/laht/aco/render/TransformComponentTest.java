@@ -0,0 +1,104 @@
+package info.laht.aco.render;
+
+import org.joml.Matrix4d;
+import org.joml.Quaterniond;
+import org.joml.Vector3d;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransformComponentTest {
+
+    private static final double EPS = 1e-9;
+
+    private static void assertVector(Vector3d v, double x, double y, double z) {
+        Assert.assertEquals(x, v.x, EPS);
+        Assert.assertEquals(y, v.y, EPS);
+        Assert.assertEquals(z, v.z, EPS);
+    }
+
+    @Test
+    public void inPlaceOperationsMatchMatrixMultiplication() {
+        TransformComponent transform = new TransformComponent();
+        transform.localRotateZ(Math.PI / 2);
+        transform.localTranslate(1, 0, 0);
+
+        Matrix4d expected = new Matrix4d().rotate(Math.PI / 2, 0, 0, 1).mul(new Matrix4d().translation(1, 0, 0));
+        Assert.assertTrue(expected.equals(transform.getLocal(), EPS));
+
+        Vector3d translation = new Vector3d();
+        transform.getWorldTranslation(translation);
+        assertVector(translation, 0, 1, 0);
+    }
+
+    @Test
+    public void directionsFollowTheWorldRotation() {
+        TransformComponent parent = new TransformComponent();
+        TransformComponent child = new TransformComponent();
+        child.setParent(parent);
+        parent.localRotateZ(Math.PI / 2);
+
+        Vector3d store = new Vector3d();
+        assertVector(child.forward(store), 0, 1, 0);
+        assertVector(child.left(store), -1, 0, 0);
+        assertVector(child.up(store), 0, 0, 1);
+    }
+
+    @Test
+    public void worldToLocalUsesTheParentFrame() {
+        TransformComponent root = new TransformComponent();
+        Vector3d point = new Vector3d(1, 2, 3);
+        // Without a parent, world space is the space of the local matrix
+        assertVector(root.worldToLocal(point), 1, 2, 3);
+
+        TransformComponent child = new TransformComponent();
+        child.setParent(root);
+        root.setLocalTranslation(1, 1, 1);
+        assertVector(child.worldToLocal(new Vector3d(1, 2, 3), new Vector3d()), 0, 1, 2);
+
+        root.setLocalTranslation(2, 2, 2);
+        assertVector(child.worldToLocal(new Vector3d(1, 2, 3), new Vector3d()), -1, 0, 1);
+    }
+
+    @Test
+    public void setWorldAccountsForTheParent() {
+        TransformComponent root = new TransformComponent();
+        TransformComponent child = new TransformComponent();
+        child.setParent(root);
+        root.setLocalTranslation(1, 0, 0);
+
+        child.setWorld(new Matrix4d().translation(3, 0, 0));
+
+        Vector3d translation = new Vector3d();
+        assertVector(child.getLocalTranslation(translation), 2, 0, 0);
+        child.getWorldTranslation(translation);
+        assertVector(translation, 3, 0, 0);
+    }
+
+    @Test
+    public void getWorldQuaternionOverwritesTheStore() {
+        TransformComponent transform = new TransformComponent();
+        transform.localRotateZ(Math.PI / 2);
+
+        Quaterniond store = new Quaterniond();
+        transform.getWorldQuaternion(store);
+        // Reusing the store must not compound the rotation
+        transform.getWorldQuaternion(store);
+
+        Vector3d v = store.transform(new Vector3d(1, 0, 0));
+        assertVector(v, 0, 1, 0);
+    }
+
+    @Test
+    public void lookAtWorksWithoutParent() {
+        TransformComponent transform = new TransformComponent();
+        transform.setLocalTranslation(1, 0, 0);
+        transform.lookAt(new Vector3d(1, 5, 0));
+
+        Vector3d translation = new Vector3d();
+        transform.getWorldTranslation(translation);
+        assertVector(translation, 1, 0, 0);
+        // translationRotateTowards aligns the local z axis with the direction
+        assertVector(transform.getWorld().transformDirection(new Vector3d(0, 0, 1)), 0, 1, 0);
+    }
+
+}
@@ -0,0 +1,193 @@
+package info.laht.aco.render;
+
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import org.joml.Matrix4d;
+import org.joml.Vector3d;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransformStoreTest {
+
+    private static final double deltaTime = 0.16;
+
+    private static void assertTranslation(Vector3d translation, double x, double y, double z) {
+        Assert.assertEquals(x, translation.x, 1e-12);
+        Assert.assertEquals(y, translation.y, 1e-12);
+        Assert.assertEquals(z, translation.z, 1e-12);
+    }
+
+    private static Entity createEntity(Engine engine, TransformComponent transform) {
+        Entity entity = new Entity().add(transform);
+        engine.addEntity(entity);
+        return entity;
+    }
+
+    @Test
+    public void transformsAreViewsOfTheirSlots() {
+        Engine engine = new Engine();
+        TransformStore store = new TransformStore(2);
+        engine.addSystem(store);
+
+        TransformComponent root = new TransformComponent();
+        root.setLocalTranslation(1, 0, 0);
+        Entity rootEntity = createEntity(engine, root);
+        TransformComponent child = new TransformComponent();
+        child.setParent(root);
+        child.setLocalTranslation(0, 1, 0);
+        Entity childEntity = createEntity(engine, child);
+        // Grows the store
+        createEntity(engine, new TransformComponent());
+        Assert.assertTrue(store.getCapacity() >= 3);
+
+        Assert.assertSame(store, root.getTransformStore());
+        Assert.assertSame(child, store.getTransform(childEntity.getId()));
+
+        Vector3d translation = new Vector3d();
+        child.getWorldTranslation(translation);
+        assertTranslation(translation, 1, 1, 0);
+
+        // Writes to the buffer are seen by the transform
+        store.setLocalTranslation(rootEntity.getId(), 5, 0, 0);
+        Assert.assertTrue(child.getWorldNeedsUpdate());
+        engine.step(deltaTime);
+        Assert.assertFalse(child.getWorldNeedsUpdate());
+        assertTranslation(store.getWorldTranslation(childEntity.getId(), translation), 5, 1, 0);
+        child.getWorldTranslation(translation);
+        assertTranslation(translation, 5, 1, 0);
+        root.getLocalTranslation(translation);
+        assertTranslation(translation, 5, 0, 0);
+
+        // Writes to the transform are seen by the buffer
+        child.localTranslate(0, 0, 2);
+        engine.step(deltaTime);
+        assertTranslation(store.getWorldTranslation(childEntity.getId(), translation), 5, 1, 2);
+    }
+
+    @Test
+    public void removedTransformsKeepTheirState() {
+        Engine engine = new Engine();
+        TransformStore store = new TransformStore();
+        engine.addSystem(store);
+
+        TransformComponent transform = new TransformComponent();
+        Entity entity = createEntity(engine, transform);
+        int slot = entity.getId();
+        store.setLocalTranslation(slot, 1, 2, 3);
+        engine.step(deltaTime);
+
+        engine.removeEntity(entity);
+        Assert.assertNull(transform.getTransformStore());
+        Assert.assertNull(store.getTransform(slot));
+
+        Vector3d translation = new Vector3d();
+        transform.getWorldTranslation(translation);
+        assertTranslation(translation, 1, 2, 3);
+        transform.setLocalTranslation(0, 0, 0);
+        assertTranslation(store.getWorld(slot, new Matrix4d()).getTranslation(translation), 1, 2, 3);
+    }
+
+    @Test
+    public void replacedTransformsAreReattached() {
+        Engine engine = new Engine();
+        TransformStore store = new TransformStore();
+        engine.addSystem(store);
+
+        TransformComponent transform = new TransformComponent();
+        transform.setLocalTranslation(1, 0, 0);
+        Entity entity = createEntity(engine, transform);
+        int slot = entity.getId();
+        engine.step(deltaTime);
+
+        TransformComponent replacement = new TransformComponent();
+        replacement.setLocalTranslation(2, 0, 0);
+        entity.add(replacement);
+        Assert.assertNull(transform.getTransformStore());
+        Assert.assertSame(store, replacement.getTransformStore());
+        Assert.assertSame(replacement, store.getTransform(slot));
+        engine.step(deltaTime);
+
+        Vector3d translation = new Vector3d();
+        assertTranslation(store.getWorldTranslation(slot, translation), 2, 0, 0);
+        transform.getWorldTranslation(translation);
+        assertTranslation(translation, 1, 0, 0);
+
+        // Replaced through the command buffer, when it is played back
+        TransformComponent recorded = new TransformComponent();
+        recorded.setLocalTranslation(3, 0, 0);
+        engine.getCommandBuffer().addComponent(entity, recorded);
+        engine.step(deltaTime);
+        Assert.assertNull(replacement.getTransformStore());
+        Assert.assertSame(recorded, store.getTransform(slot));
+        assertTranslation(store.getWorldTranslation(slot, translation), 3, 0, 0);
+
+        // No longer notified once removed
+        engine.removeEntity(entity);
+        entity.add(new TransformComponent());
+        Assert.assertNull(store.getTransform(slot));
+    }
+
+    @Test
+    public void onlyOutOfDateTransformsAreRecomputed() {
+        Engine engine = new Engine();
+        TransformStore store = new TransformStore();
+        engine.addSystem(store);
+
+        TransformComponent root = new TransformComponent();
+        int rootSlot = createEntity(engine, root).getId();
+        TransformComponent child = new TransformComponent();
+        child.setParent(root);
+        int childSlot = createEntity(engine, child).getId();
+        TransformComponent other = new TransformComponent();
+        int otherSlot = createEntity(engine, other).getId();
+        engine.step(deltaTime);
+
+        // Not flagged, so left out until forced
+        store.getLocalBuffer().put(otherSlot * 16 + 12, 3);
+        root.setLocalTranslation(1, 0, 0);
+        Assert.assertFalse(other.getWorldNeedsUpdate());
+        engine.step(deltaTime);
+
+        Vector3d translation = new Vector3d();
+        assertTranslation(store.getWorldTranslation(childSlot, translation), 1, 0, 0);
+        assertTranslation(store.getWorldTranslation(otherSlot, translation), 0, 0, 0);
+        store.updateWorld(true);
+        assertTranslation(store.getWorldTranslation(otherSlot, translation), 3, 0, 0);
+        assertTranslation(store.getWorldTranslation(rootSlot, translation), 1, 0, 0);
+
+        store.setLocal(rootSlot, new Matrix4d().translation(2, 0, 0));
+        Assert.assertTrue(child.getWorldNeedsUpdate());
+        store.updateWorld();
+        assertTranslation(store.getWorldTranslation(childSlot, translation), 2, 0, 0);
+    }
+
+    @Test
+    public void storedTransformsReadAndWriteTheirSlots() {
+        Engine engine = new Engine();
+        TransformStore store = new TransformStore();
+        engine.addSystem(store);
+
+        TransformComponent transform = new TransformComponent();
+        transform.localRotateZ(Math.PI / 2);
+        int slot = createEntity(engine, transform).getId();
+        engine.step(deltaTime);
+
+        transform.setLocalTranslation(1, 2, 3);
+        Matrix4d local = store.getLocal(slot, new Matrix4d());
+        Vector3d translation = new Vector3d();
+        assertTranslation(local.getTranslation(translation), 1, 2, 3);
+        Assert.assertEquals(0, local.m00(), 1e-12);
+        Assert.assertTrue(transform.getWorldNeedsUpdate());
+
+        engine.step(deltaTime);
+        transform.getWorldTranslation(translation);
+        assertTranslation(translation, 1, 2, 3);
+
+        // The world matrix read is the one recomputed by the store
+        store.setLocalTranslation(slot, 4, 5, 6);
+        engine.step(deltaTime);
+        assertTranslation(transform.getWorld().getTranslation(translation), 4, 5, 6);
+        assertTranslation(transform.getWorld().getTranslation(translation), 4, 5, 6);
+    }
+
+}
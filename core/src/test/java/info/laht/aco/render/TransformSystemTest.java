@@ -0,0 +1,105 @@
+package info.laht.aco.render;
+
+import info.laht.aco.core.Engine;
+import info.laht.aco.core.Entity;
+import org.joml.Vector3d;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TransformSystemTest {
+
+    private static final double deltaTime = 0.16;
+
+    private static Entity createEntity(Engine engine, TransformComponent transform) {
+        Entity entity = new Entity().add(transform);
+        engine.addEntity(entity);
+        return entity;
+    }
+
+    private static void assertTranslation(Vector3d translation, double x, double y, double z) {
+        Assert.assertEquals(x, translation.x, 1e-12);
+        Assert.assertEquals(y, translation.y, 1e-12);
+        Assert.assertEquals(z, translation.z, 1e-12);
+    }
+
+    @Test
+    public void setParentRegistersChild() {
+        TransformComponent parent = new TransformComponent();
+        TransformComponent child = new TransformComponent();
+        child.setParent(parent);
+
+        Assert.assertSame(parent, child.getParent());
+        Assert.assertTrue(parent.getChildren().contains(child));
+
+        child.detatchFromParent();
+        Assert.assertFalse(parent.getChildren().contains(child));
+    }
+
+    @Test
+    public void worldMatricesAreUpdatedOncePerStep() {
+        Engine engine = new Engine();
+        engine.addSystem(new TransformSystem());
+
+        TransformComponent root = new TransformComponent();
+        TransformComponent middle = new TransformComponent();
+        TransformComponent leaf = new TransformComponent();
+        root.addChild(middle);
+        middle.addChild(leaf);
+
+        // Children first, so the system has to walk up to the topmost dirty transform
+        createEntity(engine, leaf);
+        createEntity(engine, middle);
+        createEntity(engine, root);
+
+        root.setLocalTranslation(1, 0, 0);
+        middle.setLocalTranslation(0, 2, 0);
+        leaf.setLocalTranslation(0, 0, 3);
+        Assert.assertTrue(root.getWorldNeedsUpdate());
+        Assert.assertTrue(leaf.getWorldNeedsUpdate());
+
+        engine.step(deltaTime);
+
+        Assert.assertFalse(root.getWorldNeedsUpdate());
+        Assert.assertFalse(middle.getWorldNeedsUpdate());
+        Assert.assertFalse(leaf.getWorldNeedsUpdate());
+        Vector3d translation = new Vector3d();
+        leaf.getWorldTranslation(translation);
+        assertTranslation(translation, 1, 2, 3);
+
+        // Moving a transform only invalidates its subtree
+        middle.setLocalTranslation(0, 5, 0);
+        Assert.assertFalse(root.getWorldNeedsUpdate());
+        Assert.assertTrue(middle.getWorldNeedsUpdate());
+        Assert.assertTrue(leaf.getWorldNeedsUpdate());
+
+        engine.step(deltaTime);
+
+        Assert.assertFalse(leaf.getWorldNeedsUpdate());
+        leaf.getWorldTranslation(translation);
+        assertTranslation(translation, 1, 5, 3);
+    }
+
+    @Test
+    public void getWorldUpdatesLazily() {
+        TransformComponent root = new TransformComponent();
+        TransformComponent child = new TransformComponent();
+        root.addChild(child);
+
+        root.setLocalTranslation(1, 0, 0);
+        child.setLocalTranslation(1, 0, 0);
+
+        Vector3d translation = new Vector3d();
+        child.getWorldTranslation(translation);
+        assertTranslation(translation, 2, 0, 0);
+        Assert.assertFalse(root.getWorldNeedsUpdate());
+        Assert.assertFalse(child.getWorldNeedsUpdate());
+
+        child.setAutoUpdate(false);
+        root.setLocalTranslation(2, 0, 0);
+        child.getWorldTranslation(translation);
+        assertTranslation(translation, 2, 0, 0);
+        child.getWorld(true).getTranslation(translation);
+        assertTranslation(translation, 3, 0, 0);
+    }
+
+}
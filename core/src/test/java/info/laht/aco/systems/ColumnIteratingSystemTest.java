@@ -0,0 +1,90 @@
+package info.laht.aco.systems;
+
+import info.laht.aco.core.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnIteratingSystemTest {
+
+    private static final double deltaTime = 0.5;
+
+    private static class PositionComponent extends ColumnComponent {
+        static final DoubleColumn X = new DoubleColumn(PositionComponent.class);
+    }
+
+    private static class VelocityComponent extends ColumnComponent {
+        static final DoubleColumn X = new DoubleColumn(VelocityComponent.class);
+    }
+
+    private static class ComponentA implements Component {
+    }
+
+    private static class MovementSystem extends ColumnIteratingSystem {
+
+        int numChunks;
+
+        MovementSystem() {
+            super(Family.all(PositionComponent.class, VelocityComponent.class).get());
+        }
+
+        @Override
+        protected void processChunk(@NotNull ArchetypeChunk chunk, int size, double deltaTime) {
+            ++numChunks;
+            double[] x = PositionComponent.X.getArray(chunk);
+            double[] vx = VelocityComponent.X.getArray(chunk);
+            for (int i = 0; i < size; ++i) {
+                x[i] += vx[i] * deltaTime;
+            }
+        }
+    }
+
+    @Test
+    public void processesAllMatchingChunks() {
+        Engine engine = new Engine();
+        MovementSystem system = new MovementSystem();
+        engine.addSystem(system);
+
+        int numEntities = ArchetypeChunk.CAPACITY + 10;
+        Entity[] entities = new Entity[numEntities];
+        for (int i = 0; i < numEntities; ++i) {
+            Entity entity = new Entity().add(new PositionComponent()).add(new VelocityComponent());
+            if (i % 2 == 0) {
+                entity.add(new ComponentA());
+            }
+            VelocityComponent.X.set(entity, i);
+            engine.addEntity(entity);
+            entities[i] = entity;
+        }
+
+        Entity still = new Entity().add(new PositionComponent());
+        PositionComponent.X.set(still, 1.0);
+        engine.addEntity(still);
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(2, system.getArchetypes().size());
+        Assert.assertEquals(2, system.numChunks);
+        for (int i = 0; i < numEntities; ++i) {
+            Assert.assertEquals(i * deltaTime, PositionComponent.X.get(entities[i]), 0.0);
+        }
+        Assert.assertEquals(1.0, PositionComponent.X.get(still), 0.0);
+    }
+
+    @Test
+    public void emptyChunksAreSkipped() {
+        Engine engine = new Engine();
+        MovementSystem system = new MovementSystem();
+        engine.addSystem(system);
+
+        Entity entity = new Entity().add(new PositionComponent()).add(new VelocityComponent());
+        engine.addEntity(entity);
+        engine.removeEntity(entity);
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(1, system.getArchetypes().size());
+        Assert.assertEquals(0, system.numChunks);
+    }
+
+}
@@ -0,0 +1,128 @@
+package info.laht.aco.systems;
+
+import info.laht.aco.core.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelIteratingSystemTest {
+
+    private static final double deltaTime = 0.16;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private static class CounterComponent implements Component {
+        public int updates = 0;
+    }
+
+    private static class MarkerComponent implements Component {
+    }
+
+    private static class CountingSystem extends ParallelIteratingSystem {
+
+        final AtomicInteger numUpdates = new AtomicInteger();
+
+        CountingSystem(ForkJoinPool pool) {
+            super(Family.all(CounterComponent.class).get(), 0, pool);
+        }
+
+        @Override
+        protected void processEntity(@NotNull Entity entity, double deltaTime) {
+            numUpdates.incrementAndGet();
+            entity.getComponent(CounterComponent.class).updates++;
+        }
+    }
+
+    @After
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void processesEveryEntityOnce() {
+        Engine engine = new Engine();
+        CountingSystem system = new CountingSystem(pool);
+        system.setMinGrainSize(16);
+        engine.addSystem(system);
+
+        int numEntities = 10000;
+        Entity[] entities = new Entity[numEntities];
+        for (int i = 0; i < numEntities; ++i) {
+            entities[i] = new Entity().add(new CounterComponent());
+            engine.addEntity(entities[i]);
+        }
+
+        engine.step(deltaTime);
+        engine.step(deltaTime);
+
+        Assert.assertEquals(2 * numEntities, system.numUpdates.get());
+        Assert.assertTrue(system.getGrainSize() >= 16);
+        Assert.assertTrue(system.getGrainSize() < numEntities);
+        for (Entity entity : entities) {
+            Assert.assertEquals(2, entity.getComponent(CounterComponent.class).updates);
+        }
+    }
+
+    @Test
+    public void smallFamiliesAreProcessedInline() {
+        Engine engine = new Engine();
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger foreignThreads = new AtomicInteger();
+
+        engine.addSystem(new ParallelIteratingSystem(Family.all(CounterComponent.class).get(), 0, pool) {
+            @Override
+            protected void processEntity(@NotNull Entity entity, double deltaTime) {
+                if (Thread.currentThread() != caller) {
+                    foreignThreads.incrementAndGet();
+                }
+            }
+        });
+
+        for (int i = 0; i < 10; ++i) {
+            engine.addEntity(new Entity().add(new CounterComponent()));
+        }
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(0, foreignThreads.get());
+    }
+
+    @Test
+    public void structuralChangesAreDeferred() {
+        final Engine engine = new Engine();
+        ComponentMapper.getFor(MarkerComponent.class);
+
+        ParallelIteratingSystem system = new ParallelIteratingSystem(Family.all(CounterComponent.class).get(), 0, pool) {
+            @Override
+            protected void processEntity(@NotNull Entity entity, double deltaTime) {
+                CounterComponent counter = entity.getComponent(CounterComponent.class);
+                if (counter.updates % 2 == 0) {
+                    engine.removeEntity(entity);
+                } else {
+                    entity.add(new MarkerComponent());
+                    engine.addEntity(new Entity());
+                }
+            }
+        };
+        system.setMinGrainSize(8);
+        engine.addSystem(system);
+
+        int numEntities = 2000;
+        for (int i = 0; i < numEntities; ++i) {
+            CounterComponent counter = new CounterComponent();
+            counter.updates = i;
+            engine.addEntity(new Entity().add(counter));
+        }
+
+        engine.step(deltaTime);
+
+        Assert.assertEquals(numEntities / 2, engine.getEntitiesFor(Family.all(CounterComponent.class).get()).size());
+        Assert.assertEquals(numEntities / 2, engine.getEntitiesFor(Family.all(MarkerComponent.class).get()).size());
+        Assert.assertEquals(numEntities, engine.getEntities().size());
+    }
+
+}
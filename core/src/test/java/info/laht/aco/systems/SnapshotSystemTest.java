@@ -0,0 +1,220 @@
+package info.laht.aco.systems;
+
+import info.laht.aco.core.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SnapshotSystemTest {
+
+    private static final double deltaTime = 0.16;
+
+    private static class ValueComponent implements Component {
+        long value;
+        long check;
+    }
+
+    private static class MarkerComponent implements Component {
+    }
+
+    private static class ValueCopier implements SnapshotSystem.Copier<ValueComponent, ValueComponent> {
+        @Override
+        public ValueComponent create() {
+            return new ValueComponent();
+        }
+
+        @Override
+        public void copy(ValueComponent source, ValueComponent target) {
+            target.value = source.value;
+            target.check = source.check;
+        }
+    }
+
+    private static class MarkerCopier implements SnapshotSystem.Copier<MarkerComponent, MarkerComponent> {
+        @Override
+        public MarkerComponent create() {
+            return new MarkerComponent();
+        }
+
+        @Override
+        public void copy(MarkerComponent source, MarkerComponent target) {
+        }
+    }
+
+    private static class IncrementSystem extends IteratingSystem {
+
+        IncrementSystem() {
+            super(Family.all(ValueComponent.class).get());
+        }
+
+        @Override
+        protected void processEntity(@NotNull Entity entity, double deltaTime) {
+            ValueComponent component = entity.getComponent(ValueComponent.class);
+            component.value++;
+            component.check = -component.value;
+        }
+    }
+
+    @Test
+    public void framesHoldCopiesTakenAtTheEndOfStep() {
+        Engine engine = new Engine();
+        SnapshotSystem snapshots = new SnapshotSystem(Family.all(ValueComponent.class).get())
+                .register(ValueComponent.class, new ValueCopier())
+                .register(MarkerComponent.class, new MarkerCopier());
+        engine.addSystem(new IncrementSystem());
+        engine.addSystem(snapshots);
+
+        Entity plain = new Entity().add(new ValueComponent());
+        Entity marked = new Entity().add(new ValueComponent()).add(new MarkerComponent());
+        engine.addEntity(plain);
+        engine.addEntity(marked);
+
+        Assert.assertEquals(0, snapshots.acquire().size());
+        Assert.assertFalse(snapshots.hasNewFrame());
+
+        engine.step(deltaTime);
+        engine.step(deltaTime);
+        Assert.assertTrue(snapshots.hasNewFrame());
+
+        SnapshotSystem.Frame frame = snapshots.acquire();
+        Assert.assertFalse(snapshots.hasNewFrame());
+        Assert.assertEquals(2, frame.size());
+        Assert.assertEquals(2, frame.getStepNumber());
+        Assert.assertEquals(2 * deltaTime, frame.getTime(), 1e-9);
+        Assert.assertEquals(plain.getHandle(), frame.getHandle(0));
+        ValueComponent copy = frame.get(ValueComponent.class, 0);
+        Assert.assertEquals(2, copy.value);
+        Assert.assertNotSame(plain.getComponent(ValueComponent.class), copy);
+        Assert.assertNull(frame.get(MarkerComponent.class, 0));
+        Assert.assertNotNull(frame.get(frame.indexOf(MarkerComponent.class), 1));
+
+        // The acquired frame is not touched by later steps
+        engine.step(deltaTime);
+        Assert.assertEquals(2, frame.<ValueComponent>get(ValueComponent.class, 1).value);
+        Assert.assertEquals(3, snapshots.acquire().getStepNumber());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registeringAfterAddingThrows() {
+        Engine engine = new Engine();
+        SnapshotSystem snapshots = new SnapshotSystem(Family.all(ValueComponent.class).get());
+        engine.addSystem(snapshots);
+        snapshots.register(ValueComponent.class, new ValueCopier());
+    }
+
+    @Test
+    public void readerNeverObservesTornFrames() throws InterruptedException {
+        final Engine engine = new Engine();
+        final SnapshotSystem snapshots = new SnapshotSystem(Family.all(ValueComponent.class).get())
+                .register(ValueComponent.class, new ValueCopier());
+        engine.addSystem(new IncrementSystem());
+        engine.addSystem(snapshots);
+        for (int i = 0; i < 100; ++i) {
+            engine.addEntity(new Entity().add(new ValueComponent()));
+        }
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long lastStep = 0;
+                while (!done.get() && failure.get() == null) {
+                    SnapshotSystem.Frame frame = snapshots.acquire();
+                    if (frame.getStepNumber() < lastStep) {
+                        failure.set("Frames went back in time");
+                    }
+                    lastStep = frame.getStepNumber();
+                    for (int i = 0; i < frame.size(); ++i) {
+                        ValueComponent component = frame.get(ValueComponent.class, i);
+                        if (component.value != frame.getStepNumber() || component.check != -component.value) {
+                            failure.set("Torn frame at step " + frame.getStepNumber());
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 5000; ++i) {
+            engine.step(deltaTime);
+        }
+        done.set(true);
+        reader.join();
+
+        Assert.assertNull(failure.get());
+    }
+
+    private static SnapshotSystem createSnapshots(Engine engine) {
+        SnapshotSystem snapshots = new SnapshotSystem(Family.all(ValueComponent.class).get())
+                .register(ValueComponent.class, new ValueCopier());
+        engine.addSystem(snapshots);
+        return snapshots;
+    }
+
+    @Test
+    public void interpolatorBlendsFramesBySimulationTime() {
+        // Stepping at 1 kHz, read at 62.5 Hz
+        double stepSize = 0.001;
+        long readNanos = 16_000_000L;
+        Engine engine = new Engine();
+        SnapshotSystem snapshots = createSnapshots(engine);
+        SnapshotSystem.Interpolator interpolator = new SnapshotSystem.Interpolator();
+
+        engine.step(stepSize);
+        interpolator.frameRead(snapshots.acquire());
+        Assert.assertEquals(1, interpolator.update(0, 1, 0.25), 0);
+
+        for (int read = 1; read <= 3; ++read) {
+            for (int i = 0; i < 16; ++i) {
+                engine.step(stepSize);
+            }
+            interpolator.frameRead(snapshots.acquire());
+            double alpha = interpolator.update(read * readNanos, 1, 0.25);
+
+            // One step behind the latest frame, not a whole read interval
+            Assert.assertEquals(15.0 / 16, alpha, 1e-9);
+            Assert.assertEquals(engine.getCurrentTime() - stepSize, interpolator.getTime(), 1e-9);
+        }
+    }
+
+    @Test
+    public void interpolatorMovesBetweenFramesAsTheReaderClockAdvances() {
+        // Stepping at 25 Hz, read at 100 Hz and paced at twice real time
+        double stepSize = 0.04;
+        long readNanos = 10_000_000L;
+        Engine engine = new Engine();
+        SnapshotSystem snapshots = createSnapshots(engine);
+        SnapshotSystem.Interpolator interpolator = new SnapshotSystem.Interpolator();
+
+        engine.step(stepSize);
+        interpolator.frameRead(snapshots.acquire());
+        interpolator.update(0, 2, 0.25);
+        engine.step(stepSize);
+        interpolator.frameRead(snapshots.acquire());
+
+        // Drawn one step behind the clock, which started at the time of the first frame
+        Assert.assertEquals(0, interpolator.update(2 * readNanos, 2, 0.25), 1e-9);
+        Assert.assertEquals(0.5, interpolator.update(3 * readNanos, 2, 0.25), 1e-9);
+        Assert.assertEquals(1, interpolator.update(4 * readNanos, 2, 0.25), 1e-9);
+        // Held at the latest frame until the next one is read
+        Assert.assertEquals(1, interpolator.update(5 * readNanos, 2, 0.25), 1e-9);
+
+        engine.step(stepSize);
+        interpolator.frameRead(snapshots.acquire());
+        Assert.assertEquals(0.5, interpolator.update(6 * readNanos, 2, 0.25), 1e-9);
+        Assert.assertEquals(2.5 * stepSize, interpolator.getTime(), 1e-9);
+
+        // A reader falling too far behind jumps to the latest frame
+        for (int i = 0; i < 20; ++i) {
+            engine.step(stepSize);
+        }
+        interpolator.frameRead(snapshots.acquire());
+        Assert.assertEquals(19.0 / 20, interpolator.update(7 * readNanos, 2, 0.25), 1e-9);
+        Assert.assertEquals(engine.getCurrentTime() - stepSize, interpolator.getTime(), 1e-9);
+    }
+
+}
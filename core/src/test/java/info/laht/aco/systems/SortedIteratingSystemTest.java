@@ -278,6 +278,101 @@ public class SortedIteratingSystemTest {
 		engine.step(0);
 	}
 
+	@Test
+	public void existingEntitiesAreSortedWhenAdded () {
+		Engine engine = new Engine();
+		engine.addEntity(createOrderEntity("B", 1));
+		engine.addEntity(createOrderEntity("A", 0));
+
+		final SortedIteratingSystemMock system = new SortedIteratingSystemMock(Family.all(OrderComponent.class).get());
+		engine.addSystem(system);
+		Assert.assertEquals(2, system.getEntities().size());
+
+		system.expectedNames.addLast("A");
+		system.expectedNames.addLast("B");
+		engine.step(0);
+	}
+
+	@Test
+	public void incrementalEntityOrder () {
+		Engine engine = new Engine();
+
+		final Family family = Family.all(OrderComponent.class).get();
+		final SortedIteratingSystemMock system = new SortedIteratingSystemMock(family);
+		system.setIncremental(true);
+		Assert.assertTrue(system.isIncremental());
+		engine.addSystem(system);
+
+		Entity a = createOrderEntity("A", 0);
+		Entity b = createOrderEntity("B", 1);
+		Entity c = createOrderEntity("C", 3);
+		Entity d = createOrderEntity("D", 2);
+		Entity e = createOrderEntity("E", 1);
+
+		engine.addEntity(c);
+		engine.addEntity(a);
+		engine.addEntity(d);
+		engine.addEntity(b);
+		engine.addEntity(e);
+		system.expectedNames.addLast("A");
+		system.expectedNames.addLast("B");
+		system.expectedNames.addLast("E");
+		system.expectedNames.addLast("D");
+		system.expectedNames.addLast("C");
+		engine.step(0);
+
+		engine.removeEntity(b);
+		system.expectedNames.addLast("A");
+		system.expectedNames.addLast("E");
+		system.expectedNames.addLast("D");
+		system.expectedNames.addLast("C");
+		engine.step(0);
+
+		// Slight change
+		orderMapper.get(e).zLayer = 2;
+		orderMapper.get(d).zLayer = 1;
+		system.forceSort();
+		system.expectedNames.addLast("A");
+		system.expectedNames.addLast("D");
+		system.expectedNames.addLast("E");
+		system.expectedNames.addLast("C");
+		engine.step(0);
+
+		// Reversal
+		orderMapper.get(a).zLayer = 3;
+		orderMapper.get(d).zLayer = 2;
+		orderMapper.get(e).zLayer = 1;
+		orderMapper.get(c).zLayer = 0;
+		system.forceSort();
+		system.expectedNames.addLast("C");
+		system.expectedNames.addLast("E");
+		system.expectedNames.addLast("D");
+		system.expectedNames.addLast("A");
+		engine.step(0);
+	}
+
+	@Test
+	public void incrementalSortFallsBackToFullSort () {
+		Engine engine = new Engine();
+		final SortedIteratingSystemMock system = new SortedIteratingSystemMock(Family.all(OrderComponent.class).get());
+		system.setIncremental(true);
+		engine.addSystem(system);
+
+		final int numEntities = 100;
+		for (int i = 0; i < numEntities; ++i) {
+			engine.addEntity(createOrderEntity("" + i, i));
+		}
+		ImmutableArray<Entity> entities = system.getEntities();
+		for (int i = 0; i < numEntities; ++i) {
+			orderMapper.get(entities.get(i)).zLayer = -i;
+		}
+		system.forceSort();
+		for (int i = numEntities - 1; i >= 0; --i) {
+			system.expectedNames.addLast("" + i);
+		}
+		engine.step(0);
+	}
+
 	private static class OrderComparator implements Comparator<Entity> {
 
 		@Override
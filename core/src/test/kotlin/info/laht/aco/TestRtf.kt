@@ -34,7 +34,7 @@ fun main() {
     engine.addSystem(SineMoverSystem(0.1))
 
     val runner = HeadlessEngineRunner(engine)
-    engine.realtimeFactor = 2.0
+    runner.targetRealTimeFactor = 2.0
 
     val stop = 5.0
     measureTime {
@@ -14,17 +14,30 @@ import com.jme3.scene.shape.Sphere
 import info.laht.aco.core.*
 import info.laht.aco.math.Color
 import info.laht.aco.render.TransformComponent
+import info.laht.aco.render.TransformStore
 import info.laht.aco.render.geometry.BoxShape
 import info.laht.aco.render.geometry.GeometryComponent
+import info.laht.aco.render.geometry.Shape
 import info.laht.aco.render.geometry.SphereShape
 import info.laht.aco.systems.IteratingSystem
+import info.laht.aco.systems.SnapshotSystem
+import org.joml.Matrix4d
 import org.joml.Quaterniond
 import org.joml.Vector3d
 import java.util.concurrent.locks.ReentrantLock
 import kotlin.concurrent.withLock
 
-class JmeEngineRunner(
-    private val engine: Engine
+/**
+ * Renders the entities of an [Engine] having both a [TransformComponent] and a [GeometryComponent].
+ *
+ * By default the engine is stepped by the render thread, once per rendered frame. When [decoupled], the engine runs on its
+ * own thread, paced by [simulation], and the render thread draws the transforms published by a [SnapshotSystem],
+ * interpolating between the two latest snapshots it read by simulation time. Simulation and render rates are then independent, e.g. simulating at
+ * 1 kHz while rendering at 60 Hz, and a slow system no longer stalls rendering.
+ */
+class JmeEngineRunner @JvmOverloads constructor(
+    private val engine: Engine,
+    val decoupled: Boolean = false
 ) : EngineRunner {
 
     private val app = App()
@@ -33,33 +46,66 @@ class JmeEngineRunner(
     private val lock = ReentrantLock()
     private var initialized = lock.newCondition()
 
+    private val snapshots = if (decoupled) createSnapshotSystem() else null
+
+    /**
+     * Steps the engine when [decoupled], null otherwise. Use it to configure the step size and real-time pacing.
+     */
+    val simulation: HeadlessEngineRunner?
+
     init {
+        if (snapshots != null) {
+            engine.addSystem(snapshots)
+        }
         app.start()
-        engine.addSystem(app.renderSystem)
+        if (!decoupled) {
+            engine.addSystem(app.renderSystem)
+        }
         lock.withLock {
             initialized.await()
         }
-
+        simulation = if (decoupled) HeadlessEngineRunner(engine) else null
     }
 
     override fun start() {
         running = true
+        simulation?.start()
     }
 
     fun pause(flag: Boolean) {
         running = flag
+        simulation?.paused?.set(!flag)
     }
 
     override fun stop() {
+        simulation?.stop()
         app.stop()
     }
 
+    private fun createSnapshotSystem(): SnapshotSystem {
+        return SnapshotSystem(renderFamily)
+            .register(TransformComponent::class.java, object : SnapshotSystem.Copier<TransformComponent, Matrix4d> {
+                override fun create() = Matrix4d()
+                override fun copy(source: TransformComponent, target: Matrix4d) {
+                    target.set(source.getWorld())
+                }
+            })
+            .register(GeometryComponent::class.java, object : SnapshotSystem.Copier<GeometryComponent, GeometryState> {
+                override fun create() = GeometryState()
+                override fun copy(source: GeometryComponent, target: GeometryState) {
+                    target.shape = source.shape
+                    target.color.set(source.color)
+                }
+            })
+    }
+
     private inner class App : SimpleApplication() {
 
         private val root = Node()
         val renderSystem: JmeInternalRenderSystem by lazy {
             JmeInternalRenderSystem()
         }
+        private val snapshotRenderer = SnapshotRenderer()
 
         override fun simpleInitApp() {
             super.setPauseOnLostFocus(false)
@@ -73,6 +119,7 @@ class JmeEngineRunner(
 
             super.stateManager.attach(object : AbstractAppState() {
                 override fun cleanup() {
+                    simulation?.stop()
                     engine.close()
                 }
             })
@@ -85,7 +132,9 @@ class JmeEngineRunner(
         }
 
         override fun simpleUpdate(tpf: Float) {
-            if (running) {
+            if (snapshots != null) {
+                snapshotRenderer.update(snapshots)
+            } else if (running) {
                 engine.step(tpf.toDouble())
             }
         }
@@ -111,6 +160,20 @@ class JmeEngineRunner(
 
         }
 
+        private fun createNode(shape: Shape?, color: Color): Node {
+            return Node().apply {
+                when (shape) {
+                    is BoxShape -> {
+                        attachChild(createBox(shape, color))
+                    }
+                    is SphereShape -> {
+                        attachChild(createSphere(shape, color))
+                    }
+                }
+                root.attachChild(this)
+            }
+        }
+
         private fun createBox(shape: BoxShape, color: Color): Geometry {
             return Geometry(
                 "BoxGeometry",
@@ -131,39 +194,183 @@ class JmeEngineRunner(
             }
         }
 
-        private inner class JmeInternalRenderSystem : IteratingSystem(
-            Family.all(TransformComponent::class.java, GeometryComponent::class.java).get()
-        ) {
+        private inner class JmeInternalRenderSystem : IteratingSystem(renderFamily) {
 
             private val tmpVec = Vector3d()
             private val tmpQuat = Quaterniond()
-            private val map = mutableMapOf<Entity, Node>()
+            private var nodes = arrayOfNulls<Node>(16)
 
             private val tm = ComponentMapper.getFor(TransformComponent::class.java)
             private val gm = ComponentMapper.getFor(GeometryComponent::class.java)
+            private var transformStore: TransformStore? = null
 
-            override fun processEntity(entity: Entity, deltaTime: Double) {
-                val node = map.computeIfAbsent(entity) {
-                    Node().apply {
-                        val geometry = gm.get(entity)
-                        when (val shape = geometry.shape) {
-                            is BoxShape -> {
-                                attachChild(createBox(shape, geometry.color))
-                            }
-                            is SphereShape -> {
-                                attachChild(createSphere(shape, geometry.color))
-                            }
-                        }
-                        root.attachChild(this)
+            private val listener = object : EntityAdapter() {
+                override fun entityRemoved(entity: Entity) {
+                    // Ids are reused, so the node must not outlive the entity
+                    val id = entity.id
+                    if (id < nodes.size) {
+                        nodes[id]?.removeFromParent()
+                        nodes[id] = null
                     }
                 }
+            }
+
+            override fun addedToEngine(engine: Engine) {
+                super.addedToEngine(engine)
+                engine.addEntityListener(family, listener)
+            }
+
+            override fun removedFromEngine(engine: Engine) {
+                super.removedFromEngine(engine)
+                engine.removeEntityListener(listener)
+            }
+
+            override fun step(deltaTime: Double) {
+                transformStore = engine.getSystem(TransformStore::class.java)
+                super.step(deltaTime)
+            }
+
+            override fun processEntity(entity: Entity, deltaTime: Double) {
+                val id = entity.id
+                if (id >= nodes.size) {
+                    nodes = nodes.copyOf(maxOf(id + 1, nodes.size * 2))
+                }
+                val node = nodes[id] ?: gm.get(entity).let { geometry ->
+                    createNode(geometry.shape, geometry.color).also { nodes[id] = it }
+                }
                 val transform = tm.get(entity)
-                node.localTranslation.set(transform.getWorldTranslation(tmpVec))
-                node.localRotation.set(transform.getWorldQuaternion(tmpQuat))
+                val store = transformStore
+                if (store != null && transform.transformStore === store && !transform.worldNeedsUpdate) {
+                    // Straight from the packed world matrices
+                    node.localTranslation.set(store.getWorldTranslation(id, tmpVec))
+                    node.localRotation.set(store.getWorldQuaternion(id, tmpQuat))
+                } else {
+                    node.localTranslation.set(transform.getWorldTranslation(tmpVec))
+                    node.localRotation.set(transform.getWorldQuaternion(tmpQuat))
+                }
                 node.forceRefresh(true, true, true)
             }
         }
 
+        /**
+         * Draws the frames published by a [SnapshotSystem]. Nodes are blended from the state of the previous frame read
+         * towards that of the latest one by a [SnapshotSystem.Interpolator], whose clock follows the pacing of
+         * [simulation].
+         */
+        private inner class SnapshotRenderer {
+
+            private var views = arrayOfNulls<NodeView>(16)
+            private var frameNumber = 0L
+            private val interpolator = SnapshotSystem.Interpolator()
+
+            private val tmpVec = Vector3d()
+            private val tmpQuat = Quaterniond()
+
+            fun update(snapshots: SnapshotSystem) {
+                if (snapshots.hasNewFrame()) {
+                    val frame = snapshots.acquire()
+                    readFrame(frame)
+                    interpolator.frameRead(frame)
+                }
+
+                val simulation = simulation
+                val realTimeFactor = when {
+                    simulation == null -> 1.0
+                    simulation.enableRealTimeTarget.get() -> simulation.targetRealTimeFactor
+                    else -> simulation.actualRealTimeFactor
+                }
+                val alpha = interpolator.update(System.nanoTime(), realTimeFactor, simulation?.maxLag ?: DEFAULT_MAX_LAG)
+                for (view in views) {
+                    view?.apply(alpha)
+                }
+            }
+
+            private fun readFrame(frame: SnapshotSystem.Frame) {
+                ++frameNumber
+                for (row in 0 until frame.size()) {
+                    val handle = frame.getHandle(row)
+                    val id = handle.id
+                    if (id >= views.size) {
+                        views = views.copyOf(maxOf(id + 1, views.size * 2))
+                    }
+
+                    var view = views[id]
+                    if (view != null && view.generation != handle.generation) {
+                        // The id has been reused by another entity
+                        view.node.removeFromParent()
+                        view = null
+                    }
+                    val world: Matrix4d = frame.get(TRANSFORM, row)
+                    if (view == null) {
+                        val geometry: GeometryState = frame.get(GEOMETRY, row)
+                        view = NodeView(createNode(geometry.shape, geometry.color), handle.generation)
+                        views[id] = view
+                        view.push(world, true)
+                    } else {
+                        view.push(world, false)
+                    }
+                    view.frameNumber = frameNumber
+                }
+
+                for (id in views.indices) {
+                    val view = views[id]
+                    if (view != null && view.frameNumber != frameNumber) {
+                        view.node.removeFromParent()
+                        views[id] = null
+                    }
+                }
+            }
+
+            private inner class NodeView(
+                val node: Node,
+                val generation: Int
+            ) {
+
+                var frameNumber = 0L
+
+                private val previousTranslation = Vector3d()
+                private val latestTranslation = Vector3d()
+                private val previousRotation = Quaterniond()
+                private val latestRotation = Quaterniond()
+
+                fun push(world: Matrix4d, first: Boolean) {
+                    previousTranslation.set(latestTranslation)
+                    previousRotation.set(latestRotation)
+                    world.getTranslation(latestTranslation)
+                    world.getNormalizedRotation(latestRotation)
+                    if (first) {
+                        previousTranslation.set(latestTranslation)
+                        previousRotation.set(latestRotation)
+                    }
+                }
+
+                fun apply(alpha: Double) {
+                    node.localTranslation.set(previousTranslation.lerp(latestTranslation, alpha, tmpVec))
+                    node.localRotation.set(previousRotation.slerp(latestRotation, alpha, tmpQuat))
+                    node.forceRefresh(true, true, true)
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The part of a [GeometryComponent] needed to create its node.
+     */
+    private class GeometryState {
+        var shape: Shape? = null
+        val color = Color(Color.white)
+    }
+
+    private companion object {
+        private val renderFamily = Family.all(TransformComponent::class.java, GeometryComponent::class.java).get()
+
+        // Indices of the component types registered with the SnapshotSystem
+        private const val TRANSFORM = 0
+        private const val GEOMETRY = 1
+
+        // Used until the simulation runner exists
+        private const val DEFAULT_MAX_LAG = 0.25
     }
 
 }